@@ -0,0 +1,92 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import com.kineticdata.bridgehub.adapter.BridgeRequest;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the per-request work done before Nagios XI is called: resolving the qualification,
+ * building the url (with and without an order) and compiling a request plan.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NagiosRequestBenchmark {
+
+    private static final String QUERY = "host_name=<%= parameter[\"Host\"] %>"
+        + "&service_description=<%= parameter[\"Service\"] %>&current_state=ne:0";
+
+    private NagiosQualificationParser parser;
+    private Map<String,String> parameters;
+    private BridgeRequest request;
+    private BridgeRequest orderedRequest;
+    private NagiosRequestPlan plan;
+    private NagiosRequestPlan orderedPlan;
+
+    @Setup
+    public void setUp() throws BridgeError {
+        parser = new NagiosQualificationParser();
+        parameters = new HashMap<>();
+        parameters.put("Host", "web 01.example.com");
+        parameters.put("Service", "HTTP & HTTPS");
+
+        request = request(new HashMap<>());
+        Map<String,String> orderMetadata = new HashMap<>();
+        orderMetadata.put("order", "<%=field[\"host_name\"]%>:ASC,<%=field[\"current_state\"]%>:DESC");
+        orderedRequest = request(orderMetadata);
+        plan = NagiosRequestPlan.compile(request);
+        orderedPlan = NagiosRequestPlan.compile(orderedRequest);
+    }
+
+    @Benchmark
+    public String buildUrl() throws BridgeError {
+        String query = plan.resolveQuery(parameters, parser);
+        return plan.buildUrl("https://nagios.example.com/nagiosxi", "KEY", "search", query, "1000", "0");
+    }
+
+    @Benchmark
+    public String buildUrlWithOrder() throws BridgeError {
+        String query = orderedPlan.resolveQuery(parameters, parser);
+        return orderedPlan.buildUrl("https://nagios.example.com/nagiosxi", "KEY", "search", query, "1000", "0");
+    }
+
+    @Benchmark
+    public NagiosRequestPlan compilePlanWithOrder() throws BridgeError {
+        return NagiosRequestPlan.compile(orderedRequest);
+    }
+
+    @Benchmark
+    public String parse() throws BridgeError {
+        return parser.parse(QUERY, parameters);
+    }
+
+    @Benchmark
+    public String encodeParameter() {
+        return parser.encodeParameter("Service", "HTTP & HTTPS");
+    }
+
+    private static BridgeRequest request(Map<String,String> metadata) {
+        BridgeRequest request = new BridgeRequest();
+        request.setStructure("objects/servicestatus");
+        request.setQuery(QUERY);
+        request.setFields(Arrays.asList("host_name", "service_description", "current_state", "output"));
+        request.setMetadata(metadata);
+        return request;
+    }
+}
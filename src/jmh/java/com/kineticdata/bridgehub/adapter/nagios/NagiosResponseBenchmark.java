@@ -0,0 +1,106 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import com.kineticdata.bridgehub.adapter.BridgeRequest;
+import com.kineticdata.bridgehub.adapter.Record;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the parse-and-map path of search and retrieve over generated responses for every
+ * structure, at several response sizes and requested field counts.  Narrow a run with JMH's
+ * -p option, for example <code>-p structure=objects/servicestatus -p records=1000</code>.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NagiosResponseBenchmark {
+
+    /** Every generated element has this many fields. */
+    private static final int ELEMENT_WIDTH = 20;
+
+    @Param({"objects/hoststatus", "objects/servicestatus", "objects/logentries", "objects/statehistory",
+        "objects/comment", "objects/downtime", "objects/contact", "objects/host", "objects/service",
+        "objects/hostgroup", "objects/servicegroup", "objects/contactgroup", "objects/hostgroupmembers",
+        "objects/servicegroupmembers", "objects/contactgroupmembers"})
+    public String structure;
+
+    @Param({"10", "1000", "10000", "100000"})
+    public int records;
+
+    @Param({"1", "5", "20"})
+    public int fields;
+
+    private byte[] response;
+    private NagiosRequestPlan plan;
+
+    @Setup
+    public void setUp() throws BridgeError {
+        response = NagiosFixtures.responseBytes(structure, records, ELEMENT_WIDTH);
+        BridgeRequest request = new BridgeRequest();
+        request.setStructure(structure);
+        request.setQuery("");
+        request.setFields(new ArrayList<>(NagiosFixtures.fieldNames(structure, ELEMENT_WIDTH).subList(0, fields)));
+        request.setMetadata(new HashMap<>());
+        plan = NagiosRequestPlan.compile(request);
+    }
+
+    /** The search path: every element mapped into a column-wise record table. */
+    @Benchmark
+    public List<Record> search() throws IOException, BridgeError {
+        NagiosRecordTable table = new NagiosRecordTable(plan.getFields());
+        plan.getReader().read(new ByteArrayInputStream(response), (element) -> {
+            table.add(plan, element);
+            return true;
+        });
+        return table.getRecords();
+    }
+
+    /** The search path with 'Compact Record Lists' turned off: a HashMap per record. */
+    @Benchmark
+    public List<Record> searchMaps() throws IOException, BridgeError {
+        List<Record> recordList = new ArrayList<>();
+        plan.getReader().read(new ByteArrayInputStream(response), (element) -> {
+            recordList.add(new Record(plan.toRecordValues(element)));
+            return true;
+        });
+        return recordList;
+    }
+
+    /** The retrieve path, which reads the whole response to check for a single match. */
+    @Benchmark
+    public Record retrieve() throws IOException, BridgeError {
+        List<Record> matches = new ArrayList<>(1);
+        plan.getReader().read(new ByteArrayInputStream(response), (element) -> {
+            if (matches.isEmpty()) {
+                matches.add(new Record(plan.toRecordValues(element)));
+            }
+            return true;
+        });
+        return matches.get(0);
+    }
+
+    /** The count path, which stops reading at the record count. */
+    @Benchmark
+    public String count() throws IOException, BridgeError {
+        return plan.getReader().readCount(new ByteArrayInputStream(response)).getRecordCount();
+    }
+}
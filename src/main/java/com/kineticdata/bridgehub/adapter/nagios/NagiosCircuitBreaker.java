@@ -0,0 +1,114 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stops calling Nagios XI while it is unhealthy.
+ *
+ * The breaker opens after a number of consecutive failed calls (connection failures, timeouts and
+ * HTTP 5xx responses).  While it is open every call fails immediately; once the open time has
+ * passed a single probe call is let through (half open), which either closes the breaker again or
+ * re-opens it.  Every state transition is logged and counted.
+ */
+public class NagiosCircuitBreaker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NagiosCircuitBreaker.class);
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long openMillis;
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean probing;
+    private long opened;
+    private long halfOpened;
+    private long closed;
+    private long rejected;
+
+    public NagiosCircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = openMillis;
+    }
+
+    /** Lets a call through, or throws a BridgeError when the breaker is open. */
+    public synchronized void acquire() throws BridgeError {
+        if (state == State.OPEN) {
+            long remaining = openedAt + openMillis - System.currentTimeMillis();
+            if (remaining > 0) {
+                rejected++;
+                throw new BridgeError(String.format(
+                    "Nagios XI is unavailable after %d consecutive failed requests; retrying in %d s.",
+                    consecutiveFailures, Math.max(1, remaining / 1000)));
+            }
+            transition(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (probing) {
+                rejected++;
+                throw new BridgeError("Nagios XI is unavailable; waiting for a probe request to succeed.");
+            }
+            probing = true;
+        }
+    }
+
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        probing = false;
+        if (state != State.CLOSED) {
+            transition(State.CLOSED);
+        }
+    }
+
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        probing = false;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            openedAt = System.currentTimeMillis();
+            transition(State.OPEN);
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized Map<String,Long> getStats() {
+        Map<String,Long> stats = new LinkedHashMap<>();
+        stats.put("state", (long)state.ordinal());
+        stats.put("consecutiveFailures", (long)consecutiveFailures);
+        stats.put("opened", opened);
+        stats.put("halfOpened", halfOpened);
+        stats.put("closed", closed);
+        stats.put("rejected", rejected);
+        return stats;
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PRIVATE HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    private void transition(State next) {
+        State previous = state;
+        state = next;
+        switch (next) {
+            case OPEN:
+                opened++;
+                LOGGER.warn("Nagios XI circuit breaker {} -> OPEN after {} consecutive failures; "
+                    + "failing fast for {} ms.", previous, consecutiveFailures, openMillis);
+                break;
+            case HALF_OPEN:
+                halfOpened++;
+                LOGGER.info("Nagios XI circuit breaker OPEN -> HALF_OPEN; sending a probe request.");
+                break;
+            default:
+                closed++;
+                LOGGER.info("Nagios XI circuit breaker {} -> CLOSED.", previous);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission control for Nagios XI calls, with a concurrency limit that adapts to response times.
+ *
+ * The limit grows by about one per round trip while responses arrive close to their no-load
+ * response time, and shrinks by a tenth, at most once per round trip, when a response takes more
+ * than twice as long or a call fails.  The no-load response time (the lowest recently seen) is
+ * kept per kind of call, such as <code>retrieve objects/host</code>, so that cheap calls don't make
+ * normal slower ones look congested.  Calls over the limit wait in a
+ * bounded queue, lower priority numbers first, and fail fast once the queue is full or the wait
+ * times out.
+ */
+public class NagiosConcurrencyLimiter {
+
+    /** Response times above this multiple of the no-load response time shrink the limit. */
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final double DECREASE_FACTOR = 0.9;
+
+    private static class Waiter {
+        private final int priority;
+        private final long sequence;
+        private boolean granted;
+
+        private Waiter(int priority, long sequence) {
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+    }
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueued;
+    private final long queueTimeoutMillis;
+    private final PriorityQueue<Waiter> queue = new PriorityQueue<>(
+        Comparator.<Waiter>comparingInt((waiter) -> waiter.priority).thenComparingLong((waiter) -> waiter.sequence));
+    private double limit;
+    private int inFlight;
+    private long sequence;
+    private final Map<String,Double> noLoadNanos = new HashMap<>();
+    private double smoothedNanos;
+    private long holdDecreasesUntil;
+    private long admitted;
+    private long queued;
+    private long rejected;
+    private long timeouts;
+    private long increases;
+    private long decreases;
+
+    public NagiosConcurrencyLimiter(int initialLimit, int maxLimit, int maxQueued, long queueTimeoutMillis) {
+        this.minLimit = 1;
+        this.maxLimit = Math.max(1, maxLimit);
+        this.limit = Math.max(minLimit, Math.min(initialLimit, this.maxLimit));
+        this.maxQueued = Math.max(0, maxQueued);
+        this.queueTimeoutMillis = queueTimeoutMillis;
+    }
+
+    /**
+     * Waits for a slot to call Nagios XI.  Lower priorities are let through first; a BridgeError is
+     * thrown when the queue is full or the queue timeout passes.
+     */
+    public synchronized void acquire(int priority) throws BridgeError {
+        if (queue.isEmpty() && inFlight < currentLimit()) {
+            inFlight++;
+            admitted++;
+            return;
+        }
+        if (queue.size() >= maxQueued) {
+            rejected++;
+            throw new BridgeError(String.format(
+                "Nagios XI is overloaded: %d requests are in flight (limit %d) and %d are queued.",
+                inFlight, currentLimit(), queue.size()));
+        }
+        Waiter waiter = new Waiter(priority, sequence++);
+        queue.add(waiter);
+        queued++;
+        grant();
+        long deadline = System.currentTimeMillis() + queueTimeoutMillis;
+        try {
+            while (waiter.granted == false) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    queue.remove(waiter);
+                    timeouts++;
+                    throw new BridgeError(String.format(
+                        "Timed out after %d ms waiting for a free Nagios XI request slot.", queueTimeoutMillis));
+                }
+                wait(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (waiter.granted) {
+                inFlight--;
+                grant();
+            } else {
+                queue.remove(waiter);
+            }
+            throw new BridgeError("Interrupted while waiting for a free Nagios XI request slot.", e);
+        }
+        admitted++;
+    }
+
+    /**
+     * Frees a slot and adjusts the limit.  The response time is the time from writing the request
+     * to a connection until the response headers arrived, or 0 when no response arrived; dropped
+     * calls (failures and timeouts) shrink the limit.
+     *
+     * @param kind the kind of call, whose responses are compared with its own no-load response time
+     */
+    public synchronized void release(String kind, long responseNanos, boolean dropped) {
+        int used = inFlight;
+        inFlight--;
+        long now = System.nanoTime();
+        double noLoad = 0;
+        if (responseNanos > 0) {
+            smoothedNanos = smoothedNanos == 0 ? responseNanos : smoothedNanos * 0.9 + responseNanos * 0.1;
+            // The no-load response time follows new lows at once and drifts slowly towards higher times.
+            Double previous = noLoadNanos.get(kind);
+            noLoad = previous == null
+                ? responseNanos
+                : Math.min(responseNanos, previous + (responseNanos - previous) / 1000);
+            noLoadNanos.put(kind, noLoad);
+        }
+        if (dropped || (responseNanos > 0 && responseNanos > noLoad * LATENCY_TOLERANCE)) {
+            // Calls sent under the old limit finish during the next round trip; only shrink once for them.
+            if (now - holdDecreasesUntil >= 0) {
+                limit = Math.max(minLimit, limit * DECREASE_FACTOR);
+                holdDecreasesUntil = now + (long)Math.max(smoothedNanos, TimeUnit.MILLISECONDS.toNanos(1));
+                decreases++;
+            }
+        } else if (responseNanos > 0 && used * 2 >= currentLimit() && limit < maxLimit) {
+            // Only grow while the limit is actually being used.
+            limit = Math.min(maxLimit, limit + 1 / limit);
+            increases++;
+        }
+        grant();
+    }
+
+    /** Frees a slot taken by a call that was never sent, without adjusting the limit. */
+    public synchronized void cancel() {
+        inFlight--;
+        grant();
+    }
+
+    /** Whether no call is waiting and at most half of the limit is in use, leaving room for optional calls. */
+    public synchronized boolean hasSpareCapacity() {
+        return queue.isEmpty() && inFlight * 2 < currentLimit();
+    }
+
+    public synchronized Map<String,Long> getStats() {
+        Map<String,Long> stats = new LinkedHashMap<>();
+        stats.put("limit", (long)currentLimit());
+        stats.put("inFlight", (long)inFlight);
+        stats.put("queueDepth", (long)queue.size());
+        stats.put("admitted", admitted);
+        stats.put("queued", queued);
+        stats.put("rejected", rejected);
+        stats.put("timeouts", timeouts);
+        stats.put("increases", increases);
+        stats.put("decreases", decreases);
+        noLoadNanos.forEach((kind, nanos) -> stats.put("noLoadMicros." + kind, (long)(nanos / 1000)));
+        return stats;
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PRIVATE HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    private int currentLimit() {
+        return (int)limit;
+    }
+
+    /** Hands free slots to the queued calls, highest priority first. */
+    private void grant() {
+        boolean granted = false;
+        while (queue.isEmpty() == false && inFlight < currentLimit()) {
+            queue.poll().granted = true;
+            inFlight++;
+            granted = true;
+        }
+        if (granted) {
+            notifyAll();
+        }
+    }
+}
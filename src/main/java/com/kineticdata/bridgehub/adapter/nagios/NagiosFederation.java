@@ -0,0 +1,281 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import com.kineticdata.bridgehub.adapter.BridgeRequest;
+import com.kineticdata.bridgehub.adapter.Count;
+import com.kineticdata.bridgehub.adapter.Record;
+import com.kineticdata.bridgehub.adapter.RecordList;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends each request to several Nagios XI instances at once and merges their results, so a
+ * request costs about as long as the slowest instance rather than the sum of them all.
+ *
+ * Each instance is served by its own single-instance {@link NagiosXiAdapter}, with its own
+ * connection pool, caches, circuit breaker and concurrency limit.  Counts are summed.  Searches
+ * ask every instance for its first <code>offset + pageSize</code> records and sort them together
+ * on the requested order (instance order when there is none) before taking the page, so paging
+ * over the combined result is consistent.  Retrieves expect at most one instance to match.
+ *
+ * Records can ask for the {@link #INSTANCE_FIELD} field to get the name of the instance they came
+ * from.  An instance that fails or doesn't answer within the instance timeout is left out of the
+ * result, which is then marked partial in its metadata, unless partial results are turned off.
+ */
+public class NagiosFederation {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NagiosFederation.class);
+
+    /** The record field holding the name of the instance a record came from. */
+    public static final String INSTANCE_FIELD = "nagios_instance";
+
+    private final Map<String,NagiosXiAdapter> instances;
+    private final long instanceTimeoutMillis;
+    private final boolean partialResults;
+    private final ExecutorService executor;
+    private final Map<String,AtomicLong> failures = new LinkedHashMap<>();
+    private final AtomicLong partials = new AtomicLong();
+
+    /**
+     * @param instances the adapter of each instance, by instance name, in merge order
+     */
+    public NagiosFederation(Map<String,NagiosXiAdapter> instances, long instanceTimeoutMillis,
+        boolean partialResults)
+    {
+        this.instances = new LinkedHashMap<>(instances);
+        this.instanceTimeoutMillis = instanceTimeoutMillis;
+        this.partialResults = partialResults;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool((runnable) -> {
+            Thread thread = new Thread(runnable, "nagios-xi-federation-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        instances.keySet().forEach((name) -> failures.put(name, new AtomicLong()));
+    }
+
+    public Map<String,NagiosXiAdapter> getInstances() {
+        return instances;
+    }
+
+    public Count count(BridgeRequest request) throws BridgeError {
+        Results results = fanOut((adapter) -> adapter.count(request));
+        long total = 0;
+        for (Object result : results.values.values()) {
+            Integer value = ((Count)result).getValue();
+            total += value == null ? 0 : value;
+        }
+        return new Count(total, results.metadata());
+    }
+
+    public Record retrieve(BridgeRequest request) throws BridgeError {
+        Results results = fanOut((adapter) -> adapter.retrieve(request));
+        Record match = null;
+        for (Map.Entry<String,Object> result : results.values.entrySet()) {
+            Record record = (Record)result.getValue();
+            if (record != null && record.getRecord() != null) {
+                if (match != null) {
+                    throw new BridgeError("Multiple results matched an expected single match query");
+                }
+                match = tag(record, result.getKey(), request.getFields());
+            }
+        }
+        return new Record(match == null ? null : match.getRecord(), results.metadata());
+    }
+
+    /**
+     * Searches every instance and merges the results.  The order fields are added to the
+     * instance requests when they aren't requested, and left out of the merged records.
+     */
+    public RecordList search(BridgeRequest request, String orderBy, int pageSize, int offset) throws BridgeError {
+        List<String> fields = new ArrayList<>(request.getFields());
+        if (orderBy != null) {
+            for (String term : orderBy.split(",")) {
+                String field = StringUtils.substringBeforeLast(term, ":");
+                if (fields.contains(field) == false) {
+                    fields.add(field);
+                }
+            }
+        }
+        BridgeRequest instanceRequest = withFields(request, fields);
+        Map<String,String> window = new HashMap<>(request.getMetadata() == null
+            ? new HashMap<>()
+            : request.getMetadata());
+        window.put("pageSize", String.valueOf(offset + pageSize));
+        window.put("offset", "0");
+        instanceRequest.setMetadata(window);
+
+        Results results = fanOut((adapter) -> adapter.search(instanceRequest));
+        Comparator<Object> order = NagiosQueryFilter.toComparator(orderBy);
+        List<Record> page = new ArrayList<>(pageSize);
+        long count = 0;
+        if (order == null) {
+            for (Map.Entry<String,Object> result : results.values.entrySet()) {
+                RecordList list = (RecordList)result.getValue();
+                count += recordCount(list);
+                for (Record record : list.getRecords()) {
+                    if (offset > 0) {
+                        offset--;
+                    } else if (page.size() < pageSize) {
+                        page.add(tag(record, result.getKey(), request.getFields()));
+                    }
+                }
+            }
+        } else {
+            // Each instance ordered its window with its own collation, which may not agree with
+            // ours, so the combined windows are sorted again rather than merged.  The sort is
+            // stable, so ties keep instance order.
+            List<Record> combined = new ArrayList<>();
+            List<String> sources = new ArrayList<>();
+            for (Map.Entry<String,Object> result : results.values.entrySet()) {
+                RecordList list = (RecordList)result.getValue();
+                count += recordCount(list);
+                for (Record record : list.getRecords()) {
+                    combined.add(record);
+                    sources.add(result.getKey());
+                }
+            }
+            List<Integer> positions = new ArrayList<>(combined.size());
+            for (int i = 0; i < combined.size(); i++) {
+                positions.add(i);
+            }
+            positions.sort(Comparator.comparing((position) -> combined.get(position).getRecord(), order));
+            for (int i = offset; i < positions.size() && page.size() < pageSize; i++) {
+                int position = positions.get(i);
+                page.add(tag(combined.get(position), sources.get(position), request.getFields()));
+            }
+        }
+        Map<String,String> metadata = results.metadata();
+        metadata.put("count", String.valueOf(count));
+        metadata.put("size", String.valueOf(page.size()));
+        return new RecordList(request.getFields(), page, metadata);
+    }
+
+    /** Returns the number of failed or timed out calls per instance and the number of partial results. */
+    public Map<String,Long> getStats() {
+        Map<String,Long> stats = new LinkedHashMap<>();
+        failures.forEach((name, count) -> stats.put(name + ".failures", count.get()));
+        stats.put("partialResults", partials.get());
+        return stats;
+    }
+
+    public void close() {
+        executor.shutdownNow();
+        instances.values().forEach(NagiosXiAdapter::destroy);
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PRIVATE HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    private interface InstanceCall {
+        Object call(NagiosXiAdapter adapter) throws BridgeError;
+    }
+
+    /** The results of the instances that answered, in instance order, and the names of the others. */
+    private static class Results {
+        private final Map<String,Object> values = new LinkedHashMap<>();
+        private final List<String> unavailable = new ArrayList<>();
+
+        private Map<String,String> metadata() {
+            Map<String,String> metadata = new LinkedHashMap<>();
+            metadata.put("partial", String.valueOf(unavailable.isEmpty() == false));
+            if (unavailable.isEmpty() == false) {
+                metadata.put("unavailableInstances", StringUtils.join(unavailable, ","));
+            }
+            return metadata;
+        }
+    }
+
+    /** Calls every instance concurrently and waits up to the instance timeout for all of them. */
+    private Results fanOut(InstanceCall call) throws BridgeError {
+        Map<String,Future<Object>> futures = new LinkedHashMap<>();
+        try {
+            instances.forEach((name, adapter) -> futures.put(name, executor.submit(() -> call.call(adapter))));
+        } catch (RejectedExecutionException e) {
+            futures.values().forEach((future) -> future.cancel(true));
+            throw new BridgeError("The Nagios XI adapter has not been initialized.", e);
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(instanceTimeoutMillis);
+        Results results = new Results();
+        BridgeError firstError = null;
+        for (Map.Entry<String,Future<Object>> entry : futures.entrySet()) {
+            String name = entry.getKey();
+            try {
+                results.values.put(name, entry.getValue().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+                continue;
+            } catch (TimeoutException e) {
+                entry.getValue().cancel(true);
+                firstError = firstError != null ? firstError : new BridgeError(String.format(
+                    "The Nagios XI instance %s did not respond within %d ms", name, instanceTimeoutMillis));
+            } catch (ExecutionException e) {
+                firstError = firstError != null ? firstError : e.getCause() instanceof BridgeError
+                    ? (BridgeError)e.getCause()
+                    : new BridgeError("Unable to query the Nagios XI instance " + name, e.getCause());
+            } catch (CancellationException e) {
+                firstError = firstError != null ? firstError : new BridgeError(
+                    "The query of the Nagios XI instance " + name + " was cancelled", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.values().forEach((future) -> future.cancel(true));
+                throw new BridgeError("Interrupted while waiting for the Nagios XI instances", e);
+            }
+            failures.get(name).incrementAndGet();
+            results.unavailable.add(name);
+        }
+        if (results.unavailable.isEmpty() == false) {
+            if (partialResults == false || results.values.isEmpty()) {
+                throw firstError;
+            }
+            partials.incrementAndGet();
+            LOGGER.warn("Returning partial results without the Nagios XI instances {}: {}",
+                results.unavailable, firstError.getMessage());
+        }
+        return results;
+    }
+
+    private static long recordCount(RecordList list) {
+        String count = list.getMetadata() == null ? null : list.getMetadata().get("count");
+        return StringUtils.isNumeric(count) && count.isEmpty() == false
+            ? Long.parseLong(count)
+            : list.getRecords().size();
+    }
+
+    /** A copy of the request with other fields. */
+    private static BridgeRequest withFields(BridgeRequest request, List<String> fields) {
+        BridgeRequest copy = new BridgeRequest();
+        copy.setStructure(request.getStructure());
+        copy.setQuery(request.getQuery());
+        copy.setFields(new ArrayList<>(fields));
+        copy.setMetadata(request.getMetadata());
+        copy.setParameters(request.getParameters());
+        return copy;
+    }
+
+    /** Copies the requested fields of a record, with the instance name when it is requested. */
+    private static Record tag(Record record, String instance, List<String> fields) {
+        Map<String,Object> values = new LinkedHashMap<>();
+        for (String field : fields) {
+            values.put(field, field.equals(INSTANCE_FIELD) ? instance : record.getRecord().get(field));
+        }
+        return new Record(values);
+    }
+}
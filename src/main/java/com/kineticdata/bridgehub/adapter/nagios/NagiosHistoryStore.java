@@ -0,0 +1,341 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Incrementally synchronized, time ordered copy of an append-only history structure
+ * (objects/statehistory or objects/logentries).
+ *
+ * The first sync loads the whole retention window; every later sync only asks Nagios XI for entries
+ * at or after the newest timestamp already held.  Entries are kept in one hour segments so aging
+ * out old data and answering time range queries only touch the segments involved.  Searches whose
+ * <code>starttime</code> falls inside the synchronized window are answered locally.
+ */
+public class NagiosHistoryStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NagiosHistoryStore.class);
+
+    /** The field holding each entry's timestamp, per supported structure. */
+    public static final Map<String,String> TIME_FIELDS = Collections.unmodifiableMap(
+        Stream.of(
+            new SimpleEntry<>("objects/statehistory", "state_time"),
+            new SimpleEntry<>("objects/logentries", "entry_time")
+        ).collect(Collectors.toMap((e) -> e.getKey(), (e) -> e.getValue()))
+    );
+
+    private static final long SEGMENT_SECONDS = 3600;
+    private static final DateTimeFormatter NAGIOS_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /** Loads the entries of a structure between two epoch second timestamps (inclusive). */
+    public interface DeltaLoader {
+        List<Object> load(String structure, long startTime, long endTime) throws BridgeError;
+    }
+
+    private static class Entry {
+        private final long time;
+        private final Object element;
+
+        private Entry(long time, Object element) {
+            this.time = time;
+            this.element = element;
+        }
+    }
+
+    private final String structure;
+    private final String timeField;
+    private final ZoneId zone;
+    private final long retentionSeconds;
+    private final int maxEntries;
+    private final DeltaLoader loader;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TreeMap<Long,List<Entry>> segments = new TreeMap<>();
+    /** Elements already held at the newest timestamp, used to skip them when they are fetched again. */
+    private Set<String> newestElements = new HashSet<>();
+    private int size;
+    private long coveredFrom = Long.MAX_VALUE;
+    private long newestTime = -1;
+    private long syncedAt = -1;
+    private long syncs;
+    private long syncFailures;
+    private long fetchedEntries;
+    private final List<ScheduledFuture<?>> tasks = new ArrayList<>();
+
+    public NagiosHistoryStore(String structure, ZoneId zone, long retentionSeconds, int maxEntries, DeltaLoader loader) {
+        this.structure = structure;
+        this.timeField = TIME_FIELDS.get(structure);
+        this.zone = zone;
+        this.retentionSeconds = retentionSeconds;
+        this.maxEntries = maxEntries;
+        this.loader = loader;
+    }
+
+    public static boolean isSupported(String structure) {
+        return TIME_FIELDS.containsKey(structure);
+    }
+
+    /** Schedules the incremental sync and the retention clean up, starting immediately. */
+    public synchronized void start(ScheduledExecutorService executor, long syncIntervalMillis) {
+        tasks.add(executor.scheduleWithFixedDelay(this::sync, 0, syncIntervalMillis, TimeUnit.MILLISECONDS));
+        tasks.add(executor.scheduleWithFixedDelay(this::expire, 60, 60, TimeUnit.SECONDS));
+    }
+
+    public synchronized void stop() {
+        tasks.forEach((task) -> task.cancel(true));
+        tasks.clear();
+    }
+
+    /** Fetches the entries newer than the newest one held. */
+    public void sync() {
+        long now = System.currentTimeMillis() / 1000;
+        long start;
+        lock.readLock().lock();
+        try {
+            start = newestTime < 0 ? now - retentionSeconds : newestTime;
+        } finally {
+            lock.readLock().unlock();
+        }
+        try {
+            List<Object> elements = loader.load(structure, start, now);
+            append(elements, start, now);
+        } catch (BridgeError | RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                syncFailures++;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            LOGGER.warn("Unable to sync the history of " + structure, e);
+        }
+    }
+
+    /**
+     * Returns the entries between the start and end times (inclusive) that match the filter, or
+     * null if the start of the range is older than the data held locally.  Like mirrored
+     * snapshots, entries newer than the last sync only show up after the next one.
+     */
+    public List<Object> select(long startTime, long endTime, NagiosQueryFilter filter, Comparator<Object> order) {
+        List<Object> matches = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            if (syncedAt < 0 || startTime < coveredFrom) {
+                return null;
+            }
+            if (endTime < startTime) {
+                return matches;
+            }
+            Long first = segments.floorKey(segmentOf(startTime));
+            // Only the segments that overlap the range are walked, not the rest of the retention.
+            NavigableMap<Long,List<Entry>> range = segments.subMap(
+                first == null ? segmentOf(startTime) : first, true, segmentOf(endTime), true);
+            for (List<Entry> segment : range.values()) {
+                for (Entry entry : segment) {
+                    if (entry.time > endTime) {
+                        break;
+                    }
+                    if (entry.time >= startTime && filter.matches(entry.element)) {
+                        matches.add(entry.element);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (order != null) {
+            matches.sort(order);
+        }
+        return matches;
+    }
+
+    /**
+     * Answers a resolved Nagios XI qualification locally, if it names a <code>starttime</code>
+     * inside the synchronized window.  Returns null when it has to go to Nagios XI.
+     */
+    public List<Object> select(String query, Comparator<Object> order) {
+        Long startTime = null;
+        Long endTime = null;
+        List<String> remaining = new ArrayList<>();
+        if (StringUtils.isNotBlank(query)) {
+            for (String pair : query.split("&")) {
+                try {
+                    if (pair.startsWith("starttime=")) {
+                        startTime = Long.valueOf(pair.substring("starttime=".length()));
+                    } else if (pair.startsWith("endtime=")) {
+                        endTime = Long.valueOf(pair.substring("endtime=".length()));
+                    } else {
+                        remaining.add(pair);
+                    }
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+        }
+        NagiosQueryFilter filter = NagiosQueryFilter.parse(StringUtils.join(remaining, "&"));
+        if (startTime == null || filter == null) {
+            return null;
+        }
+        return select(startTime, endTime == null ? System.currentTimeMillis() / 1000 : endTime, filter, order);
+    }
+
+    /** Drops entries that have fallen out of the retention window. */
+    public void expire() {
+        long cutoff = System.currentTimeMillis() / 1000 - retentionSeconds;
+        lock.writeLock().lock();
+        try {
+            dropBefore(cutoff);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public Map<String,Long> getStats() {
+        Map<String,Long> stats = new LinkedHashMap<>();
+        lock.readLock().lock();
+        try {
+            stats.put(structure + ".size", (long)size);
+            stats.put(structure + ".segments", (long)segments.size());
+            stats.put(structure + ".coveredFrom", coveredFrom == Long.MAX_VALUE ? -1 : coveredFrom);
+            stats.put(structure + ".newestTime", newestTime);
+            stats.put(structure + ".syncs", syncs);
+            stats.put(structure + ".syncFailures", syncFailures);
+            stats.put(structure + ".fetchedEntries", fetchedEntries);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return stats;
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PRIVATE HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    private void append(List<Object> elements, long requestedFrom, long requestedTo) {
+        List<Entry> entries = new ArrayList<>(elements.size());
+        for (Object element : elements) {
+            Long time = parseTime(element);
+            if (time != null) {
+                entries.add(new Entry(time, element));
+            }
+        }
+        // Stable sort, so entries sharing a second keep the order Nagios XI returned them in.
+        entries.sort(Comparator.comparingLong((entry) -> entry.time));
+
+        lock.writeLock().lock();
+        try {
+            long previousNewest = newestTime;
+            Set<String> atNewest = new HashSet<>();
+            for (Entry entry : entries) {
+                if (entry.time < previousNewest
+                    || (entry.time == previousNewest && newestElements.contains(String.valueOf(entry.element))))
+                {
+                    continue;
+                }
+                segments.computeIfAbsent(segmentOf(entry.time), (key) -> new ArrayList<>()).add(entry);
+                size++;
+                if (entry.time > newestTime) {
+                    newestTime = entry.time;
+                    atNewest.clear();
+                }
+                if (entry.time == newestTime) {
+                    atNewest.add(String.valueOf(entry.element));
+                }
+            }
+            if (newestTime == previousNewest) {
+                newestElements.addAll(atNewest);
+            } else if (atNewest.isEmpty() == false) {
+                newestElements = atNewest;
+            }
+            if (coveredFrom == Long.MAX_VALUE) {
+                coveredFrom = requestedFrom;
+            }
+            if (newestTime < 0) {
+                // Nothing has happened yet; later syncs continue from the end of this window.
+                newestTime = requestedTo;
+            }
+            syncedAt = requestedTo;
+            syncs++;
+            fetchedEntries += elements.size();
+            dropBefore(requestedTo - retentionSeconds);
+            while (size > maxEntries && segments.isEmpty() == false) {
+                Map.Entry<Long,List<Entry>> oldest = segments.pollFirstEntry();
+                size -= oldest.getValue().size();
+                coveredFrom = Math.max(coveredFrom, oldest.getKey() + SEGMENT_SECONDS);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Removes entries older than the cutoff; the caller must hold the write lock. */
+    private void dropBefore(long cutoff) {
+        Iterator<Map.Entry<Long,List<Entry>>> iterator = segments.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long,List<Entry>> segment = iterator.next();
+            if (segment.getKey() + SEGMENT_SECONDS <= cutoff) {
+                size -= segment.getValue().size();
+                iterator.remove();
+            } else {
+                if (segment.getKey() < cutoff) {
+                    List<Entry> kept = new ArrayList<>();
+                    for (Entry entry : segment.getValue()) {
+                        if (entry.time >= cutoff) {
+                            kept.add(entry);
+                        }
+                    }
+                    size -= segment.getValue().size() - kept.size();
+                    segment.setValue(kept);
+                }
+                break;
+            }
+        }
+        if (coveredFrom != Long.MAX_VALUE) {
+            coveredFrom = Math.max(coveredFrom, cutoff);
+        }
+    }
+
+    private static long segmentOf(long time) {
+        return time - Math.floorMod(time, SEGMENT_SECONDS);
+    }
+
+    /** Reads the entry's timestamp, either epoch seconds or Nagios' yyyy-MM-dd HH:mm:ss format. */
+    private Long parseTime(Object element) {
+        Object value = element instanceof Map ? ((Map)element).get(timeField) : null;
+        if (value == null) {
+            return null;
+        }
+        String text = String.valueOf(value).trim();
+        try {
+            if (text.matches("\\d+")) {
+                return Long.valueOf(text);
+            }
+            return LocalDateTime.parse(text, NAGIOS_TIME).atZone(zone).toEpochSecond();
+        } catch (DateTimeParseException | NumberFormatException e) {
+            return null;
+        }
+    }
+}
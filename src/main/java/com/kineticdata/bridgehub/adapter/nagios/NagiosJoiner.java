@@ -0,0 +1,257 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import com.kineticdata.bridgehub.adapter.BridgeRequest;
+import com.kineticdata.bridgehub.adapter.Record;
+import com.kineticdata.bridgehub.adapter.RecordList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Enriches the records of a search with fields of related records from other structures, so a
+ * page of services can show the address and state of their hosts without a retrieve per row.
+ *
+ * The joins are named by the <code>join</code> metadata of the search, a comma separated list of
+ * <code>alias=structure:field</code> entries (or <code>alias=structure:field:joinedField</code>
+ * when the fields are named differently), such as <code>host=objects/hoststatus:host_name</code>.
+ * The joined fields are then requested as <code>alias.field</code>, such as
+ * <code>host.address</code>.  The primary search runs as usual; the distinct values of its join
+ * field are then looked up with a few <code>in:</code> searches of the joined structure, which go
+ * through the adapter's mirror and caches like any other search.  A lookup that returns a full
+ * page is repeated for the values it left without a match.  The first joined record found for a
+ * value is used, and the joined fields of records without a match are null.
+ */
+public class NagiosJoiner {
+
+    /** The request metadata naming the joins of a search. */
+    public static final String METADATA = "join";
+
+    private static final String KEYS_PARAMETER = "Join Keys";
+    /** How many joined records a lookup asks for, since a join value may match several. */
+    private static final int LOOKUP_PAGE_SIZE = 1000;
+
+    /** Runs a search through the adapter. */
+    public interface Searcher {
+        RecordList search(BridgeRequest request) throws BridgeError;
+    }
+
+    /** One <code>alias=structure:field[:joinedField]</code> entry of the join metadata. */
+    private static class Join {
+        private final String structure;
+        private final String field;
+        private final String joinedField;
+        private final List<String> fields = new ArrayList<>();
+        private final Map<String,Map<String,Object>> matches = new HashMap<>();
+
+        private Join(String structure, String field, String joinedField) {
+            this.structure = structure;
+            this.field = field;
+            this.joinedField = joinedField;
+        }
+    }
+
+    private final Searcher searcher;
+    private final int batchSize;
+    private final AtomicLong searches = new AtomicLong();
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong keys = new AtomicLong();
+    private final AtomicLong unmatched = new AtomicLong();
+    private final AtomicLong truncated = new AtomicLong();
+
+    /**
+     * @param batchSize the most join values looked up by one search of a joined structure
+     */
+    public NagiosJoiner(Searcher searcher, int batchSize) {
+        this.searcher = searcher;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /** Whether the request asks for joined fields. */
+    public static boolean isJoined(BridgeRequest request) {
+        return request.getMetadata() != null && StringUtils.isNotBlank(request.getMetadata().get(METADATA));
+    }
+
+    /** Runs the primary search of a joined request and merges the joined fields into its records. */
+    public RecordList search(BridgeRequest request) throws BridgeError {
+        Map<String,Join> joins = parse(request.getMetadata().get(METADATA));
+        List<String> primaryFields = new ArrayList<>();
+        for (String field : request.getFields()) {
+            Join join = joins.get(StringUtils.substringBefore(field, "."));
+            if (join != null && field.contains(".")) {
+                join.fields.add(StringUtils.substringAfter(field, "."));
+            } else if (primaryFields.contains(field) == false) {
+                primaryFields.add(field);
+            }
+        }
+        // Joins none of whose fields are requested cost nothing.
+        joins.values().removeIf((join) -> join.fields.isEmpty());
+        for (Join join : joins.values()) {
+            if (primaryFields.contains(join.field) == false) {
+                primaryFields.add(join.field);
+            }
+        }
+
+        Map<String,String> primaryMetadata = new HashMap<>(request.getMetadata());
+        primaryMetadata.remove(METADATA);
+        RecordList primary = searcher.search(copy(request.getStructure(), request.getQuery(),
+            primaryFields, primaryMetadata, request.getParameters()));
+        searches.incrementAndGet();
+
+        for (Join join : joins.values()) {
+            lookUp(join, primary.getRecords());
+        }
+
+        List<Record> records = new ArrayList<>(primary.getRecords().size());
+        for (Record record : primary.getRecords()) {
+            Map<String,Object> values = new LinkedHashMap<>();
+            for (String field : request.getFields()) {
+                Join join = joins.get(StringUtils.substringBefore(field, "."));
+                if (join != null && field.contains(".")) {
+                    Map<String,Object> match = join.matches.get(key(record.getRecord().get(join.field)));
+                    values.put(field, match == null ? null : match.get(StringUtils.substringAfter(field, ".")));
+                } else {
+                    values.put(field, record.getRecord().get(field));
+                }
+            }
+            records.add(new Record(values));
+        }
+        return new RecordList(request.getFields(), records, new LinkedHashMap<>(primary.getMetadata()));
+    }
+
+    /**
+     * Returns the joined searches run, the lookup searches they needed, the distinct join values
+     * looked up (keys), those that matched no joined record (unmatched) and the lookups that
+     * returned a full page and were repeated for the values still missing (truncated).
+     */
+    public Map<String,Long> getStats() {
+        Map<String,Long> stats = new LinkedHashMap<>();
+        stats.put("searches", searches.get());
+        stats.put("lookups", lookups.get());
+        stats.put("keys", keys.get());
+        stats.put("unmatched", unmatched.get());
+        stats.put("truncated", truncated.get());
+        return stats;
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PRIVATE HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    private static Map<String,Join> parse(String metadata) throws BridgeError {
+        Map<String,Join> joins = new LinkedHashMap<>();
+        for (String entry : metadata.split(",")) {
+            String alias = StringUtils.substringBefore(entry, "=").trim();
+            String[] target = StringUtils.substringAfter(entry, "=").trim().split(":");
+            if (alias.isEmpty() || alias.contains(".") || target.length < 2 || target.length > 3
+                || StringUtils.isBlank(target[0]) || StringUtils.isBlank(target[1]))
+            {
+                throw new BridgeError("Invalid join '" + entry.trim()
+                    + "', expected alias=structure:field or alias=structure:field:joinedField.");
+            }
+            if (joins.containsKey(alias)) {
+                throw new BridgeError("The join alias '" + alias + "' is used more than once.");
+            }
+            joins.put(alias, new Join(target[0].trim(), target[1].trim(),
+                target.length == 3 ? target[2].trim() : target[1].trim()));
+        }
+        return joins;
+    }
+
+    /** Looks up the joined records of the distinct join values of the records, a batch at a time. */
+    private void lookUp(Join join, List<Record> records) throws BridgeError {
+        Set<String> values = new LinkedHashSet<>();
+        for (Record record : records) {
+            Object value = record.getRecord().get(join.field);
+            if (value != null && StringUtils.isNotEmpty(value.toString())) {
+                values.add(value.toString());
+            }
+        }
+        keys.addAndGet(values.size());
+
+        List<String> fields = new ArrayList<>(join.fields);
+        if (fields.contains(join.joinedField) == false) {
+            fields.add(join.joinedField);
+        }
+        List<String> batch = new ArrayList<>(batchSize);
+        for (String value : values) {
+            if (value.contains(",")) {
+                // An in: list can't hold a value with a comma, so it is looked up on its own.
+                lookUp(join, fields, Collections.singletonList(value));
+                continue;
+            }
+            batch.add(value);
+            if (batch.size() == batchSize) {
+                lookUp(join, fields, batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (batch.isEmpty() == false) {
+            lookUp(join, fields, batch);
+        }
+        for (String value : values) {
+            if (join.matches.containsKey(key(value)) == false) {
+                unmatched.incrementAndGet();
+            }
+        }
+    }
+
+    private void lookUp(Join join, List<String> fields, List<String> values) throws BridgeError {
+        boolean single = values.size() == 1 && values.get(0).contains(",");
+        String query = join.joinedField + (single ? "=" : "=in:") + "<%=parameter[\"" + KEYS_PARAMETER + "\"]%>";
+        Map<String,String> metadata = new HashMap<>();
+        metadata.put("pageSize", String.valueOf(LOOKUP_PAGE_SIZE));
+        metadata.put("offset", "0");
+        Map<String,String> parameters = new HashMap<>();
+        parameters.put(KEYS_PARAMETER, StringUtils.join(values, ","));
+        RecordList matches = searcher.search(copy(join.structure, query, fields, metadata, parameters));
+        lookups.incrementAndGet();
+        for (Record match : matches.getRecords()) {
+            join.matches.putIfAbsent(key(match.getRecord().get(join.joinedField)), match.getRecord());
+        }
+
+        if (matches.getRecords().size() >= LOOKUP_PAGE_SIZE && values.size() > 1) {
+            // The values matched more records than one lookup returns, so the values still without
+            // a match may have been cut off; look them up again, in halves if none matched.
+            truncated.incrementAndGet();
+            List<String> missing = new ArrayList<>();
+            for (String value : values) {
+                if (join.matches.containsKey(key(value)) == false) {
+                    missing.add(value);
+                }
+            }
+            if (missing.size() < values.size()) {
+                if (missing.isEmpty() == false) {
+                    lookUp(join, fields, missing);
+                }
+            } else {
+                lookUp(join, fields, values.subList(0, values.size() / 2));
+                lookUp(join, fields, values.subList(values.size() / 2, values.size()));
+            }
+        }
+    }
+
+    /** The value a join matches on, so that "1" and "1.0" match each other as Nagios XI does. */
+    private static String key(Object value) {
+        return value == null ? null : NagiosQueryFilter.normalize(value);
+    }
+
+    private static BridgeRequest copy(String structure, String query, List<String> fields,
+        Map<String,String> metadata, Map<String,String> parameters)
+    {
+        BridgeRequest copy = new BridgeRequest();
+        copy.setStructure(structure);
+        copy.setQuery(query);
+        copy.setFields(fields);
+        copy.setMetadata(metadata);
+        copy.setParameters(parameters);
+        return copy;
+    }
+}
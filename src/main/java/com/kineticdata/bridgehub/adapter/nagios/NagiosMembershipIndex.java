@@ -0,0 +1,162 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A local, bidirectional index of host, service and contact group membership.
+ *
+ * Nagios XI returns <code>objects/hostgroupmembers</code> (and the service and contact group
+ * equivalents) as one document per group with its members nested inside, and can't filter on the
+ * members.  The index flattens each of these structures into one row per group and member, and
+ * serves the rows as a virtual structure, such as <code>objects/hostgroupmembership</code>, indexed
+ * on both the group and the member fields.  Both "which hosts are in group G?"
+ * (<code>hostgroup_name=G</code>) and "which groups is host H in?" (<code>host_name=H</code>) are
+ * then answered locally, through the normal search and count calls.
+ *
+ * The rows are held in {@link NagiosMirror} snapshots, so reads never lock and each refresh
+ * replaces a structure's rows in one step.  With a {@link NagiosSnapshotStore} they are also kept
+ * on disk between runs.
+ */
+public class NagiosMembershipIndex {
+
+    /** The virtual structures, mapped to the Nagios XI structure each one is built from. */
+    public static final Map<String,String> STRUCTURES = Collections.unmodifiableMap(
+        Stream.of(
+            new SimpleEntry<>("objects/hostgroupmembership", "objects/hostgroupmembers"),
+            new SimpleEntry<>("objects/servicegroupmembership", "objects/servicegroupmembers"),
+            new SimpleEntry<>("objects/contactgroupmembership", "objects/contactgroupmembers")
+        ).collect(Collectors.toMap((e) -> e.getKey(), (e) -> e.getValue(), (a, b) -> a, LinkedHashMap::new)));
+
+    /** The member element name used inside each group document. */
+    private static final Map<String,String> MEMBER_TYPES = Collections.unmodifiableMap(
+        Stream.of(
+            new SimpleEntry<>("objects/hostgroupmembers", "host"),
+            new SimpleEntry<>("objects/servicegroupmembers", "service"),
+            new SimpleEntry<>("objects/contactgroupmembers", "contact")
+        ).collect(Collectors.toMap((e) -> e.getKey(), (e) -> e.getValue())));
+
+    private static final Set<String> INDEX_FIELDS = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(
+        "hostgroup_name", "hostgroup_object_id", "host_name", "host_object_id",
+        "servicegroup_name", "servicegroup_object_id", "service_description", "service_object_id",
+        "contactgroup_name", "contactgroup_object_id", "contact_name", "contact_object_id")));
+
+    private final NagiosMirror snapshots;
+
+    /** Builds the given virtual structures from the group member structures loaded by the loader. */
+    public NagiosMembershipIndex(Set<String> structures, NagiosMirror.SnapshotLoader loader) {
+        this(structures, loader, null);
+    }
+
+    public NagiosMembershipIndex(Set<String> structures, NagiosMirror.SnapshotLoader loader,
+        NagiosSnapshotStore store)
+    {
+        this.snapshots = new NagiosMirror(structures, INDEX_FIELDS, (structure) -> {
+            String source = STRUCTURES.get(structure);
+            return flatten(source, loader.load(source));
+        }, store);
+    }
+
+    public void start(ScheduledExecutorService executor, long intervalMillis) {
+        snapshots.start(executor, intervalMillis);
+    }
+
+    public void stop() {
+        snapshots.stop();
+    }
+
+    public boolean isIndexed(String structure) {
+        return snapshots.isMirrored(structure);
+    }
+
+    /**
+     * Returns the rows of the virtual structure that match the filter.  If the structure hasn't
+     * been loaded yet it is loaded now.
+     */
+    public List<Object> select(String structure, NagiosQueryFilter filter, Comparator<Object> order)
+        throws BridgeError
+    {
+        NagiosMirror.Snapshot snapshot = snapshots.getSnapshot(structure);
+        if (snapshot == null) {
+            snapshots.refresh(structure);
+            snapshot = snapshots.getSnapshot(structure);
+            if (snapshot == null) {
+                throw new BridgeError(String.format(
+                    "The %s membership index could not be loaded from %s.", structure, STRUCTURES.get(structure)));
+            }
+        }
+        return snapshot.select(filter, order);
+    }
+
+    public Map<String,Long> getStats() {
+        return snapshots.getStats();
+    }
+
+    /**
+     * Turns group documents into one row per group and member.  Each row holds the group's own
+     * fields, its <code>&lt;type&gt;group_object_id</code>, the member's fields and its
+     * <code>&lt;type&gt;_object_id</code>.
+     */
+    static List<Object> flatten(String structure, List<Object> groups) {
+        String type = MEMBER_TYPES.get(structure);
+        List<Object> rows = new ArrayList<>();
+        for (Object group : groups) {
+            if (group instanceof Map == false) {
+                continue;
+            }
+            Map<String,Object> groupFields = new LinkedHashMap<>();
+            Object members = copyFields((Map<?,?>)group, type + "group_object_id", groupFields);
+            Object memberList = members instanceof Map ? ((Map<?,?>)members).get(type) : null;
+            // A group with a single member may hold it as an object rather than a list.
+            List<?> memberElements = memberList instanceof List
+                ? (List<?>)memberList
+                : memberList == null ? Collections.emptyList() : Collections.singletonList(memberList);
+            for (Object member : memberElements) {
+                if (member instanceof Map) {
+                    Map<String,Object> row = new LinkedHashMap<>(groupFields);
+                    copyFields((Map<?,?>)member, type + "_object_id", row);
+                    rows.add(row);
+                }
+            }
+        }
+        return rows;
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PRIVATE HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    /**
+     * Copies the plain fields of an element into the row, with its <code>@attributes</code> id under
+     * the given name.  Returns the element's <code>members</code> value, if any.
+     */
+    private static Object copyFields(Map<?,?> element, String idField, Map<String,Object> row) {
+        Object members = null;
+        for (Map.Entry<?,?> entry : element.entrySet()) {
+            String name = String.valueOf(entry.getKey());
+            Object value = entry.getValue();
+            if (name.equals("members")) {
+                members = value;
+            } else if (name.equals("@attributes")) {
+                if (value instanceof Map && ((Map<?,?>)value).get("id") != null) {
+                    row.put(idField, String.valueOf(((Map<?,?>)value).get("id")));
+                }
+            } else if (value instanceof Map == false && value instanceof List == false) {
+                row.put(name, value);
+            }
+        }
+        return members;
+    }
+}
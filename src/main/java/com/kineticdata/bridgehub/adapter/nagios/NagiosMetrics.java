@@ -0,0 +1,312 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency, throughput and error metrics per bridge operation and structure.
+ *
+ * Every Nagios XI call is broken down into phases: <code>connect</code> (leasing or opening a
+ * pooled connection), <code>server</code> (from sending the request until the response headers
+ * arrive), <code>transfer</code> (time spent waiting on the response body, including
+ * decompression), <code>parse</code> (JSON decoding) and <code>map</code> (turning elements into
+ * records).  Metrics are keyed on <code>operation structure</code>, for example
+ * <code>search objects/servicestatus</code>; calls made outside of a bridge operation (cache
+ * refreshes, mirror and history syncs) are recorded under the <code>background</code> operation.
+ */
+public class NagiosMetrics implements NagiosMetricsMXBean {
+
+    public static final String[] PHASES = {"total", "connect", "server", "transfer", "parse", "map"};
+
+    private static final ThreadLocal<String> CURRENT_OPERATION = new ThreadLocal<>();
+    private static final ThreadLocal<Call> CURRENT_CALL = new ThreadLocal<>();
+
+    /** A bridge operation that returns a value or fails with a BridgeError. */
+    public interface Operation<V> {
+        V run() throws BridgeError;
+    }
+
+    private final Map<String,Stats> stats = new ConcurrentHashMap<>();
+    private final AtomicLong inFlight = new AtomicLong();
+
+    /** Runs a bridge operation, recording its latency, outcome and the Nagios XI calls it makes. */
+    public <V> V time(String operation, String structure, Operation<V> body) throws BridgeError {
+        Stats operationStats = stats(operation, structure);
+        String previous = CURRENT_OPERATION.get();
+        CURRENT_OPERATION.set(operation);
+        inFlight.incrementAndGet();
+        operationStats.inFlight.incrementAndGet();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            V result = body.run();
+            failed = false;
+            return result;
+        } finally {
+            operationStats.histograms[0].record(System.nanoTime() - start);
+            operationStats.operations.increment();
+            if (failed) {
+                operationStats.errors.increment();
+            }
+            operationStats.inFlight.decrementAndGet();
+            inFlight.decrementAndGet();
+            if (previous == null) {
+                CURRENT_OPERATION.remove();
+            } else {
+                CURRENT_OPERATION.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Runs part of an operation on another thread, so the Nagios XI calls it makes are queued and
+     * recorded as the operation's rather than as background calls.
+     */
+    public static <V> V runAs(String operation, Operation<V> body) throws BridgeError {
+        String previous = CURRENT_OPERATION.get();
+        CURRENT_OPERATION.set(operation);
+        try {
+            return body.run();
+        } finally {
+            if (previous == null) {
+                CURRENT_OPERATION.remove();
+            } else {
+                CURRENT_OPERATION.set(previous);
+            }
+        }
+    }
+
+    /** Starts timing a single Nagios XI call made by the current thread. */
+    public Call startCall(String structure) {
+        Call call = new Call(stats(currentOperation(), structure));
+        CURRENT_CALL.set(call);
+        return call;
+    }
+
+    /** The bridge operation running on this thread, or <code>background</code>. */
+    public static String currentOperation() {
+        String operation = CURRENT_OPERATION.get();
+        return operation == null ? "background" : operation;
+    }
+
+    /** The Nagios XI call in progress on this thread, or null. */
+    public static Call currentCall() {
+        return CURRENT_CALL.get();
+    }
+
+    /**
+     * Wraps an element handler so the time it spends (mapping elements into records) and the
+     * number of elements it handles are added to the current call.
+     */
+    public static NagiosResponseReader.ElementHandler timed(NagiosResponseReader.ElementHandler handler) {
+        Call call = CURRENT_CALL.get();
+        if (call == null) {
+            return handler;
+        }
+        return (element) -> {
+            long start = System.nanoTime();
+            try {
+                return handler.handle(element);
+            } finally {
+                call.mapNanos += System.nanoTime() - start;
+                call.records++;
+            }
+        };
+    }
+
+    @Override
+    public long getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Returns every metric as a flat map, for example
+     * <code>search objects/servicestatus.server.p99Micros</code> or
+     * <code>count objects/host.status.500</code>.
+     */
+    @Override
+    public Map<String,Long> getSnapshot() {
+        Map<String,Long> snapshot = new TreeMap<>();
+        snapshot.put("inFlight", inFlight.get());
+        stats.forEach((key, operationStats) -> operationStats.snapshot(key, snapshot));
+        return snapshot;
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PRIVATE HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    private Stats stats(String operation, String structure) {
+        return stats.computeIfAbsent(operation + " " + structure, (key) -> new Stats());
+    }
+
+    /**
+     * The phases of one Nagios XI call.  Hedged and retried attempts may report sending and
+     * receiving from other threads; the first request sent and the first response received count.
+     */
+    public static class Call {
+        private final Stats stats;
+        private final long start = System.nanoTime();
+        private volatile long sent;
+        private volatile long received;
+        private volatile long serverNanos;
+        private long bodyStart;
+        private long readNanos;
+        private long mapNanos;
+        private long records;
+
+        private Call(Stats stats) {
+            this.stats = stats;
+        }
+
+        /** The request is about to be written to an open connection. */
+        public void requestSent() {
+            if (sent == 0) {
+                sent = System.nanoTime();
+            }
+        }
+
+        /**
+         * The response headers have been read.
+         *
+         * @param serverNanos the time since this attempt's request was written to its connection
+         */
+        public void responseReceived(long serverNanos) {
+            if (received == 0) {
+                received = System.nanoTime();
+                this.serverNanos = serverNanos;
+            }
+        }
+
+        /**
+         * The time Nagios XI took to answer the first response received, without waiting for a
+         * pooled connection, connecting or retry backoff; 0 when no response arrived.
+         */
+        public long getServerNanos() {
+            return serverNanos;
+        }
+
+        /** The body is about to be consumed. */
+        public void bodyStarted() {
+            bodyStart = System.nanoTime();
+        }
+
+        /** Adds time spent blocked reading the body. */
+        public void addReadNanos(long nanos) {
+            readNanos += nanos;
+        }
+
+        /** Records a response status other than 2xx, or 0 for a connection failure. */
+        public void failed(int status) {
+            stats.statuses.computeIfAbsent(status, (key) -> new LongAdder()).increment();
+        }
+
+        /** Completes the call, recording its phases and the number of bytes transferred. */
+        public void finish(long transferredBytes) {
+            long end = System.nanoTime();
+            CURRENT_CALL.remove();
+            stats.requests.increment();
+            stats.responseBytes.add(transferredBytes);
+            stats.records.add(records);
+            if (sent > 0) {
+                stats.histograms[1].record(sent - start);
+            }
+            if (received > 0) {
+                stats.histograms[2].record(received - sent);
+            }
+            if (bodyStart > 0) {
+                stats.histograms[3].record(readNanos);
+                stats.histograms[4].record(Math.max(0, end - bodyStart - readNanos - mapNanos));
+                stats.histograms[5].record(mapNanos);
+            }
+        }
+    }
+
+    private static class Stats {
+        private final Histogram[] histograms = new Histogram[PHASES.length];
+        private final LongAdder operations = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder responseBytes = new LongAdder();
+        private final LongAdder records = new LongAdder();
+        private final AtomicLong inFlight = new AtomicLong();
+        private final Map<Integer,LongAdder> statuses = new ConcurrentHashMap<>();
+
+        private Stats() {
+            for (int i = 0; i < histograms.length; i++) {
+                histograms[i] = new Histogram();
+            }
+        }
+
+        private void snapshot(String key, Map<String,Long> snapshot) {
+            snapshot.put(key + ".operations", operations.sum());
+            snapshot.put(key + ".errors", errors.sum());
+            snapshot.put(key + ".inFlight", inFlight.get());
+            snapshot.put(key + ".requests", requests.sum());
+            snapshot.put(key + ".responseBytes", responseBytes.sum());
+            snapshot.put(key + ".records", records.sum());
+            statuses.forEach((status, count) -> snapshot.put(key + ".status." + status, count.sum()));
+            for (int i = 0; i < PHASES.length; i++) {
+                if (histograms[i].count() > 0) {
+                    snapshot.put(key + "." + PHASES[i] + ".count", histograms[i].count());
+                    snapshot.put(key + "." + PHASES[i] + ".p50Micros", histograms[i].percentileMicros(0.5));
+                    snapshot.put(key + "." + PHASES[i] + ".p99Micros", histograms[i].percentileMicros(0.99));
+                    snapshot.put(key + "." + PHASES[i] + ".p999Micros", histograms[i].percentileMicros(0.999));
+                    snapshot.put(key + "." + PHASES[i] + ".maxMicros", histograms[i].maxMicros());
+                }
+            }
+        }
+    }
+
+    /**
+     * A lock free latency histogram with power of two microsecond buckets (so percentiles are
+     * accurate to within a factor of two), plus the exact maximum.
+     */
+    static class Histogram {
+        private static final int BUCKETS = 40;
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long nanos) {
+            long micros = TimeUnit.NANOSECONDS.toMicros(Math.max(0, nanos));
+            int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+            counts.incrementAndGet(bucket);
+            long current;
+            while (micros > (current = max.get()) && max.compareAndSet(current, micros) == false) {
+                // Retry until the maximum is at least this value.
+            }
+        }
+
+        long count() {
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                total += counts.get(i);
+            }
+            return total;
+        }
+
+        /** The upper bound of the bucket holding the given fraction of recorded values. */
+        long percentileMicros(double fraction) {
+            long total = count();
+            long threshold = (long)Math.ceil(fraction * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts.get(i);
+                if (seen >= threshold && seen > 0) {
+                    return Math.min(i == 0 ? 0 : (1L << i) - 1, max.get());
+                }
+            }
+            return max.get();
+        }
+
+        long maxMicros() {
+            return max.get();
+        }
+    }
+}
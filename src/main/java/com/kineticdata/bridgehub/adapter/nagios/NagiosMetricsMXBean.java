@@ -0,0 +1,16 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import java.util.Map;
+
+/**
+ * JMX view of an adapter's {@link NagiosMetrics}, registered as
+ * <code>com.kineticdata.bridgehub.adapter.nagios:type=NagiosXiAdapter,instance=N</code>.
+ */
+public interface NagiosMetricsMXBean {
+
+    /** Bridge operations currently in progress. */
+    long getInFlight();
+
+    /** Every metric, keyed as described by {@link NagiosMetrics#getSnapshot()}. */
+    Map<String,Long> getSnapshot();
+}
@@ -0,0 +1,238 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps full in-memory snapshots of selected structures (typically objects/hoststatus and
+ * objects/servicestatus) so bridge requests against them can be answered without calling Nagios XI.
+ *
+ * Snapshots are pulled on a fixed interval by a background task and indexed on a configurable set
+ * of fields.  A new snapshot is built completely before it replaces the old one, so readers never
+ * block and never see a partially loaded snapshot.
+ *
+ * With a {@link NagiosSnapshotStore}, each loaded snapshot is also written to disk, and the first
+ * read of a structure that hasn't loaded yet uses the snapshot left on disk by an earlier run until
+ * the background refresh replaces it.
+ */
+public class NagiosMirror {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NagiosMirror.class);
+
+    /** Loads every element of a structure from Nagios XI. */
+    public interface SnapshotLoader {
+        List<Object> load(String structure) throws BridgeError;
+    }
+
+    /** An immutable, indexed copy of every element of a structure. */
+    public static class Snapshot {
+        private final List<Object> elements;
+        private final Map<String,Map<String,int[]>> indexes;
+        private final long loadedAt;
+
+        public Snapshot(List<Object> elements, Set<String> indexFields) {
+            this(elements, indexFields, System.currentTimeMillis());
+        }
+
+        public Snapshot(List<Object> elements, Set<String> indexFields, long loadedAt) {
+            this.elements = Collections.unmodifiableList(new ArrayList<>(elements));
+            this.loadedAt = loadedAt;
+            this.indexes = new HashMap<>();
+            for (String field : indexFields) {
+                Map<String,List<Integer>> postings = new HashMap<>();
+                for (int row = 0; row < this.elements.size(); row++) {
+                    Object element = this.elements.get(row);
+                    Object value = element instanceof Map ? ((Map)element).get(field) : null;
+                    if (value != null) {
+                        postings.computeIfAbsent(NagiosQueryFilter.normalize(value), (key) -> new ArrayList<>()).add(row);
+                    }
+                }
+                Map<String,int[]> index = new HashMap<>();
+                postings.forEach((value, rows) -> index.put(value, rows.stream().mapToInt(Integer::intValue).toArray()));
+                indexes.put(field, index);
+            }
+        }
+
+        public List<Object> getElements() {
+            return elements;
+        }
+
+        public long getLoadedAt() {
+            return loadedAt;
+        }
+
+        /**
+         * Returns the elements matching the filter, in the given order (or snapshot order when the
+         * comparator is null).  Equality and in: conditions on indexed fields narrow the scan to
+         * the rows listed in the index.
+         */
+        public List<Object> select(NagiosQueryFilter filter, Comparator<Object> order) {
+            int[] candidates = null;
+            for (NagiosQueryFilter.Condition condition : filter.getConditions()) {
+                Map<String,int[]> index = indexes.get(condition.getField());
+                if (index == null || (condition.getOperator() != NagiosQueryFilter.Operator.EQ
+                    && condition.getOperator() != NagiosQueryFilter.Operator.IN))
+                {
+                    continue;
+                }
+                int[] rows = lookup(index, condition.getValues());
+                if (candidates == null || rows.length < candidates.length) {
+                    candidates = rows;
+                }
+            }
+
+            List<Object> matches = new ArrayList<>();
+            if (candidates == null) {
+                for (Object element : elements) {
+                    if (filter.matches(element)) {
+                        matches.add(element);
+                    }
+                }
+            } else {
+                for (int row : candidates) {
+                    Object element = elements.get(row);
+                    if (filter.matches(element)) {
+                        matches.add(element);
+                    }
+                }
+            }
+            if (order != null) {
+                matches.sort(order);
+            }
+            return matches;
+        }
+
+        private static int[] lookup(Map<String,int[]> index, List<String> values) {
+            if (values.size() == 1) {
+                int[] rows = index.get(NagiosQueryFilter.normalize(values.get(0)));
+                return rows == null ? new int[0] : rows;
+            }
+            Set<String> keys = new LinkedHashSet<>();
+            for (String value : values) {
+                keys.add(NagiosQueryFilter.normalize(value));
+            }
+            int[] rows = keys.stream()
+                .map(index::get)
+                .filter((postings) -> postings != null)
+                .flatMapToInt(Arrays::stream)
+                .toArray();
+            // Keep snapshot order for the unordered case.
+            Arrays.sort(rows);
+            return rows;
+        }
+    }
+
+    private final Set<String> structures;
+    private final Set<String> indexFields;
+    private final SnapshotLoader loader;
+    private final NagiosSnapshotStore store;
+    /** Structures whose stored snapshot hasn't been read (or superseded by a refresh) yet. */
+    private final Set<String> unwarmed = ConcurrentHashMap.newKeySet();
+    private final Map<String,Snapshot> snapshots = new ConcurrentHashMap<>();
+    private final Map<String,AtomicLong> refreshes = new ConcurrentHashMap<>();
+    private final Map<String,AtomicLong> failures = new ConcurrentHashMap<>();
+    private final List<ScheduledFuture<?>> tasks = new ArrayList<>();
+
+    public NagiosMirror(Set<String> structures, Set<String> indexFields, SnapshotLoader loader) {
+        this(structures, indexFields, loader, null);
+    }
+
+    /**
+     * @param store where snapshots are persisted between runs, or null to keep them in memory only
+     */
+    public NagiosMirror(Set<String> structures, Set<String> indexFields, SnapshotLoader loader,
+        NagiosSnapshotStore store)
+    {
+        this.structures = Collections.unmodifiableSet(new LinkedHashSet<>(structures));
+        this.indexFields = Collections.unmodifiableSet(new LinkedHashSet<>(indexFields));
+        this.loader = loader;
+        this.store = store;
+        if (store != null) {
+            unwarmed.addAll(this.structures);
+        }
+        for (String structure : this.structures) {
+            refreshes.put(structure, new AtomicLong());
+            failures.put(structure, new AtomicLong());
+        }
+    }
+
+    /** Schedules a refresh of every mirrored structure, starting immediately. */
+    public synchronized void start(ScheduledExecutorService executor, long intervalMillis) {
+        for (String structure : structures) {
+            tasks.add(executor.scheduleWithFixedDelay(
+                () -> refresh(structure), 0, intervalMillis, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    public synchronized void stop() {
+        tasks.forEach((task) -> task.cancel(true));
+        tasks.clear();
+    }
+
+    /** Whether the structure is mirrored (whether or not its first snapshot has been loaded). */
+    public boolean isMirrored(String structure) {
+        return structures.contains(structure);
+    }
+
+    /**
+     * Returns the current snapshot of the structure, or null if none has been loaded yet.  Before the
+     * first load the snapshot stored on disk, if any, is read and returned.
+     */
+    public Snapshot getSnapshot(String structure) {
+        Snapshot snapshot = snapshots.get(structure);
+        if (snapshot == null && unwarmed.remove(structure)) {
+            NagiosSnapshotStore.StoredSnapshot stored = store.read(structure);
+            if (stored != null) {
+                snapshots.putIfAbsent(structure, new Snapshot(stored.getElements(), indexFields, stored.getLoadedAt()));
+                snapshot = snapshots.get(structure);
+            }
+        }
+        return snapshot;
+    }
+
+    /** Loads a new snapshot of the structure and swaps it in. */
+    public void refresh(String structure) {
+        try {
+            Snapshot snapshot = new Snapshot(loader.load(structure), indexFields);
+            snapshots.put(structure, snapshot);
+            unwarmed.remove(structure);
+            refreshes.get(structure).incrementAndGet();
+            if (store != null) {
+                store.write(structure, snapshot.getElements(), snapshot.getLoadedAt());
+            }
+            LOGGER.debug("Loaded a {} element snapshot of {}", snapshot.getElements().size(), structure);
+        } catch (BridgeError | RuntimeException e) {
+            failures.get(structure).incrementAndGet();
+            LOGGER.warn("Unable to refresh the mirrored snapshot of " + structure, e);
+        }
+    }
+
+    public Map<String,Long> getStats() {
+        Map<String,Long> stats = new LinkedHashMap<>();
+        long now = System.currentTimeMillis();
+        for (String structure : structures) {
+            Snapshot snapshot = snapshots.get(structure);
+            stats.put(structure + ".size", snapshot == null ? 0L : snapshot.getElements().size());
+            stats.put(structure + ".ageMillis", snapshot == null ? -1L : now - snapshot.getLoadedAt());
+            stats.put(structure + ".refreshes", refreshes.get(structure).get());
+            stats.put(structure + ".failures", failures.get(structure).get());
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,151 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caches Nagios XI objects by their natural keys (such as <code>host_object_id</code>,
+ * <code>host_name</code> or <code>host_name</code> plus <code>service_description</code>), so
+ * that a retrieve of an object that a recent search returned needs no Nagios XI call.
+ *
+ * Whole elements are cached, so a retrieve can ask for different fields than the search did.  A
+ * retrieve is only answered when its qualification names a complete key with plain equality and
+ * the cached element satisfies the rest of the qualification; anything else goes to Nagios XI.
+ */
+public class NagiosObjectCache {
+
+    private static class Entry {
+        private final Object element;
+        private final long expiresAt;
+
+        private Entry(Object element, long expiresAt) {
+            this.element = element;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final Map<String,List<String[]>> keys;
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final LinkedHashMap<String,Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    /**
+     * @param keys the natural keys of each cached structure; each key is one or more field names
+     */
+    public NagiosObjectCache(Map<String,List<String[]>> keys, long ttlMillis, int maxEntries) {
+        this.keys = keys;
+        this.ttlMillis = ttlMillis;
+        this.maxEntries = maxEntries;
+    }
+
+    public boolean isCached(String structure) {
+        return keys.containsKey(structure);
+    }
+
+    /** Caches an element under each of its structure's keys that it has values for. */
+    public void put(String structure, Object element) {
+        List<String[]> structureKeys = keys.get(structure);
+        if (structureKeys == null || element instanceof Map == false) {
+            return;
+        }
+        Entry entry = new Entry(element, System.currentTimeMillis() + ttlMillis);
+        List<String> cacheKeys = new ArrayList<>(structureKeys.size());
+        for (String[] fields : structureKeys) {
+            Map<String,String> values = new HashMap<>();
+            for (String field : fields) {
+                Object value = ((Map<?,?>)element).get(field);
+                if (value != null) {
+                    values.put(field, NagiosQueryFilter.normalize(value));
+                }
+            }
+            String cacheKey = cacheKey(structure, fields, values);
+            if (cacheKey != null) {
+                cacheKeys.add(cacheKey);
+            }
+        }
+        synchronized (this) {
+            cacheKeys.forEach((cacheKey) -> entries.put(cacheKey, entry));
+            Iterator<Map.Entry<String,Entry>> iterator = entries.entrySet().iterator();
+            while (entries.size() > maxEntries && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+                evictions++;
+            }
+        }
+    }
+
+    /**
+     * Returns the cached element the filter identifies by one of its structure's keys, if it is
+     * still fresh and matches the whole filter, otherwise null.
+     */
+    public Object get(String structure, NagiosQueryFilter filter) {
+        List<String[]> structureKeys = keys.get(structure);
+        if (structureKeys == null || filter == null) {
+            return null;
+        }
+        Map<String,String> values = new HashMap<>();
+        for (NagiosQueryFilter.Condition condition : filter.getConditions()) {
+            if (condition.getOperator() == NagiosQueryFilter.Operator.EQ) {
+                values.put(condition.getField(), NagiosQueryFilter.normalize(condition.getValues().get(0)));
+            }
+        }
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            for (String[] fields : structureKeys) {
+                String cacheKey = cacheKey(structure, fields, values);
+                Entry entry = cacheKey == null ? null : entries.get(cacheKey);
+                if (entry != null && entry.expiresAt > now && filter.matches(entry.element)) {
+                    hits++;
+                    return entry.element;
+                }
+            }
+            misses++;
+        }
+        return null;
+    }
+
+    /** Drops every cached object of the structure, or of every structure when it is null. */
+    public synchronized void invalidate(String structure) {
+        if (structure == null) {
+            entries.clear();
+        } else {
+            entries.keySet().removeIf((cacheKey) -> cacheKey.startsWith(structure + '\u0000'));
+        }
+        invalidations++;
+    }
+
+    public synchronized Map<String,Long> getStats() {
+        Map<String,Long> stats = new LinkedHashMap<>();
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("evictions", evictions);
+        stats.put("invalidations", invalidations);
+        stats.put("size", (long)entries.size());
+        return stats;
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PRIVATE HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    /** The cache key for a structure key, or null when a value is missing for one of its fields. */
+    private static String cacheKey(String structure, String[] fields, Map<String,String> values) {
+        StringBuilder cacheKey = new StringBuilder(structure);
+        for (String field : fields) {
+            String value = values.get(field);
+            if (value == null) {
+                return null;
+            }
+            cacheKey.append('\u0000').append(field).append('=').append(value);
+        }
+        return cacheKey.toString();
+    }
+}
@@ -0,0 +1,133 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import com.kineticdata.bridgehub.adapter.RecordList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads ahead the pages that follow a served search page, so a user paging through a table finds
+ * the next page already loaded.
+ *
+ * Prefetched pages are kept in a small, short-lived cache and handed out once they are asked for.
+ * Prefetches run on a couple of threads with a short queue, and are skipped (both when scheduled
+ * and again when they are about to start) while the backend is under pressure, so read-ahead only
+ * ever uses spare capacity.
+ */
+public class NagiosPrefetcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NagiosPrefetcher.class);
+
+    /** Bounds the memory held by prefetched pages. */
+    private static final long MAX_WEIGHT = 64L * 1024 * 1024;
+
+    private final NagiosResponseCache pages;
+    private final long ttlMillis;
+    private final BooleanSupplier underPressure;
+    private final ThreadPoolExecutor executor;
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final AtomicLong scheduled = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * @param underPressure tells whether Nagios XI is too busy to spend calls on read-ahead
+     */
+    public NagiosPrefetcher(int maxPages, long ttlMillis, BooleanSupplier underPressure) {
+        this.pages = new NagiosResponseCache(maxPages, MAX_WEIGHT, 0, Runnable::run);
+        this.ttlMillis = ttlMillis;
+        this.underPressure = underPressure;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(2, 2, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(16),
+            (runnable) -> {
+                Thread thread = new Thread(runnable, "nagios-xi-prefetch-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+    }
+
+    /** Returns the prefetched page for the key, or null when it wasn't prefetched (or has expired). */
+    public RecordList take(String key) {
+        RecordList page = (RecordList)pages.peek(key);
+        (page == null ? misses : hits).incrementAndGet();
+        return page;
+    }
+
+    /**
+     * Loads the page for the key in the background, unless it is already prefetched or being
+     * prefetched, or Nagios XI is under pressure.
+     */
+    public void prefetch(String key, NagiosResponseCache.Loader<RecordList> loader) {
+        if (pages.peek(key) != null || pending.contains(key)) {
+            return;
+        }
+        if (underPressure.getAsBoolean()) {
+            throttled.incrementAndGet();
+            return;
+        }
+        if (pending.add(key) == false) {
+            return;
+        }
+        try {
+            executor.execute(() -> load(key, loader));
+            scheduled.incrementAndGet();
+        } catch (RejectedExecutionException e) {
+            pending.remove(key);
+            dropped.incrementAndGet();
+        }
+    }
+
+    /** Drops the queued prefetches and interrupts the running ones. */
+    public void close() {
+        executor.shutdownNow();
+        pages.clear();
+    }
+
+    public Map<String,Long> getStats() {
+        Map<String,Long> stats = new LinkedHashMap<>();
+        stats.put("scheduled", scheduled.get());
+        stats.put("completed", completed.get());
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("throttled", throttled.get());
+        stats.put("dropped", dropped.get());
+        stats.put("failures", failures.get());
+        return stats;
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PRIVATE HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    private void load(String key, NagiosResponseCache.Loader<RecordList> loader) {
+        try {
+            // The backend may have become busy while the prefetch was queued.
+            if (underPressure.getAsBoolean()) {
+                throttled.incrementAndGet();
+                return;
+            }
+            pages.put(key, loader.load(), ttlMillis);
+            completed.incrementAndGet();
+        } catch (BridgeError | RuntimeException e) {
+            failures.incrementAndGet();
+            LOGGER.debug("Unable to prefetch a Nagios XI search page", e);
+        } finally {
+            pending.remove(key);
+        }
+    }
+}
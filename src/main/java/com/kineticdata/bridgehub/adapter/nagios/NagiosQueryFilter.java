@@ -0,0 +1,293 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Evaluates a Nagios XI API qualification (such as <code>host_name=web01&amp;current_state=in:1,2</code>)
+ * against decoded response elements, so that data held by the adapter can be queried the same way
+ * the Nagios XI API would be.
+ *
+ * Supported operators are plain equality and the Nagios XI <code>ne:</code>, <code>lt:</code>,
+ * <code>lte:</code>, <code>gt:</code>, <code>gte:</code>, <code>lk:</code>, <code>nlk:</code>,
+ * <code>in:</code> and <code>nin:</code> prefixes.  Like the case-insensitive collation of the
+ * Nagios XI database, every operator ignores case: <code>host_name=WEB01</code> matches
+ * <code>web01</code> just as <code>lk:WEB</code> does.  Values compare numerically when both sides
+ * are numbers and as strings otherwise, and numbers order before strings, so sorting mixed values
+ * gives one consistent order.
+ */
+public class NagiosQueryFilter {
+
+    /** Query parameters that don't filter records and can be ignored locally. */
+    private static final Set<String> IGNORED_PARAMETERS = new HashSet<>(Arrays.asList("pretty", "apikey"));
+    /** Query parameters that change the result in ways this filter doesn't model. */
+    private static final Set<String> UNSUPPORTED_PARAMETERS = new HashSet<>(Arrays.asList(
+        "records", "orderby", "totals", "brevity", "starttime", "endtime"));
+
+    public enum Operator {
+        EQ(""), NE("ne:"), LT("lt:"), LTE("lte:"), GT("gt:"), GTE("gte:"), LK("lk:"), NLK("nlk:"), IN("in:"), NIN("nin:");
+
+        private final String prefix;
+
+        Operator(String prefix) {
+            this.prefix = prefix;
+        }
+
+        public String getPrefix() {
+            return prefix;
+        }
+    }
+
+    /** A single name/operator/value condition. */
+    public static class Condition {
+        private final String field;
+        private final Operator operator;
+        private final List<String> values;
+        private final Pattern likePattern;
+
+        private Condition(String field, Operator operator, List<String> values) {
+            this.field = field;
+            this.operator = operator;
+            this.values = values;
+            this.likePattern = operator == Operator.LK || operator == Operator.NLK
+                ? toLikePattern(values.get(0))
+                : null;
+        }
+
+        public String getField() {
+            return field;
+        }
+
+        public Operator getOperator() {
+            return operator;
+        }
+
+        public List<String> getValues() {
+            return values;
+        }
+
+        public boolean matches(Object element) {
+            Object value = element instanceof Map ? ((Map)element).get(field) : null;
+            if (value == null) {
+                return operator == Operator.NE || operator == Operator.NIN || operator == Operator.NLK;
+            }
+            String text = String.valueOf(value);
+            switch (operator) {
+                case EQ:
+                    return compare(text, values.get(0)) == 0;
+                case NE:
+                    return compare(text, values.get(0)) != 0;
+                case LT:
+                    return compare(text, values.get(0)) < 0;
+                case LTE:
+                    return compare(text, values.get(0)) <= 0;
+                case GT:
+                    return compare(text, values.get(0)) > 0;
+                case GTE:
+                    return compare(text, values.get(0)) >= 0;
+                case LK:
+                    return likePattern.matcher(text).matches();
+                case NLK:
+                    return likePattern.matcher(text).matches() == false;
+                case IN:
+                    return containsValue(text);
+                case NIN:
+                    return containsValue(text) == false;
+                default:
+                    return false;
+            }
+        }
+
+        private boolean containsValue(String text) {
+            for (String candidate : values) {
+                if (compare(text, candidate) == 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private final List<Condition> conditions;
+
+    private NagiosQueryFilter(List<Condition> conditions) {
+        this.conditions = conditions;
+    }
+
+    /**
+     * Parses a resolved (parameter substituted, URL encoded) Nagios XI qualification.  Returns null
+     * if the qualification uses anything that can't be evaluated locally.
+     */
+    public static NagiosQueryFilter parse(String query) {
+        List<Condition> conditions = new ArrayList<>();
+        if (StringUtils.isNotBlank(query)) {
+            for (String pair : query.split("&")) {
+                if (pair.isEmpty()) {
+                    continue;
+                }
+                String[] parts = pair.split("=", 2);
+                String name = decode(parts[0]);
+                String value = parts.length > 1 ? decode(parts[1]) : "";
+                if (name == null || value == null || UNSUPPORTED_PARAMETERS.contains(name)) {
+                    return null;
+                }
+                if (IGNORED_PARAMETERS.contains(name)) {
+                    continue;
+                }
+                conditions.add(toCondition(name, value));
+            }
+        }
+        return new NagiosQueryFilter(Collections.unmodifiableList(conditions));
+    }
+
+    public List<Condition> getConditions() {
+        return conditions;
+    }
+
+    /** Whether the element satisfies every condition. */
+    public boolean matches(Object element) {
+        for (Condition condition : conditions) {
+            if (condition.matches(element) == false) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Builds a comparator from a Nagios <code>orderby</code> value (for example
+     * <code>host_name:a,current_state:d</code>).  Returns null when there is no order.
+     */
+    public static Comparator<Object> toComparator(String orderBy) {
+        if (StringUtils.isBlank(orderBy)) {
+            return null;
+        }
+        Comparator<Object> comparator = null;
+        for (String term : orderBy.split(",")) {
+            int separator = term.lastIndexOf(':');
+            String field = separator < 0 ? term : term.substring(0, separator);
+            boolean descending = separator >= 0 && "d".equalsIgnoreCase(term.substring(separator + 1));
+            Comparator<Object> next = (left, right) -> compareValues(fieldValue(left, field), fieldValue(right, field));
+            if (descending) {
+                next = next.reversed();
+            }
+            comparator = comparator == null ? next : comparator.thenComparing(next);
+        }
+        return comparator;
+    }
+
+    /**
+     * Compares two values the way Nagios XI orders them: missing values first, then numbers in
+     * numeric order, then strings ignoring case.
+     */
+    public static int compareValues(Object left, Object right) {
+        if (left == null || right == null) {
+            return left == null ? (right == null ? 0 : -1) : 1;
+        }
+        return compare(String.valueOf(left), String.valueOf(right));
+    }
+
+    /**
+     * Returns the canonical text of a value for exact lookups, so that values that compare equal,
+     * such as "1" and "1.0" or "WEB01" and "web01", share one key.
+     */
+    public static String normalize(Object value) {
+        String text = String.valueOf(value);
+        BigDecimal number = toNumber(text);
+        return number == null ? foldCase(text) : number.stripTrailingZeros().toPlainString();
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PRIVATE HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    private static Condition toCondition(String name, String value) {
+        // Check the longer prefixes first so that "lte:" isn't read as "lt:".
+        Operator[] operators = {Operator.LTE, Operator.GTE, Operator.NLK, Operator.NIN, Operator.NE,
+            Operator.LT, Operator.GT, Operator.LK, Operator.IN};
+        for (Operator operator : operators) {
+            if (value.startsWith(operator.getPrefix())) {
+                String operand = value.substring(operator.getPrefix().length());
+                List<String> values = operator == Operator.IN || operator == Operator.NIN
+                    ? Arrays.asList(operand.split(","))
+                    : Collections.singletonList(operand);
+                return new Condition(name, operator, values);
+            }
+        }
+        return new Condition(name, Operator.EQ, Collections.singletonList(value));
+    }
+
+    private static Object fieldValue(Object element, String field) {
+        return element instanceof Map ? ((Map)element).get(field) : null;
+    }
+
+    private static int compare(String left, String right) {
+        BigDecimal leftNumber = toNumber(left);
+        BigDecimal rightNumber = toNumber(right);
+        if (leftNumber != null && rightNumber != null) {
+            return leftNumber.compareTo(rightNumber);
+        } else if (leftNumber != null || rightNumber != null) {
+            return leftNumber != null ? -1 : 1;
+        }
+        return left.compareToIgnoreCase(right);
+    }
+
+    /** Folds each character the way {@link String#compareToIgnoreCase} compares them. */
+    private static String foldCase(String text) {
+        char[] chars = text.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        }
+        return new String(chars);
+    }
+
+    private static BigDecimal toNumber(String value) {
+        if (value.isEmpty() || value.length() > 40) {
+            return null;
+        }
+        char first = value.charAt(0);
+        if ((first < '0' || first > '9') && first != '-' && first != '.') {
+            return null;
+        }
+        try {
+            return new BigDecimal(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /** Nagios XI "lk:" matches are substring matches, with % as an explicit wildcard. */
+    private static Pattern toLikePattern(String value) {
+        StringBuilder regex = new StringBuilder();
+        if (value.contains("%") == false) {
+            value = "%" + value + "%";
+        }
+        String[] parts = value.split("%", -1);
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) {
+                regex.append(".*");
+            }
+            regex.append(Pattern.quote(parts[i]));
+        }
+        return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
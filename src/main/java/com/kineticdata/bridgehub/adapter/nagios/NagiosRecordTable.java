@@ -0,0 +1,226 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import com.kineticdata.bridgehub.adapter.Record;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * Column-wise storage for the records of a search result.
+ *
+ * Every record of a result has the same fields, so rather than building a HashMap per record the
+ * field names are held once and each field's values are held in a single column.  Nagios XI sends
+ * numbers (states, object ids, epoch timestamps, check attempts) as JSON strings; while every value
+ * of a column is such a whole number it is stored in a <code>long[]</code> and turned back into the
+ * identical string when it is read.  Records are lightweight read-only Map views onto a row.
+ */
+public class NagiosRecordTable {
+
+    private final List<String> keys;
+    private final Map<String,Integer> columnIndex;
+    private final Column[] columns;
+    private int size;
+
+    public NagiosRecordTable(List<String> fields) {
+        // As with a HashMap, a repeated field name resolves to its last occurrence.
+        this.columnIndex = new HashMap<>();
+        for (int i = 0; i < fields.size(); i++) {
+            columnIndex.put(fields.get(i), i);
+        }
+        List<String> uniqueKeys = new ArrayList<>();
+        for (int i = 0; i < fields.size(); i++) {
+            if (columnIndex.get(fields.get(i)) == i) {
+                uniqueKeys.add(fields.get(i));
+            }
+        }
+        this.keys = Collections.unmodifiableList(uniqueKeys);
+        this.columns = new Column[fields.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = new Column();
+        }
+    }
+
+    /** Adds a row holding the plan's fields extracted from a decoded response element. */
+    public void add(NagiosRequestPlan plan, Object element) {
+        for (int i = 0; i < columns.length; i++) {
+            columns[i].set(size, plan.extract(i, element));
+        }
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Returns a read-only list of Records that are views onto the rows of this table. */
+    public List<Record> getRecords() {
+        return new Records();
+    }
+
+    /** Approximate heap held by the table, for the response cache's memory bound. */
+    public long estimateWeight() {
+        long total = 64 + 8L * columns.length;
+        for (Column column : columns) {
+            total += column.estimateWeight(size);
+        }
+        return total;
+    }
+
+    /** The list handed to a RecordList; it can be recognized to weigh the table rather than its views. */
+    public class Records extends AbstractList<Record> implements RandomAccess {
+        @Override
+        public Record get(int row) {
+            if (row < 0 || row >= size) {
+                throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+            }
+            return new Record(new Row(row));
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        public NagiosRecordTable getTable() {
+            return NagiosRecordTable.this;
+        }
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PRIVATE HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    private class Row extends AbstractMap<String,Object> {
+        private final int row;
+
+        private Row(int row) {
+            this.row = row;
+        }
+
+        @Override
+        public Object get(Object key) {
+            Integer column = columnIndex.get(key);
+            return column == null ? null : columns[column].get(row);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return columnIndex.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return keys.size();
+        }
+
+        @Override
+        public Set<Map.Entry<String,Object>> entrySet() {
+            return new AbstractSet<Map.Entry<String,Object>>() {
+                @Override
+                public Iterator<Map.Entry<String,Object>> iterator() {
+                    Iterator<String> keyIterator = keys.iterator();
+                    return new Iterator<Map.Entry<String,Object>>() {
+                        @Override
+                        public boolean hasNext() {
+                            return keyIterator.hasNext();
+                        }
+
+                        @Override
+                        public Map.Entry<String,Object> next() {
+                            String key = keyIterator.next();
+                            return new AbstractMap.SimpleImmutableEntry<>(key, get(key));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return keys.size();
+                }
+            };
+        }
+    }
+
+    /** The values of one field, as whole numbers while possible and as objects after that. */
+    private static class Column {
+        private long[] numbers = new long[16];
+        private BitSet nulls = new BitSet();
+        private Object[] values;
+
+        private void set(int row, Object value) {
+            if (values != null) {
+                values = ensureCapacity(values, row);
+                values[row] = value;
+            } else if (value == null) {
+                nulls.set(row);
+            } else if (value instanceof String && isWholeNumber((String)value)) {
+                numbers = ensureCapacity(numbers, row);
+                numbers[row] = Long.parseLong((String)value);
+            } else {
+                // The first value that isn't a whole number string moves the column to objects.
+                values = new Object[Math.max(numbers.length, row + 1)];
+                for (int previous = 0; previous < row; previous++) {
+                    values[previous] = nulls.get(previous) ? null : Long.toString(numbers[previous]);
+                }
+                values[row] = value;
+                numbers = null;
+                nulls = null;
+            }
+        }
+
+        private Object get(int row) {
+            if (values != null) {
+                return values[row];
+            }
+            return nulls.get(row) ? null : Long.toString(numbers[row]);
+        }
+
+        private long estimateWeight(int size) {
+            if (values == null) {
+                return 32 + 8L * numbers.length + nulls.size() / 8;
+            }
+            long total = 32 + 8L * values.length;
+            for (int row = 0; row < size; row++) {
+                total += NagiosResponseCache.estimateWeight(values[row]);
+            }
+            return total;
+        }
+
+        private static long[] ensureCapacity(long[] array, int row) {
+            return row < array.length ? array : Arrays.copyOf(array, Math.max(row + 1, array.length * 2));
+        }
+
+        private static Object[] ensureCapacity(Object[] array, int row) {
+            return row < array.length ? array : Arrays.copyOf(array, Math.max(row + 1, array.length * 2));
+        }
+
+        /** Whether the text is exactly what Long.toString would produce for its value. */
+        private static boolean isWholeNumber(String text) {
+            int length = text.length();
+            int start = length > 0 && text.charAt(0) == '-' ? 1 : 0;
+            if (length == start || length - start > 18) {
+                return false;
+            }
+            if (text.charAt(start) == '0' && (length - start > 1 || start == 1)) {
+                return false;
+            }
+            for (int i = start; i < length; i++) {
+                char c = text.charAt(i);
+                if (c < '0' || c > '9') {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import com.jayway.jsonpath.InvalidPathException;
+import com.jayway.jsonpath.JsonPath;
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import com.kineticdata.bridgehub.adapter.BridgeRequest;
+import com.kineticdata.bridgehub.adapter.BridgeUtils;
+import com.kineticdata.bridgehub.adapter.QualificationParser;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * The compiled form of a bridge request shape (structure, query, fields and order).
+ *
+ * Everything that does not depend on the request's parameter values or pagination is worked out
+ * once: the query is split into literal text and parameter slots, the root path is compiled into a
+ * streaming reader, each field is compiled into a JsonPath (or a direct key lookup for plain field
+ * names), and the Nagios <code>orderby</code> value is built.  Plans are immutable and can be shared
+ * between threads.
+ */
+public class NagiosRequestPlan {
+
+    /** Field names that can be read directly from a record element without JsonPath. */
+    private static final Pattern SIMPLE_FIELD_PATTERN = Pattern.compile("^(\\$\\.)?([A-Za-z_][A-Za-z0-9_]*)$");
+    private static final Pattern PARAMETER_PATTERN = Pattern.compile(QualificationParser.PARAMETER_PATTERN);
+
+    private final String structure;
+    private final String jsonRootPath;
+    private final NagiosResponseReader reader;
+    private final List<String> fields;
+    private final String[] fieldKeys;
+    private final JsonPath[] fieldPaths;
+    private final String[] queryLiterals;
+    private final String[] queryParameters;
+    private final String orderBy;
+
+    private NagiosRequestPlan(BridgeRequest request) throws BridgeError {
+        this.structure = request.getStructure();
+        this.jsonRootPath = getJsonRootPath(structure);
+        this.reader = new NagiosResponseReader(jsonRootPath);
+
+        // Compile the field expressions.
+        this.fields = request.getFields() == null
+            ? Collections.emptyList()
+            : Collections.unmodifiableList(new ArrayList<>(request.getFields()));
+        this.fieldKeys = new String[fields.size()];
+        this.fieldPaths = new JsonPath[fields.size()];
+        for (int i = 0; i < fields.size(); i++) {
+            String field = fields.get(i);
+            Matcher matcher = SIMPLE_FIELD_PATTERN.matcher(field);
+            if (matcher.matches()) {
+                fieldKeys[i] = matcher.group(2);
+            } else {
+                try {
+                    fieldPaths[i] = JsonPath.compile(field);
+                } catch (InvalidPathException | IllegalArgumentException e) {
+                    // Leave both slots empty; the field always maps to null, as it did before.
+                }
+            }
+        }
+
+        // Split the query into literal text and parameter slots.
+        List<String> literals = new ArrayList<>();
+        List<String> parameters = new ArrayList<>();
+        String query = request.getQuery() == null ? "" : request.getQuery();
+        Matcher matcher = PARAMETER_PATTERN.matcher(query);
+        int position = 0;
+        while (matcher.find()) {
+            literals.add(query.substring(position, matcher.start()));
+            parameters.add(matcher.group(1));
+            position = matcher.end();
+        }
+        literals.add(query.substring(position));
+        this.queryLiterals = literals.toArray(new String[literals.size()]);
+        this.queryParameters = parameters.toArray(new String[parameters.size()]);
+
+        // Translate the bridge sort order into the Nagios orderby format.
+        String order = request.getMetadata() == null ? null : request.getMetadata("order");
+        if (order != null) {
+            List<String> orderList = new ArrayList<>();
+            for (Map.Entry<String,String> entry : BridgeUtils.parseOrder(order).entrySet()) {
+                if (entry.getValue().equals("DESC")) {
+                    orderList.add(String.format("%s:d", entry.getKey()));
+                } else {
+                    orderList.add(String.format("%s:a", entry.getKey()));
+                }
+            }
+            this.orderBy = StringUtils.join(orderList, ",");
+        } else {
+            this.orderBy = null;
+        }
+    }
+
+    /** Compiles the plan for a request. */
+    public static NagiosRequestPlan compile(BridgeRequest request) throws BridgeError {
+        return new NagiosRequestPlan(request);
+    }
+
+    /** Builds the cache key identifying the shape of a request. */
+    public static String key(BridgeRequest request) {
+        StringBuilder key = new StringBuilder();
+        key.append(request.getStructure()).append('\u0000')
+            .append(request.getQuery()).append('\u0000');
+        if (request.getFields() != null) {
+            for (String field : request.getFields()) {
+                key.append(field).append('\u0001');
+            }
+        }
+        key.append('\u0000')
+            .append(request.getMetadata() == null ? null : request.getMetadata("order"));
+        return key.toString();
+    }
+
+    public static String getJsonRootPath(String structure) {
+        String jsonRootPath = NagiosQualificationParser.jsonPathMapping.get(structure);
+        if (jsonRootPath == null) {
+            jsonRootPath = NagiosXiAdapter.JSON_ROOT_DEFAULT;
+        }
+        return jsonRootPath;
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PER REQUEST METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    /**
+     * Substitutes the parameter values into the query template, encoding each value with the
+     * qualification parser.
+     */
+    public String resolveQuery(Map<String,String> parameters, QualificationParser parser) throws BridgeError {
+        if (queryParameters.length == 0) {
+            return queryLiterals[0];
+        }
+        StringBuilder query = new StringBuilder(queryLiterals[0]);
+        for (int i = 0; i < queryParameters.length; i++) {
+            String name = queryParameters[i];
+            if (parameters == null) {
+                throw new BridgeError("Unable to parse qualification, the '" + name
+                    + "' parameter was referenced but no parameters were provided.");
+            }
+            String value = parameters.get(name);
+            if (value == null) {
+                throw new BridgeError("Unable to parse qualification, the '" + name
+                    + "' parameter was referenced but not provided.");
+            }
+            query.append(parser.encodeParameter(name, value)).append(queryLiterals[i + 1]);
+        }
+        return query.toString();
+    }
+
+    /** Builds the Nagios XI API url for a resolved query and pagination window. */
+    public String buildUrl(String apiEndpoint, String apiKey, String queryMethod, String query,
+        String pageSize, String offset)
+    {
+        return buildUrl(apiEndpoint, apiKey, queryMethod, query, pageSize, offset, orderBy);
+    }
+
+    /** Builds the Nagios XI API url with a different <code>orderby</code> than the request's own. */
+    public String buildUrl(String apiEndpoint, String apiKey, String queryMethod, String query,
+        String pageSize, String offset, String orderBy)
+    {
+        StringBuilder url = new StringBuilder();
+        url.append(apiEndpoint)
+            .append("/api/v1/")
+            .append(StringUtils.chomp(structure, "/"))
+            .append(String.format("?apikey=%s", apiKey));
+
+        if (StringUtils.isNotBlank(query)) {
+            url.append("&")
+                .append(query);
+        }
+
+        //only set pagination if we're not counting.
+        if (queryMethod.equals("count") == false) {
+            appendParameter(url, "records", pageSize + ":" + offset);
+            //only set sorting if we're not counting *and* the request specified a sort order.
+            if (orderBy != null) {
+                appendParameter(url, "orderby", orderBy);
+            }
+        }
+        return url.toString();
+    }
+
+    /**
+     * Extracts the requested fields from a decoded response element.  The values are read-only
+     * since cached and coalesced results share their records between callers.
+     */
+    public Map<String,Object> toRecordValues(Object element) {
+        Map<String,Object> recordValues = new HashMap<>();
+        for (int i = 0; i < fieldKeys.length; i++) {
+            recordValues.put(fields.get(i), extract(i, element));
+        }
+        return Collections.unmodifiableMap(recordValues);
+    }
+
+    /** Extracts the value of the field at the given index from a decoded response element. */
+    public Object extract(int fieldIndex, Object element) {
+        if (fieldKeys[fieldIndex] != null) {
+            return element instanceof Map ? ((Map)element).get(fieldKeys[fieldIndex]) : null;
+        }
+        if (fieldPaths[fieldIndex] != null) {
+            try {
+                return fieldPaths[fieldIndex].read(element);
+            } catch (InvalidPathException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * GETTERS
+     *--------------------------------------------------------------------------------------------*/
+
+    public String getStructure() {
+        return structure;
+    }
+
+    public String getJsonRootPath() {
+        return jsonRootPath;
+    }
+
+    public NagiosResponseReader getReader() {
+        return reader;
+    }
+
+    public List<String> getFields() {
+        return fields;
+    }
+
+    public String getOrderBy() {
+        return orderBy;
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PRIVATE HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    private static void appendParameter(StringBuilder url, String parameterName, String parameterValue) {
+        url.append(url.indexOf("?") < 0 ? "?" : "&")
+            .append(encode(parameterName))
+            .append("=")
+            .append(encode(parameterValue));
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 is not supported", e);
+        }
+    }
+
+    /** Bounded, thread safe least-recently-used cache of compiled plans. */
+    public static class Cache {
+        private final int maxSize;
+        private final Map<String,NagiosRequestPlan> plans;
+        private long hits;
+        private long misses;
+        private long evictions;
+
+        public Cache(int maxSize) {
+            this.maxSize = maxSize;
+            this.plans = new LinkedHashMap<String,NagiosRequestPlan>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String,NagiosRequestPlan> eldest) {
+                    if (size() > Cache.this.maxSize) {
+                        evictions++;
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        /** Returns the plan for the request, compiling and caching it on a miss. */
+        public NagiosRequestPlan get(BridgeRequest request) throws BridgeError {
+            if (maxSize <= 0) {
+                synchronized (this) {
+                    misses++;
+                }
+                return compile(request);
+            }
+            String key = key(request);
+            synchronized (this) {
+                NagiosRequestPlan plan = plans.get(key);
+                if (plan != null) {
+                    hits++;
+                    return plan;
+                }
+                misses++;
+            }
+            // Compile outside of the lock; a concurrent miss on the same key simply compiles twice.
+            NagiosRequestPlan plan = compile(request);
+            synchronized (this) {
+                plans.put(key, plan);
+            }
+            return plan;
+        }
+
+        /** Returns the hit, miss and eviction counters along with the current size. */
+        public synchronized Map<String,Long> getStats() {
+            Map<String,Long> stats = new LinkedHashMap<>();
+            stats.put("hits", hits);
+            stats.put("misses", misses);
+            stats.put("evictions", evictions);
+            stats.put("size", (long)plans.size());
+            return stats;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import com.kineticdata.bridgehub.adapter.Count;
+import com.kineticdata.bridgehub.adapter.Record;
+import com.kineticdata.bridgehub.adapter.RecordList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory cache of adapter results (Count, Record and RecordList objects).
+ *
+ * Each entry is stored with its own time to live so that slowly changing configuration structures
+ * and frequently changing status structures can share one cache.  The cache is bounded both by the
+ * number of entries and by an estimate of the memory the entries hold, and evicts the least
+ * recently used entries first.  Once an entry expires it is still served for a configurable stale
+ * window while a single background refresh replaces it.  Entries past their stale window are kept
+ * (until they are replaced or evicted) as the last known result, to be served while Nagios XI is
+ * unavailable.
+ */
+public class NagiosResponseCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NagiosResponseCache.class);
+
+    /** Loads the value for a key when it is missing or stale. */
+    public interface Loader<V> {
+        V load() throws BridgeError;
+    }
+
+    private static class Entry {
+        private final Object value;
+        private final long weight;
+        private final long freshUntil;
+        private final long staleUntil;
+        private final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+        private Entry(Object value, long weight, long freshUntil, long staleUntil) {
+            this.value = value;
+            this.weight = weight;
+            this.freshUntil = freshUntil;
+            this.staleUntil = staleUntil;
+        }
+    }
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final long staleMillis;
+    private final Executor refreshExecutor;
+    private final LinkedHashMap<String,Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+    private long hits;
+    private long staleHits;
+    private long lastKnownHits;
+    private long misses;
+    private long evictions;
+    private long refreshes;
+    private long refreshFailures;
+
+    public NagiosResponseCache(int maxEntries, long maxWeight, long staleMillis, Executor refreshExecutor) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.staleMillis = staleMillis;
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    /**
+     * Returns the cached value for the key, loading it with the loader on a miss.  A stale entry is
+     * returned immediately and refreshed in the background.
+     */
+    public <V> V get(String key, long ttlMillis, Loader<V> loader) throws BridgeError {
+        long now = System.currentTimeMillis();
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry != null && entry.staleUntil <= now) {
+                // Kept as the last known result until the load below replaces it.
+                entry = null;
+            }
+            if (entry == null) {
+                misses++;
+            } else if (entry.freshUntil > now) {
+                hits++;
+            } else {
+                staleHits++;
+            }
+        }
+        if (entry == null) {
+            V value = loader.load();
+            put(key, value, ttlMillis);
+            return value;
+        }
+        if (entry.freshUntil <= now) {
+            refresh(key, entry, ttlMillis, loader);
+        }
+        @SuppressWarnings("unchecked")
+        V value = (V)entry.value;
+        return value;
+    }
+
+    /** Returns the cached value for the key if it is present and not past its stale window. */
+    public synchronized Object peek(String key) {
+        Entry entry = entries.get(key);
+        return entry == null || entry.staleUntil <= System.currentTimeMillis() ? null : entry.value;
+    }
+
+    /**
+     * Returns the last value stored for the key, even past its stale window, or null.  Used to
+     * answer requests while Nagios XI is unavailable; the caller counts the answers it gives with
+     * {@link #countLastKnownHit()}.
+     */
+    public synchronized Object peekLastKnown(String key) {
+        Entry entry = entries.get(key);
+        return entry == null ? null : entry.value;
+    }
+
+    /** Counts a request answered with a value from {@link #peekLastKnown(String)}. */
+    public synchronized void countLastKnownHit() {
+        lastKnownHits++;
+    }
+
+    /** Stores a value with the given time to live. */
+    public void put(String key, Object value, long ttlMillis) {
+        long now = System.currentTimeMillis();
+        Entry entry = new Entry(value, estimateWeight(value), now + ttlMillis, now + ttlMillis + staleMillis);
+        synchronized (this) {
+            remove(key);
+            if (entry.weight > maxWeight) {
+                // A single result larger than the whole cache is not worth evicting everything for.
+                return;
+            }
+            entries.put(key, entry);
+            weight += entry.weight;
+            // Evict least recently used entries until both bounds are satisfied again.
+            Iterator<Map.Entry<String,Entry>> iterator = entries.entrySet().iterator();
+            while ((entries.size() > maxEntries || weight > maxWeight) && iterator.hasNext()) {
+                Map.Entry<String,Entry> eldest = iterator.next();
+                if (eldest.getValue() == entry) {
+                    break;
+                }
+                weight -= eldest.getValue().weight;
+                iterator.remove();
+                evictions++;
+            }
+        }
+    }
+
+    /** Removes every entry. */
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public synchronized Map<String,Long> getStats() {
+        Map<String,Long> stats = new LinkedHashMap<>();
+        stats.put("hits", hits);
+        stats.put("staleHits", staleHits);
+        stats.put("lastKnownHits", lastKnownHits);
+        stats.put("misses", misses);
+        stats.put("evictions", evictions);
+        stats.put("refreshes", refreshes);
+        stats.put("refreshFailures", refreshFailures);
+        stats.put("size", (long)entries.size());
+        stats.put("estimatedBytes", weight);
+        return stats;
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PRIVATE HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    private void remove(String key) {
+        Entry previous = entries.remove(key);
+        if (previous != null) {
+            weight -= previous.weight;
+        }
+    }
+
+    private <V> void refresh(String key, Entry entry, long ttlMillis, Loader<V> loader) {
+        // Only one refresh per entry, no matter how many readers see it stale.
+        if (entry.refreshing.compareAndSet(false, true) == false) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    put(key, loader.load(), ttlMillis);
+                    synchronized (this) {
+                        refreshes++;
+                    }
+                } catch (BridgeError | RuntimeException e) {
+                    synchronized (this) {
+                        refreshFailures++;
+                    }
+                    entry.refreshing.set(false);
+                    LOGGER.debug("Unable to refresh a stale Nagios XI cache entry.", e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            entry.refreshing.set(false);
+        }
+    }
+
+    /** Roughly estimates the number of bytes of heap held by a cached result. */
+    static long estimateWeight(Object value) {
+        if (value == null) {
+            return 8;
+        } else if (value instanceof String) {
+            return 40 + 2L * ((String)value).length();
+        } else if (value instanceof Count) {
+            return 64;
+        } else if (value instanceof Record) {
+            return 32 + estimateWeight(((Record)value).getRecord());
+        } else if (value instanceof RecordList) {
+            RecordList recordList = (RecordList)value;
+            long total = 64 + estimateWeight(recordList.getMetadata());
+            if (recordList.getRecords() instanceof NagiosRecordTable.Records) {
+                total += ((NagiosRecordTable.Records)recordList.getRecords()).getTable().estimateWeight();
+            } else if (recordList.getRecords() != null) {
+                for (Record record : recordList.getRecords()) {
+                    total += estimateWeight(record);
+                }
+            }
+            return total;
+        } else if (value instanceof Map) {
+            long total = 48;
+            for (Map.Entry<?,?> mapEntry : ((Map<?,?>)value).entrySet()) {
+                total += 32 + estimateWeight(mapEntry.getKey()) + estimateWeight(mapEntry.getValue());
+            }
+            return total;
+        } else if (value instanceof Collection) {
+            long total = 40;
+            for (Object element : (Collection<?>)value) {
+                total += 8 + estimateWeight(element);
+            }
+            return total;
+        }
+        return 24;
+    }
+}
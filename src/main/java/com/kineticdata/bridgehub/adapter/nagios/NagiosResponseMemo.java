@@ -0,0 +1,140 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers the last result built from each Nagios XI request along with a digest of the response
+ * body it was built from, so an identical body can be answered with the same (immutable) result
+ * without being parsed and mapped again.
+ *
+ * The <code>ETag</code> and <code>Last-Modified</code> headers of the response are remembered too,
+ * so the next request can be made conditional and a <code>304 Not Modified</code> answer reuses
+ * the result without any body at all.  Entries are evicted least recently used first.
+ */
+public class NagiosResponseMemo {
+
+    /** A remembered result and what identifies the response it was built from. */
+    public static class Entry {
+        private final byte[] digest;
+        private final String etag;
+        private final String lastModified;
+        private final Object result;
+        private final long buildNanos;
+
+        public Entry(byte[] digest, String etag, String lastModified, Object result, long buildNanos) {
+            this.digest = digest;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.result = result;
+            this.buildNanos = buildNanos;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        public Object getResult() {
+            return result;
+        }
+
+        /** Whether the body with this digest is the one the result was built from. */
+        public boolean matches(byte[] bodyDigest) {
+            return MessageDigest.isEqual(digest, bodyDigest);
+        }
+    }
+
+    private final int maxEntries;
+    private final int maxBodyBytes;
+    private final LinkedHashMap<String,Entry> entries;
+    private long digestHits;
+    private long notModified;
+    private long misses;
+    private long oversized;
+    private long savedNanos;
+    private long digestNanos;
+
+    public NagiosResponseMemo(int maxEntries, int maxBodyBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBodyBytes = maxBodyBytes;
+        this.entries = new LinkedHashMap<String,Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String,Entry> eldest) {
+                return size() > NagiosResponseMemo.this.maxEntries;
+            }
+        };
+    }
+
+    /** Bodies larger than this are parsed as they stream in rather than buffered and digested. */
+    public int getMaxBodyBytes() {
+        return maxBodyBytes;
+    }
+
+    public synchronized Entry get(String key) {
+        return entries.get(key);
+    }
+
+    public synchronized void put(String key, Entry entry) {
+        entries.put(key, entry);
+        misses++;
+    }
+
+    /** Digests a buffered response body, accounting for the time taken. */
+    public byte[] digest(byte[] body) {
+        long start = System.nanoTime();
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        digest.update(body);
+        byte[] result = digest.digest();
+        synchronized (this) {
+            digestNanos += System.nanoTime() - start;
+        }
+        return result;
+    }
+
+    /** Records that an entry was reused, either for an identical body or a 304 response. */
+    public synchronized void reused(Entry entry, boolean conditional) {
+        if (conditional) {
+            notModified++;
+        } else {
+            digestHits++;
+        }
+        savedNanos += entry.buildNanos;
+    }
+
+    /** Keeps the validators of the latest response for an entry whose body hasn't changed. */
+    public synchronized void revalidate(String key, Entry entry, String etag, String lastModified) {
+        if (Objects.equals(entry.etag, etag) == false || Objects.equals(entry.lastModified, lastModified) == false) {
+            entries.put(key, new Entry(entry.digest, etag, lastModified, entry.result, entry.buildNanos));
+        }
+    }
+
+    /** Records a response that was too large to buffer and so was parsed without memoization. */
+    public synchronized void skipped() {
+        oversized++;
+    }
+
+    public synchronized Map<String,Long> getStats() {
+        Map<String,Long> stats = new LinkedHashMap<>();
+        stats.put("digestHits", digestHits);
+        stats.put("notModified", notModified);
+        stats.put("misses", misses);
+        stats.put("oversized", oversized);
+        stats.put("savedMicros", TimeUnit.NANOSECONDS.toMicros(savedNanos));
+        stats.put("digestMicros", TimeUnit.NANOSECONDS.toMicros(digestNanos));
+        stats.put("size", (long)entries.size());
+        return stats;
+    }
+}
@@ -0,0 +1,223 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.regex.Pattern;
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+
+/**
+ * Reads a Nagios XI API response in a single streaming pass.
+ *
+ * The reader looks for the structure's record array (as defined by the root paths in
+ * {@link NagiosQualificationParser#jsonPathMapping}) and the sibling <code>recordcount</code>
+ * value, and hands each array element to an {@link ElementHandler} as soon as it has been decoded.
+ * Elements are decoded into the same json-smart objects that JsonPath produces, so field
+ * expressions can still be evaluated against them with JsonPath.  Everything outside of the root
+ * path is skipped without being materialized.
+ */
+public class NagiosResponseReader {
+
+    public static final String RECORD_COUNT_FIELD = "recordcount";
+
+    /** JsonFactory instances are thread safe and expensive to create, so share one. */
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /** Root paths must be simple dot notation, for example $.hostlist.host or $.*.* */
+    private static final Pattern SIMPLE_ROOT_PATH = Pattern.compile("^\\$(\\.([A-Za-z0-9_@\\-]+|\\*))+$");
+
+    /** Callback that receives each decoded record element. */
+    public interface ElementHandler {
+        /**
+         * Handles a single decoded element of the record array.  Returning false stops the read
+         * without decoding the rest of the response.
+         */
+        boolean handle(Object element) throws BridgeError;
+    }
+
+    /** Describes what was found while reading a response. */
+    public static class Summary {
+        private String recordCount;
+        private int size;
+        private boolean rootFound;
+        private boolean singleObject;
+        private boolean complete;
+
+        /** The raw <code>recordcount</code> value, or null if the response did not include one. */
+        public String getRecordCount() {
+            return recordCount;
+        }
+        /** The number of elements that were handed to the element handler. */
+        public int getSize() {
+            return size;
+        }
+        /** Whether the structure's root path was present in the response. */
+        public boolean isRootFound() {
+            return rootFound;
+        }
+        /** Whether the root path held a single object rather than an array of objects. */
+        public boolean isSingleObject() {
+            return singleObject;
+        }
+        /** Whether the whole response was read (false when the handler stopped the read). */
+        public boolean isComplete() {
+            return complete;
+        }
+    }
+
+    private final String[] rootSegments;
+
+    public NagiosResponseReader(String jsonRootPath) throws BridgeError {
+        if (!isSupportedRootPath(jsonRootPath)) {
+            throw new BridgeError(String.format("The JSON root path '%s' cannot be streamed.", jsonRootPath));
+        }
+        this.rootSegments = jsonRootPath.substring(2).split("\\.");
+    }
+
+    public static boolean isSupportedRootPath(String jsonRootPath) {
+        return jsonRootPath != null && SIMPLE_ROOT_PATH.matcher(jsonRootPath).matches();
+    }
+
+    /**
+     * Reads the response, passing each record element to the handler.  The stream is not closed
+     * by this method.
+     */
+    public Summary read(InputStream content, ElementHandler handler) throws IOException, BridgeError {
+        return readDocument(content, handler);
+    }
+
+    /**
+     * Reads only as much of the response as is needed to find the <code>recordcount</code>; record
+     * elements that come before it are skipped without being decoded.  The stream is not closed by
+     * this method.
+     */
+    public Summary readCount(InputStream content) throws IOException, BridgeError {
+        return readDocument(content, null);
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PRIVATE HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    private Summary readDocument(InputStream content, ElementHandler handler) throws IOException, BridgeError {
+        Summary summary = new Summary();
+        try (JsonParser parser = JSON_FACTORY.createParser(content)) {
+            parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            if (parser.nextToken() == JsonToken.START_OBJECT) {
+                summary.complete = readObject(parser, 0, handler, summary);
+            } else {
+                summary.complete = true;
+            }
+        }
+        return summary;
+    }
+
+    /**
+     * Walks the object the parser is positioned on, descending into keys that match the root path
+     * segment for this level.  Returns false if the handler asked to stop.  Without a handler the
+     * walk stops as soon as the record count has been read.
+     */
+    private boolean readObject(JsonParser parser, int level, ElementHandler handler, Summary summary)
+        throws IOException, BridgeError
+    {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+
+            if (level == 1 && RECORD_COUNT_FIELD.equals(name) && token.isScalarValue()) {
+                summary.recordCount = parser.getValueAsString();
+                if (handler == null) {
+                    return false;
+                }
+            } else if (handler == null) {
+                // Counting: only descend far enough to find the record count.
+                if (level == 0 && token == JsonToken.START_OBJECT) {
+                    if (!readObject(parser, 1, null, summary)) {
+                        return false;
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            } else if (matches(rootSegments[level], name)) {
+                if (level == rootSegments.length - 1) {
+                    if (!readRoot(parser, token, handler, summary)) {
+                        return false;
+                    }
+                } else if (token == JsonToken.START_OBJECT) {
+                    if (!readObject(parser, level + 1, handler, summary)) {
+                        return false;
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return true;
+    }
+
+    private boolean readRoot(JsonParser parser, JsonToken token, ElementHandler handler, Summary summary)
+        throws IOException, BridgeError
+    {
+        if (token == JsonToken.START_ARRAY) {
+            summary.rootFound = true;
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                summary.size++;
+                if (!handler.handle(readValue(parser))) {
+                    return false;
+                }
+            }
+        } else if (token == JsonToken.START_OBJECT) {
+            // Nagios XI returns a bare object instead of an array for some single-result responses.
+            summary.rootFound = true;
+            summary.singleObject = true;
+            summary.size++;
+            if (!handler.handle(readValue(parser))) {
+                return false;
+            }
+        }
+        // Scalars under a wildcard root (such as the recordcount itself) are not records.
+        return true;
+    }
+
+    private static boolean matches(String segment, String name) {
+        return "*".equals(segment) || segment.equals(name);
+    }
+
+    /** Decodes the value the parser is positioned on into json-smart objects. */
+    static Object readValue(JsonParser parser) throws IOException {
+        switch (parser.getCurrentToken()) {
+            case START_OBJECT:
+                JSONObject object = new JSONObject();
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.getCurrentName();
+                    parser.nextToken();
+                    object.put(name, readValue(parser));
+                }
+                return object;
+            case START_ARRAY:
+                JSONArray array = new JSONArray();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    array.add(readValue(parser));
+                }
+                return array;
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_NUMBER_INT:
+                return parser.getNumberValue();
+            case VALUE_NUMBER_FLOAT:
+                return parser.getDoubleValue();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import com.kineticdata.bridgehub.adapter.BridgeRequest;
+import com.kineticdata.bridgehub.adapter.Record;
+import com.kineticdata.bridgehub.adapter.RecordList;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Answers concurrent retrieves that differ only in the value of a structure's key field (such as
+ * <code>host_name=web01</code> and <code>host_name=web02</code>) with one Nagios XI search using an
+ * <code>in:</code> filter on that field.
+ *
+ * The first retrieve of a batch waits up to the batch window for others with the same structure,
+ * fields and rest of the qualification to join it, or until the batch is full.  It then runs the
+ * search and every retrieve of the batch picks its own matches out of the result, and more than
+ * one gives the usual multiple results error.  A batch that nobody joined, one whose result may
+ * have been cut short, and a retrieve that found no match of its own in the result are left to the
+ * normal retrieve path, since Nagios XI may have matched its value to a record under another
+ * spelling that only the retrieve itself can tell apart from no record at all.
+ */
+public class NagiosRetrieveBatcher {
+
+    private static final String PAGE_SIZE = "1000";
+    private static final Pattern OPERATOR_PATTERN = Pattern.compile("^(ne|lt|lte|gt|gte|lk|nlk|in|nin):");
+
+    /** Runs a search through the adapter. */
+    public interface Searcher {
+        RecordList search(BridgeRequest request) throws BridgeError;
+    }
+
+    /** The retrieves collected for one structure, field list and qualification shape. */
+    private static class Batch {
+        private final Set<String> values = new LinkedHashSet<>();
+        private final CountDownLatch full = new CountDownLatch(1);
+        private final CompletableFuture<Map<String,List<Map<String,Object>>>> matches = new CompletableFuture<>();
+    }
+
+    private final Map<String,String> keyFields;
+    private final long windowMillis;
+    private final int maxSize;
+    private final Searcher searcher;
+    private final Map<String,Batch> open = new HashMap<>();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong retrieves = new AtomicLong();
+    private final AtomicLong single = new AtomicLong();
+    private final AtomicLong truncated = new AtomicLong();
+    private final AtomicLong unmatched = new AtomicLong();
+
+    /**
+     * @param keyFields the field whose values are batched, by structure
+     */
+    public NagiosRetrieveBatcher(Map<String,String> keyFields, long windowMillis, int maxSize, Searcher searcher) {
+        this.keyFields = keyFields;
+        this.windowMillis = windowMillis;
+        this.maxSize = Math.max(2, maxSize);
+        this.searcher = searcher;
+    }
+
+    public boolean isBatched(String structure) {
+        return keyFields.containsKey(structure);
+    }
+
+    /**
+     * Answers the retrieve as part of a batch, or returns null when it should be sent on its own:
+     * its qualification doesn't hold a plain value for the key field, no other retrieve joined its
+     * batch, the batch result may have been cut short, or it holds no match for the value.
+     *
+     * @param query the retrieve's qualification with its parameters substituted
+     */
+    public Record retrieve(BridgeRequest request, String query) throws BridgeError {
+        String field = keyFields.get(request.getStructure());
+        List<String> rest = new ArrayList<>();
+        String value = null;
+        for (String term : query.split("&")) {
+            if (term.startsWith(field + "=") && value == null) {
+                value = term.substring(field.length() + 1);
+            } else if (term.isEmpty() == false) {
+                rest.add(term);
+            }
+        }
+        String decoded = decode(value);
+        if (decoded == null || decoded.isEmpty() || decoded.contains(",")
+            || OPERATOR_PATTERN.matcher(decoded).find() || rest.stream().anyMatch((term) -> term.startsWith(field + "=")))
+        {
+            return null;
+        }
+
+        String shape = request.getStructure() + '\u0000' + StringUtils.join(request.getFields(), ",")
+            + '\u0000' + StringUtils.join(rest, "&");
+        Batch batch;
+        boolean leader = false;
+        synchronized (this) {
+            batch = open.get(shape);
+            if (batch == null) {
+                batch = new Batch();
+                open.put(shape, batch);
+                leader = true;
+            }
+            batch.values.add(value);
+            if (batch.values.size() >= maxSize) {
+                open.remove(shape);
+                batch.full.countDown();
+            }
+        }
+        if (leader) {
+            run(request, field, rest, shape, batch);
+        }
+
+        Map<String,List<Map<String,Object>>> matches = await(batch);
+        if (matches == null) {
+            return null;
+        }
+        List<Map<String,Object>> records = matches.get(NagiosQueryFilter.normalize(decoded));
+        if (records == null) {
+            unmatched.incrementAndGet();
+            return null;
+        }
+        retrieves.incrementAndGet();
+        if (records.size() > 1) {
+            throw new BridgeError("Multiple results matched an expected single match query");
+        }
+        return new Record(new LinkedHashMap<>(records.get(0)));
+    }
+
+    /**
+     * Returns the batched Nagios XI searches, the retrieves they answered, the batches left to the
+     * normal retrieve path because nobody joined them (single) or their result may have been cut
+     * short (truncated), and the retrieves left to it because the result held no match (unmatched).
+     */
+    public Map<String,Long> getStats() {
+        Map<String,Long> stats = new LinkedHashMap<>();
+        stats.put("batches", batches.get());
+        stats.put("retrieves", retrieves.get());
+        stats.put("single", single.get());
+        stats.put("truncated", truncated.get());
+        stats.put("unmatched", unmatched.get());
+        return stats;
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PRIVATE HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    /** Waits for the batch to fill or its window to pass, then runs its search. */
+    private void run(BridgeRequest request, String field, List<String> rest, String shape, Batch batch) {
+        try {
+            batch.full.await(windowMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            batch.matches.completeExceptionally(
+                new BridgeError("Interrupted while collecting a batch of Nagios XI retrieves.", e));
+            synchronized (this) {
+                open.remove(shape, batch);
+            }
+            return;
+        }
+        List<String> values;
+        synchronized (this) {
+            open.remove(shape, batch);
+            values = new ArrayList<>(batch.values);
+        }
+        if (values.size() == 1) {
+            single.incrementAndGet();
+            batch.matches.complete(null);
+            return;
+        }
+
+        List<String> fields = new ArrayList<>(request.getFields());
+        if (fields.contains(field) == false) {
+            fields.add(field);
+        }
+        List<String> terms = new ArrayList<>(rest);
+        terms.add(field + "=in:" + StringUtils.join(values, ","));
+        BridgeRequest search = new BridgeRequest();
+        search.setStructure(request.getStructure());
+        search.setQuery(StringUtils.join(terms, "&"));
+        search.setFields(fields);
+        Map<String,String> metadata = new HashMap<>();
+        metadata.put("pageSize", PAGE_SIZE);
+        metadata.put("offset", "0");
+        search.setMetadata(metadata);
+        search.setParameters(new HashMap<>());
+        try {
+            RecordList result = searcher.search(search);
+            batches.incrementAndGet();
+            if (result.getRecords().size() >= Integer.parseInt(PAGE_SIZE)) {
+                truncated.incrementAndGet();
+                batch.matches.complete(null);
+                return;
+            }
+            Map<String,List<Map<String,Object>>> matches = new HashMap<>();
+            for (Record record : result.getRecords()) {
+                Map<String,Object> recordValues = new LinkedHashMap<>();
+                for (String requested : request.getFields()) {
+                    recordValues.put(requested, record.getRecord().get(requested));
+                }
+                matches.computeIfAbsent(NagiosQueryFilter.normalize(record.getRecord().get(field)),
+                    (key) -> new ArrayList<>(1)).add(recordValues);
+            }
+            batch.matches.complete(matches);
+        } catch (BridgeError | RuntimeException e) {
+            batch.matches.completeExceptionally(e);
+        }
+    }
+
+    private static Map<String,List<Map<String,Object>>> await(Batch batch) throws BridgeError {
+        try {
+            return batch.matches.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof BridgeError) {
+                throw new BridgeError(cause.getMessage(), cause);
+            }
+            throw new BridgeError("The batched Nagios XI retrieve failed.", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BridgeError("Interrupted while waiting for a batched Nagios XI retrieve.", e);
+        }
+    }
+
+    /** Decodes a query value, or returns null when it is missing or not validly encoded. */
+    private static String decode(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces identical concurrent requests so that only one of them reaches Nagios XI.
+ *
+ * The first caller for a key runs the loader; every caller that arrives while it is running waits
+ * (up to the configured timeout) for the same result, or the same error.
+ */
+public class NagiosSingleFlight {
+
+    private final ConcurrentHashMap<String,CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final long waitTimeoutMillis;
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+
+    public NagiosSingleFlight(long waitTimeoutMillis) {
+        this.waitTimeoutMillis = waitTimeoutMillis;
+    }
+
+    /** Runs the loader, or waits for the identical call that is already running. */
+    public <V> V execute(String key, NagiosResponseCache.Loader<V> loader) throws BridgeError {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, future);
+        if (existing == null) {
+            executions.incrementAndGet();
+            try {
+                V value = loader.load();
+                future.complete(value);
+                return value;
+            } catch (BridgeError | RuntimeException e) {
+                future.completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlight.remove(key, future);
+            }
+        }
+
+        coalesced.incrementAndGet();
+        try {
+            @SuppressWarnings("unchecked")
+            V value = (V)existing.get(waitTimeoutMillis, TimeUnit.MILLISECONDS);
+            return value;
+        } catch (TimeoutException e) {
+            timeouts.incrementAndGet();
+            throw new BridgeError(String.format(
+                "Timed out after %d ms waiting for an identical in-flight Nagios XI request.", waitTimeoutMillis));
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof BridgeError) {
+                throw new BridgeError(cause.getMessage(), cause);
+            }
+            throw new BridgeError("The in-flight Nagios XI request failed.", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BridgeError("Interrupted while waiting for an in-flight Nagios XI request.", e);
+        }
+    }
+
+    public Map<String,Long> getStats() {
+        Map<String,Long> stats = new LinkedHashMap<>();
+        stats.put("executions", executions.get());
+        stats.put("coalesced", coalesced.get());
+        stats.put("timeouts", timeouts.get());
+        stats.put("inFlight", (long)inFlight.size());
+        return stats;
+    }
+}
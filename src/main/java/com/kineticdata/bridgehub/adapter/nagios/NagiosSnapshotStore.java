@@ -0,0 +1,303 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the snapshots of mirrored structures on disk, so a restarted adapter can answer requests
+ * from them straight away while fresh snapshots load in the background.
+ *
+ * Each structure is written to its own file in a compact binary format: a fixed header (magic
+ * number, format version, payload length and CRC-32 of the payload) followed by the payload (the
+ * Nagios XI URL the elements came from, when they were loaded and the tagged, length prefixed
+ * elements).  Files are read through a read-only memory mapping and written to a temporary file
+ * that is moved into place, so a reader never sees a partly written snapshot.  Files that are
+ * truncated, fail the checksum, have another format version or came from another Nagios XI server
+ * are deleted rather than used.
+ */
+public class NagiosSnapshotStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NagiosSnapshotStore.class);
+
+    private static final int MAGIC = 0x4E585353;
+    static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 20;
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte LONG = 2;
+    private static final byte DOUBLE = 3;
+    private static final byte BOOLEAN = 4;
+    private static final byte MAP = 5;
+    private static final byte LIST = 6;
+
+    /** The elements of a stored snapshot and when they were loaded from Nagios XI. */
+    public static class StoredSnapshot {
+        private final List<Object> elements;
+        private final long loadedAt;
+
+        private StoredSnapshot(List<Object> elements, long loadedAt) {
+            this.elements = elements;
+            this.loadedAt = loadedAt;
+        }
+
+        public List<Object> getElements() {
+            return elements;
+        }
+
+        public long getLoadedAt() {
+            return loadedAt;
+        }
+    }
+
+    private final Path directory;
+    private final String source;
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * @param directory the directory holding the snapshot files; created if it doesn't exist
+     * @param source the Nagios XI URL the snapshots come from, so snapshots of another server are ignored
+     */
+    public NagiosSnapshotStore(Path directory, String source) {
+        this.directory = directory;
+        this.source = source;
+    }
+
+    /** Reads the stored snapshot of a structure, or returns null if there is no usable one. */
+    public StoredSnapshot read(String structure) {
+        Path file = fileFor(structure);
+        if (Files.isRegularFile(file) == false) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            StoredSnapshot snapshot = decode(buffer);
+            if (snapshot == null) {
+                discard(file, "it is not a valid version " + FORMAT_VERSION + " snapshot of " + source);
+                return null;
+            }
+            reads.incrementAndGet();
+            LOGGER.debug("Read a {} element snapshot of {} from {}", snapshot.getElements().size(), structure, file);
+            return snapshot;
+        } catch (IOException | RuntimeException e) {
+            discard(file, e.toString());
+            return null;
+        }
+    }
+
+    /** Replaces the stored snapshot of a structure.  Failures are logged, not thrown. */
+    public void write(String structure, List<Object> elements, long loadedAt) {
+        Path file = fileFor(structure);
+        Path temporary = null;
+        try {
+            Files.createDirectories(directory);
+            byte[] payload = encodePayload(elements, loadedAt);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+                .putInt(MAGIC).putInt(FORMAT_VERSION).putInt(payload.length).putLong(crc.getValue());
+            header.flip();
+
+            temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                channel.write(new ByteBuffer[] {header, ByteBuffer.wrap(payload)});
+                channel.force(true);
+            }
+            try {
+                Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            writes.incrementAndGet();
+        } catch (IOException | RuntimeException e) {
+            failures.incrementAndGet();
+            LOGGER.warn("Unable to write the snapshot of " + structure + " to " + file, e);
+            if (temporary != null) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException ignored) {
+                    // The next write uses a new temporary file.
+                }
+            }
+        }
+    }
+
+    public Map<String,Long> getStats() {
+        Map<String,Long> stats = new LinkedHashMap<>();
+        stats.put("reads", reads.get());
+        stats.put("writes", writes.get());
+        stats.put("discarded", discarded.get());
+        stats.put("writeFailures", failures.get());
+        return stats;
+    }
+
+    /** The file holding a structure's snapshot. */
+    Path fileFor(String structure) {
+        return directory.resolve(structure.replaceAll("[^A-Za-z0-9_-]", "_") + ".snapshot");
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PRIVATE HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    private void discard(Path file, String reason) {
+        discarded.incrementAndGet();
+        LOGGER.warn("Discarding the snapshot file {} because {}", file, reason);
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to delete the snapshot file " + file, e);
+        }
+    }
+
+    private byte[] encodePayload(List<Object> elements, long loadedAt) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeString(out, source);
+            out.writeLong(loadedAt);
+            out.writeInt(elements.size());
+            for (Object element : elements) {
+                writeValue(out, element);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Decodes a snapshot file, or returns null if its header, checksum or source don't match. */
+    private StoredSnapshot decode(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+            return null;
+        }
+        int length = buffer.getInt();
+        long checksum = buffer.getLong();
+        if (length != buffer.remaining()) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate());
+        if (crc.getValue() != checksum) {
+            return null;
+        }
+        try {
+            if (source.equals(readString(buffer)) == false) {
+                return null;
+            }
+            long loadedAt = buffer.getLong();
+            int count = buffer.getInt();
+            List<Object> elements = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                elements.add(readValue(buffer));
+            }
+            return new StoredSnapshot(elements, loadedAt);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short) {
+            out.writeByte(LONG);
+            out.writeLong(((Number)value).longValue());
+        } else if (value instanceof Number) {
+            out.writeByte(DOUBLE);
+            out.writeDouble(((Number)value).doubleValue());
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean)value);
+        } else if (value instanceof Map) {
+            out.writeByte(MAP);
+            out.writeInt(((Map<?,?>)value).size());
+            for (Map.Entry<?,?> entry : ((Map<?,?>)value).entrySet()) {
+                writeString(out, String.valueOf(entry.getKey()));
+                writeValue(out, entry.getValue());
+            }
+        } else if (value instanceof List) {
+            out.writeByte(LIST);
+            out.writeInt(((List<?>)value).size());
+            for (Object item : (List<?>)value) {
+                writeValue(out, item);
+            }
+        } else {
+            out.writeByte(STRING);
+            writeString(out, value.toString());
+        }
+    }
+
+    private static Object readValue(ByteBuffer buffer) {
+        byte tag = buffer.get();
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return readString(buffer);
+            case LONG:
+                return buffer.getLong();
+            case DOUBLE:
+                return buffer.getDouble();
+            case BOOLEAN:
+                return buffer.get() != 0;
+            case MAP: {
+                int size = readSize(buffer);
+                Map<String,Object> map = new LinkedHashMap<>(size * 2);
+                for (int i = 0; i < size; i++) {
+                    map.put(readString(buffer), readValue(buffer));
+                }
+                return map;
+            }
+            case LIST: {
+                int size = readSize(buffer);
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(buffer));
+                }
+                return list;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown value tag " + tag);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[readSize(buffer)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int readSize(ByteBuffer buffer) {
+        int size = buffer.getInt();
+        if (size < 0 || size > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid length " + size);
+        }
+        return size;
+    }
+}
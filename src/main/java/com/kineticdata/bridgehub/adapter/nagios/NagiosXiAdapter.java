@@ -1,38 +1,89 @@
 package com.kineticdata.bridgehub.adapter.nagios;
 
-import com.jayway.jsonpath.InvalidPathException;
-import com.jayway.jsonpath.DocumentContext;
 import com.kineticdata.bridgehub.adapter.BridgeAdapter;
 import com.kineticdata.bridgehub.adapter.BridgeError;
 import com.kineticdata.bridgehub.adapter.BridgeRequest;
 import com.kineticdata.bridgehub.adapter.BridgeUtils;
 import com.kineticdata.bridgehub.adapter.Count;
+import com.kineticdata.bridgehub.adapter.DisposableAdapter;
 import com.kineticdata.bridgehub.adapter.Record;
 import com.kineticdata.bridgehub.adapter.RecordList;
 import com.kineticdata.commons.v1.config.ConfigurableProperty;
 import com.kineticdata.commons.v1.config.ConfigurablePropertyMap;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.lang.management.ManagementFactory;
+import java.net.ConnectException;
+import java.net.SocketException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.time.DateTimeException;
+import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.util.zip.GZIPInputStream;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.client.entity.DeflateInputStream;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
 import org.apache.http.util.EntityUtils;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.LoggerFactory;
 import com.jayway.jsonpath.JsonPath;
 import com.jayway.jsonpath.PathNotFoundException;
-import java.net.URLEncoder;
-import net.minidev.json.JSONArray;
 
-public class NagiosXiAdapter implements BridgeAdapter {
+public class NagiosXiAdapter implements BridgeAdapter, DisposableAdapter {
     /*----------------------------------------------------------------------------------------------
      * PROPERTIES
      *--------------------------------------------------------------------------------------------*/
@@ -41,6 +92,11 @@ public class NagiosXiAdapter implements BridgeAdapter {
     public static final String NAME = "Nagios XI Bridge";
     public static final String JSON_ROOT_DEFAULT = "$.*.*";
     public static final String JSON_ROOT_COUNT_PATH = "$.*.recordcount";
+    public static final String COUNT_MODE_FULL = "Full";
+    public static final String COUNT_MODE_TOTALS = "Totals";
+    public static final String COUNT_MODE_WINDOW = "Window";
+    /** The window a 'Window' count asks for. */
+    private static final String COUNT_WINDOW = "&records=1%3A0";
 
     /** Defines the LOGGER */
     protected static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(NagiosXiAdapter.class);
@@ -61,35 +117,507 @@ public class NagiosXiAdapter implements BridgeAdapter {
 
     private String apiKey;
     private String apiEndpoint;
+    
+    /** Pooled HTTP client shared by every call the adapter makes to Nagios XI. */
+    private volatile PoolingHttpClientConnectionManager connectionManager;
+    private volatile CloseableHttpClient httpClient;
+    
+    /** Compiled request plans, keyed on the structure, query, fields and order of a request. */
+    private volatile NagiosRequestPlan.Cache planCache = new NagiosRequestPlan.Cache(500);
+
+    /** Cached results, with a time to live (in seconds) per structure. */
+    private volatile NagiosResponseCache responseCache;
+    private volatile Map<String,Long> responseCacheTtls = new HashMap<>();
+    private volatile long responseCacheDefaultTtl;
+
+    /** Objects returned by searches, by their natural keys, for retrieves (null when off). */
+    private volatile NagiosObjectCache objectCache;
+
+    /** How counts are requested from Nagios XI, and how long a search's count can answer a count. */
+    private volatile String countMode = COUNT_MODE_FULL;
+    private volatile NagiosResponseCache recentCounts;
+    private volatile long recentCountTtlMillis;
+
+    /** Locally mirrored snapshots of selected structures (null when mirror mode is off). */
+    private volatile NagiosMirror mirror;
+
+    /** Group membership rows, searchable by group or by member (null when off). */
+    private volatile NagiosMembershipIndex membershipIndex;
+
+    /** Where mirrored and membership snapshots are kept between runs (null when the warm cache is off). */
+    private volatile NagiosSnapshotStore snapshotStore;
+
+    /** Reads ahead the pages after served search pages (null when prefetching is off). */
+    private volatile NagiosPrefetcher prefetcher;
+    private Set<String> prefetchStructures = new LinkedHashSet<>();
+    private int prefetchDepth;
+
+    /** The last result and body digest of each request on a memoized structure (null when off). */
+    private volatile NagiosResponseMemo responseMemo;
+    private Set<String> memoStructures = new LinkedHashSet<>();
+
+    /** Merges fields of related structures into searches that name joins in their metadata. */
+    private volatile NagiosJoiner joiner;
+
+    /** Answers concurrent retrieves on the same key field with one search (null when off). */
+    private volatile NagiosRetrieveBatcher retrieveBatcher;
+
+    /** The adapters of each Nagios XI instance when several are configured (null for a single instance). */
+    private volatile NagiosFederation federation;
+
+    /** The outcome of the last authentication check: -1 pending, 0 failed, 1 succeeded. */
+    private final AtomicLong authenticationState = new AtomicLong(-1);
+
+    /** Incrementally synchronized history structures, keyed by structure. */
+    private volatile Map<String,NagiosHistoryStore> historyStores = new HashMap<>();
+
+    /** Shares one Nagios XI call between identical concurrent requests (null when disabled). */
+    private volatile NagiosSingleFlight singleFlight;
+
+    /** Splits large search windows into concurrent Nagios XI requests (null when disabled). */
+    private volatile ExecutorService pageExecutor;
+    private volatile int pageChunkSize;
+    private volatile Map<String,String> pageSortKeys = new HashMap<>();
+
+    /** Whether to ask Nagios XI for gzip/deflate responses, and the bytes transferred per structure. */
+    private volatile boolean requestCompression = true;
+    private final Map<String,AtomicLong> transferStats = new ConcurrentHashMap<>();
+
+    /** Whether search results are held column-wise rather than as a HashMap per record. */
+    private volatile boolean compactRecordLists = true;
+
+    /** Per operation, structure and phase latency metrics, optionally published over JMX. */
+    private final NagiosMetrics metrics = new NagiosMetrics();
+    private volatile ObjectName metricsName;
+    private static final AtomicInteger METRICS_INSTANCES = new AtomicInteger();
+
+    /** Overall deadline, connection retries and request hedging of each Nagios XI call. */
+    private volatile long totalTimeoutMillis;
+    private volatile int connectionRetries;
+    private volatile long retryBackoffMillis;
+    private volatile ExecutorService hedgeExecutor;
+    private volatile long hedgeDelayMillis;
+    private final Map<String,NagiosMetrics.Histogram> responseTimes = new ConcurrentHashMap<>();
+    private final Map<String,AtomicLong> tailLatencyStats = new ConcurrentHashMap<>();
+
+    /** Limits concurrent Nagios XI calls, by priority of operation or structure (null when disabled). */
+    private volatile NagiosConcurrencyLimiter concurrencyLimiter;
+    private volatile Map<String,Integer> requestPriorities = new HashMap<>();
+
+    /** Fails calls fast while Nagios XI is unhealthy (null when disabled). */
+    private volatile NagiosCircuitBreaker circuitBreaker;
+
+    /** Runs the asynchronous and batched variants of the bridge calls. */
+    private volatile ExecutorService requestExecutor;
+
+    /** Runs background work such as refreshing stale cache entries. */
+    private volatile ScheduledExecutorService backgroundExecutor;
 
     /** Defines the collection of property names for the adapter */
     public static class Properties {
         public static final String API_KEY = "API Key";
         public static final String API_URL = "Nagios XI URL";
+        public static final String CONNECT_TIMEOUT = "Connect Timeout (ms)";
+        public static final String SOCKET_TIMEOUT = "Socket Timeout (ms)";
+        public static final String CONNECTION_REQUEST_TIMEOUT = "Connection Request Timeout (ms)";
+        public static final String TOTAL_TIMEOUT = "Total Timeout (ms)";
+        public static final String CONNECTION_RETRIES = "Connection Retries";
+        public static final String RETRY_BACKOFF = "Retry Backoff (ms)";
+        public static final String HEDGE_REQUESTS = "Hedge Requests";
+        public static final String HEDGE_DELAY = "Hedge Delay (ms)";
+        public static final String CIRCUIT_FAILURE_THRESHOLD = "Circuit Breaker Failure Threshold";
+        public static final String CIRCUIT_OPEN_TIME = "Circuit Breaker Open Time (s)";
+        public static final String CONCURRENCY_LIMIT = "Concurrency Limit";
+        public static final String MAX_CONCURRENCY_LIMIT = "Max Concurrency Limit";
+        public static final String REQUEST_QUEUE_SIZE = "Request Queue Size";
+        public static final String REQUEST_QUEUE_TIMEOUT = "Request Queue Timeout (ms)";
+        public static final String REQUEST_PRIORITIES = "Request Priorities";
+        public static final String MAX_CONNECTIONS = "Max Connections";
+        public static final String MAX_CONNECTIONS_PER_ROUTE = "Max Connections Per Route";
+        public static final String IDLE_CONNECTION_TIMEOUT = "Idle Connection Timeout (s)";
+        public static final String PLAN_CACHE_SIZE = "Request Plan Cache Size";
+        public static final String CACHE_DEFAULT_TTL = "Cache Default TTL (s)";
+        public static final String CACHE_TTLS = "Cache TTLs";
+        public static final String CACHE_STALE_WINDOW = "Cache Stale Window (s)";
+        public static final String CACHE_MAX_ENTRIES = "Cache Max Entries";
+        public static final String CACHE_MAX_MEGABYTES = "Cache Max Size (MB)";
+        public static final String OBJECT_CACHE_TTL = "Object Cache TTL (s)";
+        public static final String OBJECT_CACHE_KEYS = "Object Cache Keys";
+        public static final String OBJECT_CACHE_MAX_ENTRIES = "Object Cache Max Entries";
+        public static final String COUNT_MODE = "Count Mode";
+        public static final String COUNT_REUSE_WINDOW = "Count Reuse Window (s)";
+        public static final String MIRROR_STRUCTURES = "Mirror Structures";
+        public static final String MIRROR_REFRESH_INTERVAL = "Mirror Refresh Interval (s)";
+        public static final String MIRROR_INDEX_FIELDS = "Mirror Index Fields";
+        public static final String MEMBERSHIP_STRUCTURES = "Membership Index Structures";
+        public static final String MEMBERSHIP_REFRESH_INTERVAL = "Membership Index Refresh Interval (s)";
+        public static final String WARM_CACHE_DIRECTORY = "Warm Cache Directory";
+        public static final String BACKGROUND_AUTHENTICATION = "Authenticate In Background";
+        public static final String INSTANCE_TIMEOUT = "Instance Timeout (ms)";
+        public static final String PREFETCH_STRUCTURES = "Prefetch Structures";
+        public static final String PREFETCH_DEPTH = "Prefetch Depth";
+        public static final String PREFETCH_TTL = "Prefetch TTL (s)";
+        public static final String PREFETCH_CACHE_SIZE = "Prefetch Cache Size";
+        public static final String MEMO_STRUCTURES = "Memoized Structures";
+        public static final String MEMO_MAX_ENTRIES = "Memo Max Entries";
+        public static final String MEMO_MAX_BODY_SIZE = "Memo Max Body Size (bytes)";
+        public static final String JOIN_BATCH_SIZE = "Join Batch Size";
+        public static final String RETRIEVE_BATCH_KEYS = "Retrieve Batch Keys";
+        public static final String RETRIEVE_BATCH_WINDOW = "Retrieve Batch Window (ms)";
+        public static final String RETRIEVE_BATCH_SIZE = "Retrieve Batch Size";
+        public static final String PARTIAL_RESULTS = "Allow Partial Results";
+        public static final String HISTORY_STRUCTURES = "History Structures";
+        public static final String HISTORY_SYNC_INTERVAL = "History Sync Interval (s)";
+        public static final String HISTORY_RETENTION = "History Retention (h)";
+        public static final String HISTORY_MAX_ENTRIES = "History Max Entries";
+        public static final String HISTORY_TIME_ZONE = "History Time Zone";
+        public static final String PAGE_CHUNK_SIZE = "Parallel Page Chunk Size";
+        public static final String PAGE_THREADS = "Parallel Page Threads";
+        public static final String PAGE_SORT_KEYS = "Parallel Page Sort Keys";
+        public static final String ASYNC_THREADS = "Async Request Threads";
+        public static final String REQUEST_COMPRESSION = "Request Compression";
+        public static final String COMPACT_RECORD_LISTS = "Compact Record Lists";
+        public static final String JMX_METRICS = "Publish JMX Metrics";
+        public static final String COALESCE_REQUESTS = "Coalesce Identical Requests";
+        public static final String COALESCE_WAIT_TIMEOUT = "Coalesced Request Wait Timeout (ms)";
     }
 
     private final ConfigurablePropertyMap properties = new ConfigurablePropertyMap(
-        new ConfigurableProperty(Properties.API_KEY),
+        new ConfigurableProperty(Properties.API_KEY)
+            .setDescription("The Nagios XI API key. With several instances, either one key for all of them or a "
+                + "comma separated key for each, in the same order as the URLs."),
         new ConfigurableProperty(Properties.API_URL)
+            .setDescription("The Nagios XI URL, or comma separated URLs of several instances to query together "
+                + "and merge the results of."),
+        new ConfigurableProperty(Properties.CONNECT_TIMEOUT)
+            .setValue("10000")
+            .setDescription("Milliseconds to wait while opening a connection to Nagios XI."),
+        new ConfigurableProperty(Properties.SOCKET_TIMEOUT)
+            .setValue("60000")
+            .setDescription("Milliseconds to wait between packets while reading a Nagios XI response."),
+        new ConfigurableProperty(Properties.CONNECTION_REQUEST_TIMEOUT)
+            .setValue("10000")
+            .setDescription("Milliseconds to wait for a free connection from the pool."),
+        new ConfigurableProperty(Properties.TOTAL_TIMEOUT)
+            .setValue("120000")
+            .setDescription("Milliseconds a Nagios XI call may take in total, including retries and reading the "
+                + "response, before it is aborted. 0 turns the limit off."),
+        new ConfigurableProperty(Properties.CONNECTION_RETRIES)
+            .setValue("2")
+            .setDescription("Times a call is retried when the connection to Nagios XI fails or is dropped before "
+                + "a response arrives. Read timeouts are not retried."),
+        new ConfigurableProperty(Properties.RETRY_BACKOFF)
+            .setValue("100")
+            .setDescription("Base milliseconds between retries; each retry waits a random time up to this base "
+                + "doubled per attempt."),
+        new ConfigurableProperty(Properties.HEDGE_REQUESTS)
+            .setValue("false")
+            .addPossibleValues("true", "false")
+            .setDescription("Send a second, identical request when the first has not answered within the hedge "
+                + "delay, and use whichever response arrives first."),
+        new ConfigurableProperty(Properties.HEDGE_DELAY)
+            .setValue("50")
+            .setDescription("Minimum milliseconds before a hedged request is sent. Once a structure has enough "
+                + "responses, its 95th percentile response time is used when that is longer."),
+        new ConfigurableProperty(Properties.CIRCUIT_FAILURE_THRESHOLD)
+            .setValue("5")
+            .setDescription("Consecutive failed Nagios XI calls after which requests fail fast (or are answered "
+                + "from the last cached result) until Nagios XI recovers. 0 turns the circuit breaker off."),
+        new ConfigurableProperty(Properties.CIRCUIT_OPEN_TIME)
+            .setValue("30")
+            .setDescription("Seconds requests fail fast before a single probe request is sent to Nagios XI."),
+        new ConfigurableProperty(Properties.CONCURRENCY_LIMIT)
+            .setValue("20")
+            .setDescription("Initial number of concurrent Nagios XI calls. The limit then adapts to response times: "
+                + "it grows while Nagios XI answers quickly and shrinks when it slows down. 0 turns the limit off."),
+        new ConfigurableProperty(Properties.MAX_CONCURRENCY_LIMIT)
+            .setValue("50")
+            .setDescription("Upper bound of the adaptive concurrency limit."),
+        new ConfigurableProperty(Properties.REQUEST_QUEUE_SIZE)
+            .setValue("100")
+            .setDescription("Calls over the concurrency limit that may wait for a slot; further calls fail at once."),
+        new ConfigurableProperty(Properties.REQUEST_QUEUE_TIMEOUT)
+            .setValue("10000")
+            .setDescription("Milliseconds a call waits for a slot before failing."),
+        new ConfigurableProperty(Properties.REQUEST_PRIORITIES)
+            .setValue("retrieve=0,count=1,search=2,background=3")
+            .setDescription("Comma separated operation=priority or structure=priority pairs. Waiting calls with "
+                + "lower numbers go first; a structure's priority overrides its operation's. Unlisted calls go last."),
+        new ConfigurableProperty(Properties.MAX_CONNECTIONS)
+            .setValue("50")
+            .setDescription("Maximum number of pooled connections across all Nagios XI routes."),
+        new ConfigurableProperty(Properties.MAX_CONNECTIONS_PER_ROUTE)
+            .setValue("20")
+            .setDescription("Maximum number of pooled connections to a single Nagios XI host."),
+        new ConfigurableProperty(Properties.IDLE_CONNECTION_TIMEOUT)
+            .setValue("30")
+            .setDescription("Seconds a pooled connection may sit idle before it is closed."),
+        new ConfigurableProperty(Properties.PLAN_CACHE_SIZE)
+            .setValue("500")
+            .setDescription("Number of compiled query/field/order combinations to keep in memory."),
+        new ConfigurableProperty(Properties.CACHE_DEFAULT_TTL)
+            .setValue("0")
+            .setDescription("Seconds to cache results for structures not listed in 'Cache TTLs'. 0 disables caching."),
+        new ConfigurableProperty(Properties.CACHE_TTLS)
+            .setDescription("Comma separated structure=seconds pairs, for example "
+                + "'objects/host=3600,objects/hoststatus=60'."),
+        new ConfigurableProperty(Properties.CACHE_STALE_WINDOW)
+            .setValue("0")
+            .setDescription("Seconds an expired result may still be served while it is refreshed in the background."),
+        new ConfigurableProperty(Properties.CACHE_MAX_ENTRIES)
+            .setValue("1000")
+            .setDescription("Maximum number of cached results."),
+        new ConfigurableProperty(Properties.CACHE_MAX_MEGABYTES)
+            .setValue("64")
+            .setDescription("Approximate maximum memory held by cached results."),
+        new ConfigurableProperty(Properties.OBJECT_CACHE_TTL)
+            .setValue("0")
+            .setDescription("Seconds the objects returned by searches can answer retrieves of the same object by "
+                + "one of its keys. 0 turns the object cache off."),
+        new ConfigurableProperty(Properties.OBJECT_CACHE_KEYS)
+            .setValue("objects/host=host_object_id|host_name,objects/hoststatus=host_object_id|host_name,"
+                + "objects/service=service_object_id|host_name+service_description,"
+                + "objects/servicestatus=service_object_id|host_name+service_description")
+            .setDescription("Comma separated structure=keys pairs naming the unique keys of the cached structures. "
+                + "Keys are separated by '|' and the fields of a compound key are joined with '+'."),
+        new ConfigurableProperty(Properties.OBJECT_CACHE_MAX_ENTRIES)
+            .setValue("50000")
+            .setDescription("Maximum number of cached object keys."),
+        new ConfigurableProperty(Properties.COUNT_MODE)
+            .setValue(COUNT_MODE_FULL)
+            .addPossibleValues(COUNT_MODE_FULL, COUNT_MODE_TOTALS, COUNT_MODE_WINDOW)
+            .setDescription("Full sends the plain query, Totals adds the Nagios XI totals=1 option and Window "
+                + "adds records=1:0. The response is only read up to its record count in every mode. Totals and "
+                + "Window need a Nagios XI version whose recordcount is the total number of matches rather than "
+                + "the number of records returned; a Window count of 1 is checked again with a Full count."),
+        new ConfigurableProperty(Properties.COUNT_REUSE_WINDOW)
+            .setValue("10")
+            .setDescription("Seconds the record count of a search can answer a count with the same qualification."),
+        new ConfigurableProperty(Properties.MIRROR_STRUCTURES)
+            .setDescription("Comma separated structures (such as objects/hoststatus,objects/servicestatus) to "
+                + "keep a full local copy of and answer requests from. Empty turns mirror mode off."),
+        new ConfigurableProperty(Properties.MIRROR_REFRESH_INTERVAL)
+            .setValue("60")
+            .setDescription("Seconds between full refreshes of the mirrored structures."),
+        new ConfigurableProperty(Properties.MIRROR_INDEX_FIELDS)
+            .setValue("host_name,service_description,current_state,problem_has_been_acknowledged,"
+                + "host_object_id,service_object_id")
+            .setDescription("Comma separated fields to index in the mirrored structures."),
+        new ConfigurableProperty(Properties.MEMBERSHIP_STRUCTURES)
+            .setDescription("Comma separated virtual structures (objects/hostgroupmembership, "
+                + "objects/servicegroupmembership, objects/contactgroupmembership) to build from the group member "
+                + "structures, with one record per group and member. They can be searched and counted by group "
+                + "or by member. Empty turns the membership index off."),
+        new ConfigurableProperty(Properties.MEMBERSHIP_REFRESH_INTERVAL)
+            .setValue("300")
+            .setDescription("Seconds between rebuilds of the membership index."),
+        new ConfigurableProperty(Properties.WARM_CACHE_DIRECTORY)
+            .setDescription("Directory to keep the mirrored structures and membership index in between restarts, "
+                + "so they can answer requests as soon as the adapter starts while they are refreshed in the "
+                + "background. Empty turns the warm cache off."),
+        new ConfigurableProperty(Properties.BACKGROUND_AUTHENTICATION)
+            .setValue("false")
+            .addPossibleValues("true","false")
+            .setDescription("Check the API key in the background instead of holding up initialization. A failed "
+                + "check is logged rather than failing the initialization."),
+        new ConfigurableProperty(Properties.PREFETCH_STRUCTURES)
+            .setDescription("Comma separated structures (such as objects/servicestatus,objects/logentries) whose "
+                + "following search pages are read ahead in the background after each page is served. Read-ahead "
+                + "is skipped while Nagios XI is busy. Empty turns prefetching off."),
+        new ConfigurableProperty(Properties.PREFETCH_DEPTH)
+            .setValue("1")
+            .setDescription("Number of following pages to read ahead."),
+        new ConfigurableProperty(Properties.PREFETCH_TTL)
+            .setValue("30")
+            .setDescription("Seconds a prefetched page can be served."),
+        new ConfigurableProperty(Properties.PREFETCH_CACHE_SIZE)
+            .setValue("200")
+            .setDescription("Maximum number of prefetched pages held."),
+        new ConfigurableProperty(Properties.MEMO_STRUCTURES)
+            .setDescription("Comma separated structures (such as objects/host,objects/service) whose responses are "
+                + "buffered and digested, so an unchanged response reuses the records built from the last one "
+                + "instead of being parsed again. Requests are made conditional when Nagios XI sends an ETag or "
+                + "Last-Modified header. Empty turns memoization off."),
+        new ConfigurableProperty(Properties.MEMO_MAX_ENTRIES)
+            .setValue("500")
+            .setDescription("Maximum number of memoized responses."),
+        new ConfigurableProperty(Properties.MEMO_MAX_BODY_SIZE)
+            .setValue("8388608")
+            .setDescription("Responses larger than this are parsed as they stream in, without memoization."),
+        new ConfigurableProperty(Properties.JOIN_BATCH_SIZE)
+            .setValue("50")
+            .setDescription("Maximum number of join values (such as host names) looked up by one search of a "
+                + "joined structure when a search names joins in its 'join' metadata."),
+        new ConfigurableProperty(Properties.RETRIEVE_BATCH_KEYS)
+            .setDescription("Comma separated structure=field pairs (such as objects/hoststatus=host_name). Concurrent "
+                + "retrieves of a structure that differ only in the value of its field are answered by one Nagios XI "
+                + "search with an in: filter. Empty turns retrieve batching off."),
+        new ConfigurableProperty(Properties.RETRIEVE_BATCH_WINDOW)
+            .setValue("5")
+            .setDescription("Milliseconds the first retrieve of a batch waits for others to join it."),
+        new ConfigurableProperty(Properties.RETRIEVE_BATCH_SIZE)
+            .setValue("50")
+            .setDescription("Maximum number of retrieves in a batch; a full batch is sent without waiting."),
+        new ConfigurableProperty(Properties.INSTANCE_TIMEOUT)
+            .setValue("30000")
+            .setDescription("With several Nagios XI instances, milliseconds to wait for every instance to answer "
+                + "before going on without the ones that haven't."),
+        new ConfigurableProperty(Properties.PARTIAL_RESULTS)
+            .setValue("true")
+            .addPossibleValues("true","false")
+            .setDescription("With several Nagios XI instances, answer from the instances that responded when others "
+                + "fail or time out, listing the others in the 'unavailableInstances' metadata."),
+        new ConfigurableProperty(Properties.HISTORY_STRUCTURES)
+            .setDescription("Comma separated history structures (objects/statehistory, objects/logentries) to sync "
+                + "incrementally and answer starttime/endtime queries from. Empty turns history sync off."),
+        new ConfigurableProperty(Properties.HISTORY_SYNC_INTERVAL)
+            .setValue("30")
+            .setDescription("Seconds between requests for history entries newer than the newest one held."),
+        new ConfigurableProperty(Properties.HISTORY_RETENTION)
+            .setValue("24")
+            .setDescription("Hours of history to keep locally; older entries are aged out in the background."),
+        new ConfigurableProperty(Properties.HISTORY_MAX_ENTRIES)
+            .setValue("500000")
+            .setDescription("Maximum number of history entries kept per structure; the oldest are dropped first."),
+        new ConfigurableProperty(Properties.HISTORY_TIME_ZONE)
+            .setDescription("Time zone of the Nagios XI server (such as America/Chicago), used to read history "
+                + "timestamps. Empty uses the adapter's own time zone."),
+        new ConfigurableProperty(Properties.PAGE_CHUNK_SIZE)
+            .setValue("0")
+            .setDescription("Searches asking for more records than this are split into concurrent requests of this "
+                + "many records each. 0 turns splitting off."),
+        new ConfigurableProperty(Properties.PAGE_THREADS)
+            .setValue("4")
+            .setDescription("Maximum number of split search requests sent to Nagios XI at the same time."),
+        new ConfigurableProperty(Properties.PAGE_SORT_KEYS)
+            .setValue("objects/host=host_object_id,objects/hoststatus=host_object_id,"
+                + "objects/service=service_object_id,objects/servicestatus=service_object_id")
+            .setDescription("Comma separated structure=field pairs naming a unique field that is appended to the "
+                + "sort order of split searches so records can't move between chunks. Structures without "
+                + "one are never split."),
+        new ConfigurableProperty(Properties.ASYNC_THREADS)
+            .setValue("10")
+            .setDescription("Maximum number of asynchronous or batched bridge requests that run at the same time."),
+        new ConfigurableProperty(Properties.REQUEST_COMPRESSION)
+            .setValue("true")
+            .addPossibleValues("true", "false")
+            .setDescription("Ask Nagios XI for gzip or deflate compressed responses."),
+        new ConfigurableProperty(Properties.COMPACT_RECORD_LISTS)
+            .setValue("true")
+            .addPossibleValues("true", "false")
+            .setDescription("Hold search results column-wise, with read-only records, instead of a map per record."),
+        new ConfigurableProperty(Properties.JMX_METRICS)
+            .setValue("true")
+            .addPossibleValues("true", "false")
+            .setDescription("Register the adapter's latency and error metrics as a JMX MBean."),
+        new ConfigurableProperty(Properties.COALESCE_REQUESTS)
+            .setValue("true")
+            .addPossibleValues("true", "false")
+            .setDescription("Share one Nagios XI call between identical requests that are in flight at the same time."),
+        new ConfigurableProperty(Properties.COALESCE_WAIT_TIMEOUT)
+            .setValue("60000")
+            .setDescription("Milliseconds a coalesced request waits for the shared call before failing.")
     );
 
 
+    /** HTTP context attribute holding the metrics of the call a request belongs to. */
+    private static final String CALL_ATTRIBUTE = "nagios.metrics.call";
+
+    /** Bytes of unread response body worth draining to keep a connection alive. */
+    private static final int MAX_DRAIN_BYTES = 8192;
+
+    /** Consumes the body of a successful Nagios XI response. */
+    private interface ResponseConsumer<T> {
+        T consume(InputStream content) throws IOException, BridgeError;
+    }
+
+
     /*---------------------------------------------------------------------------------------------
      * SETUP METHODS
      *-------------------------------------------------------------------------------------------*/    
 
     @Override
     public void initialize() throws BridgeError {
-        this.apiKey = properties.getValue(Properties.API_KEY);
-        // Remove any trailing forward slash.
-        this.apiEndpoint = properties.getValue(Properties.API_URL).replaceFirst("(\\/)$", "");
-        testAuthenticationValues(this.apiEndpoint, this.apiKey);
+        initialize_noAuth();
+        NagiosFederation instances = this.federation;
+        if (instances == null) {
+            checkAuthentication();
+        } else {
+            for (NagiosXiAdapter instance : instances.getInstances().values()) {
+                instance.checkAuthentication();
+            }
+        }
+    }
+
+    /** Checks the API key, in the background when 'Authenticate In Background' is set. */
+    private void checkAuthentication() throws BridgeError {
+        if ("true".equalsIgnoreCase(properties.getValue(Properties.BACKGROUND_AUTHENTICATION))) {
+            String endpoint = this.apiEndpoint;
+            String key = this.apiKey;
+            backgroundExecutor.execute(() -> {
+                try {
+                    authenticate(endpoint, key);
+                } catch (BridgeError e) {
+                    LOGGER.error("The Nagios XI authentication check failed", e);
+                }
+            });
+        } else {
+            authenticate(this.apiEndpoint, this.apiKey);
+        }
     }
     
-    public void initialize_noAuth() {
+    public void initialize_noAuth() throws BridgeError {
         this.apiKey = properties.getValue(Properties.API_KEY);
         // Remove any trailing forward slash.
         this.apiEndpoint = properties.getValue(Properties.API_URL).replaceFirst("(\\/)$", "");
+        this.planCache = new NagiosRequestPlan.Cache(getIntegerProperty(Properties.PLAN_CACHE_SIZE, 500));
+        if (this.apiEndpoint.contains(",")) {
+            // Each instance gets an adapter of its own; this one only fans requests out to them.
+            destroy();
+            initializeFederation();
+            registerMetrics();
+            return;
+        }
+        closeFederation();
+        initializeBackgroundExecutor();
+        initializeResponseCache();
+        initializeObjectCache();
+        initializeResponseMemo();
+        this.joiner = new NagiosJoiner(this::search, getIntegerProperty(Properties.JOIN_BATCH_SIZE, 50));
+        initializeRetrieveBatcher();
+        this.countMode = StringUtils.defaultIfEmpty(properties.getValue(Properties.COUNT_MODE), COUNT_MODE_FULL);
+        this.recentCountTtlMillis = TimeUnit.SECONDS.toMillis(getIntegerProperty(Properties.COUNT_REUSE_WINDOW, 10));
+        this.recentCounts = new NagiosResponseCache(1000, Long.MAX_VALUE, 0, Runnable::run);
+        this.singleFlight = "false".equalsIgnoreCase(properties.getValue(Properties.COALESCE_REQUESTS))
+            ? null
+            : new NagiosSingleFlight(getIntegerProperty(Properties.COALESCE_WAIT_TIMEOUT, 60000));
+        this.requestCompression = "false".equalsIgnoreCase(properties.getValue(Properties.REQUEST_COMPRESSION)) == false;
+        this.compactRecordLists = "false".equalsIgnoreCase(properties.getValue(Properties.COMPACT_RECORD_LISTS)) == false;
+        initializeHttpClient();
+        initializeTailLatencyControls();
+        initializePageExecutor();
+        initializeRequestExecutor();
+        initializePrefetcher();
+        initializeSnapshotStore();
+        initializeMirror();
+        initializeMembershipIndex();
+        initializeHistory();
+        registerMetrics();
+    }
+
+    @Override
+    public void destroy() {
+        closeFederation();
+        unregisterMetrics();
+        closePrefetcher();
+        closeHistory();
+        closeMembershipIndex();
+        closeMirror();
+        closeHttpClient();
+        closeHedgeExecutor();
+        closePageExecutor();
+        closeRequestExecutor();
+        closeBackgroundExecutor();
     }
 
     @Override
@@ -118,299 +646,1896 @@ public class NagiosXiAdapter implements BridgeAdapter {
 
     @Override
     public Count count(BridgeRequest request) throws BridgeError {
+        return metrics.time("count", request.getStructure(), () -> countRecords(request));
+    }
+
+    @Override
+    public Record retrieve(BridgeRequest request) throws BridgeError {
+        return metrics.time("retrieve", request.getStructure(), () -> retrieveRecord(request));
+    }
+
+    @Override
+    public RecordList search(BridgeRequest request) throws BridgeError {
+        return metrics.time("search", request.getStructure(), () -> searchRecords(request));
+    }
+
+    private Count countRecords(BridgeRequest request) throws BridgeError {
+        NagiosFederation instances = this.federation;
+        if (instances != null) {
+            return instances.count(request);
+        }
 
         NagiosQualificationParser nagiosParser = new NagiosQualificationParser();
-        String jsonResponse = nagiosQuery("count", request, nagiosParser);
-        String count = "0";
-        JSONArray jsonCount = JsonPath.read(jsonResponse, JSON_ROOT_COUNT_PATH);
-        count = (String)jsonCount.get(0);
+        NagiosRequestPlan plan = planCache.get(request);
+        List<Object> mirrored = selectLocally(request, plan, nagiosParser);
+        if (mirrored != null) {
+            return new Count(mirrored.size());
+        }
+        String url = buildUrl("count", request, plan, nagiosParser);
 
-        // Create and return a Count object.
-        return new Count(Long.valueOf(count));
+        // A search with the same qualification may have just told us the answer.
+        Count recentCount = recentCounts == null ? null : (Count)recentCounts.peek(url);
+        if (recentCount != null) {
+            return recentCount;
+        }
+        return cached("count", plan, url, () -> {
+            Count count = fetchCount(plan, url);
+            // Where the recordcount is only the number of records returned, a window of one
+            // record always counts 1, so that answer needs a full count.
+            if (url.endsWith(COUNT_WINDOW) && count.getValue() != null && count.getValue() == 1) {
+                return fetchCount(plan, StringUtils.removeEnd(url, COUNT_WINDOW));
+            }
+            return count;
+        });
     }
 
-    @Override
-    public Record retrieve(BridgeRequest request) throws BridgeError {
+    private Record retrieveRecord(BridgeRequest request) throws BridgeError {
+        NagiosFederation instances = this.federation;
+        if (instances != null) {
+            return instances.retrieve(request);
+        }
 
         NagiosQualificationParser nagiosParser = new NagiosQualificationParser();
-        String jsonRootPath = NagiosQualificationParser.jsonPathMapping.get(request.getStructure());
-        if (jsonRootPath == null) {
-            jsonRootPath = JSON_ROOT_DEFAULT;
+        NagiosRequestPlan plan = planCache.get(request);
+        List<Object> mirrored = selectLocally(request, plan, nagiosParser);
+        if (mirrored != null) {
+            if (mirrored.size() > 1) {
+                throw new BridgeError("Multiple results matched an expected single match query");
+            }
+            return mirrored.isEmpty() ? new Record(null) : new Record(plan.toRecordValues(mirrored.get(0)));
         }
-       
-        String jsonResponse = nagiosQuery("search", request, nagiosParser);
-        Record recordResult = new Record(null);
-        
-        try {
-            
-            DocumentContext jsonDocument = JsonPath.parse(jsonResponse);
-            Object objectRoot = jsonDocument.read(jsonRootPath);
-            
-            if (objectRoot instanceof List) {
-                List<Object> listRoot = (List)objectRoot;
-                if (listRoot.size() == 1) {
-                    Map<String, Object> recordValues = new HashMap();
-                    request.getFields().forEach((field) -> {
-                        try {
-                            recordValues.put(field, JsonPath.parse(listRoot.get(0)).read(field));
-                        } catch (InvalidPathException e) {
-                            recordValues.put(field, null);
-                        }
-                    });
-                    recordResult = new Record(recordValues);
-                } else {
-                    throw new BridgeError("Multiple results matched an expected single match query");
-                }
-            } else if (objectRoot instanceof Map) {
-                Map<String, Object> recordValues = new HashMap();
-                request.getFields().forEach((field) -> {
-                    try {
-                        recordValues.put(field, JsonPath.parse(objectRoot).read(field));
-                    } catch (InvalidPathException e) {
-                        recordValues.put(field, null);
-                    }
-                });
-                recordResult = new Record(recordValues);
+        NagiosObjectCache objects = this.objectCache;
+        if (objects != null && objects.isCached(plan.getStructure())) {
+            Object element = objects.get(plan.getStructure(),
+                NagiosQueryFilter.parse(plan.resolveQuery(request.getParameters(), nagiosParser)));
+            if (element != null) {
+                return new Record(plan.toRecordValues(element));
+            }
+        }
+        NagiosRetrieveBatcher batches = this.retrieveBatcher;
+        if (batches != null && batches.isBatched(plan.getStructure())) {
+            Record batched = batches.retrieve(request, plan.resolveQuery(request.getParameters(), nagiosParser));
+            if (batched != null) {
+                return batched;
             }
-            
-        } catch (PathNotFoundException e) {
-            LOGGER.trace("The Nagios XI API query ({}) on the structure () matched zero results.", request.getQuery(), request.getStructure());
         }
+        String url = buildUrl("retrieve", request, plan, nagiosParser);
 
-        return recordResult;
+        return cached("retrieve", plan, url, () -> fetchRecord(request, plan, url));
 
     }
 
-    @Override
-    public RecordList search(BridgeRequest request) throws BridgeError {
+    private RecordList searchRecords(BridgeRequest request) throws BridgeError {
 
+        NagiosFederation instances = this.federation;
+        NagiosJoiner joins = this.joiner;
+        // With several instances each instance joins its own records.
+        if (instances == null && joins != null && NagiosJoiner.isJoined(request)) {
+            return joins.search(request);
+        }
         NagiosQualificationParser nagiosParser = new NagiosQualificationParser();
-        String jsonRootPath = NagiosQualificationParser.jsonPathMapping.get(request.getStructure());
-        if (jsonRootPath == null) {
-            jsonRootPath = JSON_ROOT_DEFAULT;
+        NagiosRequestPlan plan = planCache.get(request);
+        if (instances != null) {
+            String[] pagination = getPagination(request);
+            return instances.search(request, plan.getOrderBy(),
+                Integer.parseInt(pagination[0]), Integer.parseInt(pagination[1]));
         }
-        
-        String jsonResponse = nagiosQuery("search", request, nagiosParser);
+        List<Object> mirrored = selectLocally(request, plan, nagiosParser);
+        if (mirrored != null) {
+            return toPagedRecordList(request, plan, mirrored);
+        }
+        String url = buildUrl("search", request, plan, nagiosParser);
+        String countUrl = buildUrl("count", request, plan, nagiosParser);
 
-        List<Record> recordList = new ArrayList<>();
-        Map<String,String> metadata = new LinkedHashMap<>();
-        
-        try {
-            DocumentContext jsonDocument = JsonPath.parse(jsonResponse);
-            Object objectRoot = jsonDocument.read(jsonRootPath);
-
-            JSONArray jsonCount = JsonPath.read(jsonResponse, JSON_ROOT_COUNT_PATH);
-            String count = (String)jsonCount.get(0);
-
-            metadata.put("count",count);
-
-            if (objectRoot instanceof List) {
-                List<Object> listRoot = (List)objectRoot;
-                metadata.put("size", String.valueOf(listRoot.size()));
-                listRoot.stream().map((arrayElement) -> {
-                    Map<String, Object> recordValues = new HashMap();
-                    DocumentContext jsonObject = JsonPath.parse(arrayElement);
-                    request.getFields().forEach((field) -> {
-                        try {
-                            recordValues.put(field, jsonObject.read(field));
-                        } catch (InvalidPathException e) {
-                            recordValues.put(field, null);
-                        }
-                    });
-                    return recordValues;
-                }).forEachOrdered((recordValues) -> {
-                    recordList.add(new Record(recordValues));
-                });
-            } else if (objectRoot instanceof Map) {
-                metadata.put("size", "1");
-                Map<String, Object> recordValues = new HashMap();
-                DocumentContext jsonObject = JsonPath.parse(objectRoot);
-                request.getFields().forEach((field) -> {
-                    recordValues.put(field, jsonObject.read(field));
-                });
-                recordList.add(new Record(recordValues));
-            }
-        } catch (PathNotFoundException e) {
-            metadata.put("size", "0");
-            metadata.put("count", "0");
-            LOGGER.trace("The Nagios XI API query ({}) on the structure () matched zero results.", request.getQuery(), request.getStructure());
+        NagiosPrefetcher pages = prefetchStructures.contains(plan.getStructure()) ? this.prefetcher : null;
+        RecordList recordList = pages == null ? null : pages.take(cacheKey("search", plan, url));
+        if (recordList == null) {
+            recordList = isSplitSearch(request, plan)
+                ? cached("search", plan, url, () -> fetchRecordListInChunks(request, plan, nagiosParser, countUrl))
+                : cached("search", plan, url, () -> fetchRecordList(request, plan, url, countUrl));
+        }
+        if (pages != null) {
+            prefetchFollowingPages(pages, request, plan, nagiosParser, recordList);
         }
+        // Hand out a copy of the metadata so a cached result can't be changed by the caller.
+        return new RecordList(recordList.getFields(), recordList.getRecords(),
+            new LinkedHashMap<>(recordList.getMetadata()));
 
-        return new RecordList(request.getFields(), recordList, metadata);
+    }
+
+    /**
+     * Runs {@link #count(BridgeRequest)} on the adapter's request pool.  The future completes
+     * exceptionally with the BridgeError the call would have thrown.
+     */
+    public CompletableFuture<Count> countAsync(BridgeRequest request) {
+        return submit(() -> count(request));
+    }
+
+    /** Runs {@link #retrieve(BridgeRequest)} on the adapter's request pool. */
+    public CompletableFuture<Record> retrieveAsync(BridgeRequest request) {
+        return submit(() -> retrieve(request));
+    }
+
+    /** Runs {@link #search(BridgeRequest)} on the adapter's request pool. */
+    public CompletableFuture<RecordList> searchAsync(BridgeRequest request) {
+        return submit(() -> search(request));
+    }
 
+    /**
+     * Runs every search concurrently (at most 'Async Request Threads' at a time) and returns the
+     * results in the order of the requests.  If any search fails the first failure is thrown.
+     */
+    public List<RecordList> searchBatch(List<BridgeRequest> requests) throws BridgeError {
+        List<CompletableFuture<RecordList>> futures = new ArrayList<>();
+        for (BridgeRequest request : requests) {
+            futures.add(searchAsync(request));
+        }
+        List<RecordList> results = new ArrayList<>();
+        try {
+            for (CompletableFuture<RecordList> future : futures) {
+                results.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            // Cancelling stops the searches that haven't finished; see submit.
+            futures.forEach((future) -> future.cancel(true));
+            if (e.getCause() instanceof BridgeError) {
+                throw (BridgeError)e.getCause();
+            }
+            throw new BridgeError("Unable to complete a batched Nagios XI search.", e.getCause());
+        } catch (InterruptedException e) {
+            futures.forEach((future) -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new BridgeError("Interrupted while waiting for batched Nagios XI searches.", e);
+        }
+        return results;
     }
 
 
     /*----------------------------------------------------------------------------------------------
      * PUBLIC HELPER METHODS
      *--------------------------------------------------------------------------------------------*/    
+    
+    /**
+     * Returns a snapshot of the shared connection pool (leased, available, pending and max
+     * connections) so the pool limits can be sized against real traffic.
+     */
+    public Map<String,Integer> getConnectionPoolStats() {
+        Map<String,Integer> stats = new LinkedHashMap<>();
+        PoolingHttpClientConnectionManager manager = this.connectionManager;
+        if (manager != null) {
+            PoolStats totals = manager.getTotalStats();
+            stats.put("leased", totals.getLeased());
+            stats.put("available", totals.getAvailable());
+            stats.put("pending", totals.getPending());
+            stats.put("max", totals.getMax());
+        }
+        return stats;
+    }
+
     public String buildUrl(String queryMethod, BridgeRequest request, NagiosQualificationParser nagiosParser) throws BridgeError {
+        return buildUrl(queryMethod, request, planCache.get(request), nagiosParser);
+    }
 
-        Map<String,String> metadata = BridgeUtils.normalizePaginationMetadata(request.getMetadata());
-        String pageSize = "1000";
-        String offset = "0";
+    /**
+     * Returns the hit, miss, eviction and size counters of the response cache.
+     */
+    public Map<String,Long> getResponseCacheStats() {
+        NagiosResponseCache cache = this.responseCache;
+        return cache == null ? new LinkedHashMap<>() : cache.getStats();
+    }
 
-        if (StringUtils.isNotBlank(metadata.get("pageSize")) && metadata.get("pageSize").equals("0") == false) {
-            pageSize = metadata.get("pageSize");
-        }
-        if (StringUtils.isNotBlank(metadata.get("offset"))) {
-            offset = metadata.get("offset");
+    /**
+     * Returns how many Nagios XI calls were made and how many requests were coalesced onto them.
+     */
+    public Map<String,Long> getCoalescingStats() {
+        NagiosSingleFlight flights = this.singleFlight;
+        return flights == null ? new LinkedHashMap<>() : flights.getStats();
+    }
+
+    /**
+     * Returns the size, covered window and sync counters of each synchronized history structure.
+     */
+    public Map<String,Long> getHistoryStats() {
+        Map<String,Long> stats = new LinkedHashMap<>();
+        historyStores.values().forEach((store) -> stats.putAll(store.getStats()));
+        return stats;
+    }
+
+    /**
+     * Returns the hedged requests sent and won, connection retries, total timeouts and the circuit
+     * breaker's state (0 closed, 1 open, 2 half open) and transition counters.
+     */
+    public Map<String,Long> getTailLatencyStats() {
+        Map<String,Long> stats = new TreeMap<>();
+        tailLatencyStats.forEach((key, value) -> stats.put(key, value.get()));
+        NagiosCircuitBreaker breaker = this.circuitBreaker;
+        if (breaker != null) {
+            breaker.getStats().forEach((key, value) -> stats.put("circuit." + key, value));
         }
+        return stats;
+    }
+
+    /**
+     * Returns the adaptive concurrency limit, calls in flight, queue depth and the admitted, queued,
+     * rejected and timed out call counters.
+     */
+    public Map<String,Long> getConcurrencyStats() {
+        NagiosConcurrencyLimiter limiter = this.concurrencyLimiter;
+        return limiter == null ? new LinkedHashMap<>() : limiter.getStats();
+    }
 
-        String query = nagiosParser.parse(request.getQuery(), request.getParameters());
+    /**
+     * Returns per operation and structure latency percentiles for each phase of a call (connect,
+     * server, transfer, parse, map), along with response bytes, record counts, errors by HTTP
+     * status and in-flight requests.  See {@link NagiosMetrics#getSnapshot()}.
+     */
+    public Map<String,Long> getMetrics() {
+        return metrics.getSnapshot();
+    }
 
-        // Build up the url that you will use to retrieve the source data. Use the query variable
-        // instead of request.getQuery() to get a query without parameter placeholders.
-        StringBuilder url = new StringBuilder();
-        url.append(this.apiEndpoint)
-            .append("/api/v1/")
-            .append(StringUtils.chomp(request.getStructure(), "/"))
-            .append(String.format("?apikey=%s", apiKey));
-        
-        if (StringUtils.isNotBlank(query)) {
-            url.append("&")
-                .append(query);
-        }
-
-        //only set pagination if we're not counting.
-        if (queryMethod.equals("count") == false) {
-            addParameter(url, "records", pageSize + ":" + offset);
-            //only set sorting if we're not counting *and* the request specified a sort order.
-            if (request.getMetadata("order") != null) {
-                List<String> orderList = new ArrayList<>();
-                //loop over every defined sort order and add them to the Nagios URL
-                for (Map.Entry<String,String> entry : BridgeUtils.parseOrder(request.getMetadata("order")).entrySet()) {
-                    String key = entry.getKey();
-                    if (entry.getValue().equals("DESC")) {
-                        orderList.add(String.format("%s:d", key));
-                    }
-                    else {
-                        orderList.add(String.format("%s:a", key));
-                    }
-                }
-                String order = StringUtils.join(orderList,",");
-                addParameter(url, "orderby", order);
-            }
+    /**
+     * Returns the number of responses and the bytes transferred (compressed, as sent by Nagios
+     * XI) and decoded per structure, such as <code>objects/servicestatus.transferredBytes</code>.
+     */
+    public Map<String,Long> getTransferStats() {
+        Map<String,Long> stats = new TreeMap<>();
+        transferStats.forEach((key, value) -> stats.put(key, value.get()));
+        return stats;
+    }
 
+    /**
+     * Returns the failed or timed out calls of each Nagios XI instance and the number of partial
+     * results, when several instances are configured.
+     */
+    public Map<String,Long> getFederationStats() {
+        NagiosFederation instances = this.federation;
+        return instances == null ? new LinkedHashMap<>() : instances.getStats();
+    }
+
+    /**
+     * Returns the outcome of the authentication check (-1 pending, 0 failed, 1 succeeded) and the
+     * read, write and discard counters of the warm cache.
+     */
+    public Map<String,Long> getWarmStartStats() {
+        Map<String,Long> stats = new LinkedHashMap<>();
+        stats.put("authentication", authenticationState.get());
+        NagiosSnapshotStore store = this.snapshotStore;
+        if (store != null) {
+            stats.putAll(store.getStats());
         }
+        return stats;
+    }
+
+    /**
+     * Returns the size, age, refresh and failure counters of each mirrored structure.
+     */
+    public Map<String,Long> getMirrorStats() {
+        NagiosMirror currentMirror = this.mirror;
+        return currentMirror == null ? new LinkedHashMap<>() : currentMirror.getStats();
+    }
+
+    /**
+     * Returns the size (group and member rows), age, rebuild and failure counters of each
+     * membership index structure.
+     */
+    public Map<String,Long> getMembershipIndexStats() {
+        NagiosMembershipIndex index = this.membershipIndex;
+        return index == null ? new LinkedHashMap<>() : index.getStats();
+    }
+
+    /**
+     * Returns the prefetches scheduled and completed, how many searches found their page prefetched
+     * (hits) or not (misses), and the prefetches skipped under pressure (throttled), dropped with
+     * a full queue or failed.
+     */
+    public Map<String,Long> getPrefetchStats() {
+        NagiosPrefetcher pages = this.prefetcher;
+        return pages == null ? new LinkedHashMap<>() : pages.getStats();
+    }
+
+    /**
+     * Returns how often memoized results were reused for identical bodies (digestHits) and 304
+     * responses (notModified), the parse and map time that saved (savedMicros), the time spent
+     * digesting bodies (digestMicros) and the misses, oversized bodies and memo size.
+     */
+    public Map<String,Long> getResponseMemoStats() {
+        NagiosResponseMemo memo = this.responseMemo;
+        return memo == null ? new LinkedHashMap<>() : memo.getStats();
+    }
+
+    /**
+     * Returns the joined searches run, the lookup searches of joined structures they needed, the
+     * distinct join values looked up and how many of those matched nothing.
+     */
+    public Map<String,Long> getJoinStats() {
+        NagiosJoiner joins = this.joiner;
+        return joins == null ? new LinkedHashMap<>() : joins.getStats();
+    }
+
+    /**
+     * Returns the batched searches sent for concurrent retrieves, the retrieves they answered, and
+     * the batches sent as a normal retrieve because nothing joined them or their result was cut short.
+     */
+    public Map<String,Long> getRetrieveBatchStats() {
+        NagiosRetrieveBatcher batches = this.retrieveBatcher;
+        return batches == null ? new LinkedHashMap<>() : batches.getStats();
+    }
+
+    /**
+     * Returns the hit, miss, eviction and size counters of the object cache.
+     */
+    public Map<String,Long> getObjectCacheStats() {
+        NagiosObjectCache objects = this.objectCache;
+        return objects == null ? new LinkedHashMap<>() : objects.getStats();
+    }
 
-        LOGGER.debug("Nagios URL: {}", url.toString());
-        return url.toString();
+    /**
+     * Drops the cached objects of a structure (or of every structure when it is null), for example
+     * after changing them in Nagios XI, so the next retrieve asks Nagios XI again.
+     */
+    public void invalidateObjectCache(String structure) {
+        NagiosObjectCache objects = this.objectCache;
+        if (objects != null) {
+            objects.invalidate(structure);
+        }
+    }
 
+    /**
+     * Returns the hit, miss and eviction counters of the request plan cache.
+     */
+    public Map<String,Long> getRequestPlanCacheStats() {
+        return planCache.getStats();
     }
     
     /*----------------------------------------------------------------------------------------------
      * PRIVATE HELPER METHODS
      *--------------------------------------------------------------------------------------------*/
-    private void addParameter(StringBuilder url, String parameterName, String parameterValue) {
-        if (url.toString().contains("?") == false) {
-            url.append("?");
-        } else {
-            url.append("&");
+    private String buildUrl(String queryMethod, BridgeRequest request, NagiosRequestPlan plan,
+        NagiosQualificationParser nagiosParser) throws BridgeError
+    {
+        String[] pagination = getPagination(request);
+        String pageSize = pagination[0];
+        String offset = pagination[1];
+        if (queryMethod.equals("retrieve")) {
+            // Two records are enough to tell a single match from an ambiguous qualification.
+            queryMethod = "search";
+            pageSize = "2";
+            offset = "0";
         }
-        url.append(URLEncoder.encode(parameterName))
-            .append("=")
-            .append(URLEncoder.encode(parameterValue));
-    }
-    
-    private String nagiosQuery(String queryMethod, BridgeRequest request, NagiosQualificationParser nagiosParser) throws BridgeError{
 
-        String result = null;
-        String url = buildUrl(queryMethod, request, nagiosParser);
-        
-        // Initialize the HTTP Client, Response, and Get objects.
-        HttpClient client = HttpClients.createDefault();
-        HttpResponse response;
-        HttpGet get = new HttpGet();
-        URI uri;
-        try {
-            uri = new URI(url);
-        } catch (URISyntaxException e) {
-            throw new BridgeError(e);
+        // Only the parameter values and pagination window vary between requests with the same plan.
+        String query = plan.resolveQuery(request.getParameters(), nagiosParser);
+        String url = plan.buildUrl(this.apiEndpoint, this.apiKey, queryMethod, query, pageSize, offset);
+        if (queryMethod.equals("count")) {
+            // Ask Nagios XI for as little as possible beyond the record count.
+            if (COUNT_MODE_TOTALS.equals(countMode)) {
+                url += "&totals=1";
+            } else if (COUNT_MODE_WINDOW.equals(countMode)) {
+                url += COUNT_WINDOW;
+            }
         }
-        get.setURI(uri);
 
-        // Make the call to the REST source to retrieve data and convert the response from an
-        // HttpEntity object into a Java string so more response parsing can be done.
-        try {
-            response = client.execute(get);
-            Integer responseStatus = response.getStatusLine().getStatusCode();
+        LOGGER.debug("Nagios URL: {}", url);
+        return url;
+    }
 
-            HttpEntity entity = response.getEntity();
-            if (responseStatus >= 300 || responseStatus < 200) {
-                String errorMessage = EntityUtils.toString(entity);
-                throw new BridgeError(
-                    String.format(
-                        "The Nagios server returned a HTTP status code of %d, but 200 was expected. Response body: %s",
-                        responseStatus,
-                        errorMessage
-                    )
-                );
+    private Count fetchCount(NagiosRequestPlan plan, String url) throws BridgeError {
+        return nagiosQuery(url, memoKey(plan, url), (content) -> {
+            // Stop reading as soon as the record count has been seen.
+            NagiosResponseReader.Summary summary = plan.getReader().readCount(content);
+            String count = summary.getRecordCount() == null ? "0" : summary.getRecordCount();
+
+            // Create and return a Count object.
+            return new Count(Long.valueOf(count));
+        });
+    }
+
+    private Record fetchRecord(BridgeRequest request, NagiosRequestPlan plan, String url) throws BridgeError {
+        return nagiosQuery(url, memoKey(plan, url), (content) -> {
+            List<Map<String,Object>> matches = new ArrayList<>(1);
+            plan.getReader().read(content, NagiosMetrics.timed((element) -> {
+                if (matches.isEmpty() == false) {
+                    throw new BridgeError("Multiple results matched an expected single match query");
+                }
+                matches.add(plan.toRecordValues(element));
+                cacheObject(plan, element);
+                return true;
+            }));
+
+            if (matches.isEmpty()) {
+                LOGGER.trace("The Nagios XI API query ({}) on the structure ({}) matched zero results.", request.getQuery(), request.getStructure());
+                return new Record(null);
             }
+            return new Record(matches.get(0));
+        });
+    }
 
-            result = EntityUtils.toString(entity);
-            LOGGER.debug(String.format("Request response code: %s", response.getStatusLine().getStatusCode()));
-        } catch (IOException e) {
-            throw new BridgeError("Unable to make a connection to the Nagios server", e);
+    private RecordList fetchRecordList(BridgeRequest request, NagiosRequestPlan plan, String url, String countUrl)
+        throws BridgeError
+    {
+        Map<String,String> metadata = new LinkedHashMap<>();
+        
+        Page page = fetchPage(plan, url);
+        NagiosResponseReader.Summary summary = page.summary;
+        List<Record> recordList = page.records;
+
+        if (summary.isRootFound()) {
+            String count = summary.getRecordCount() == null
+                ? String.valueOf(summary.getSize())
+                : summary.getRecordCount();
+            metadata.put("count", count);
+            metadata.put("size", String.valueOf(summary.getSize()));
+            if (summary.getRecordCount() != null && recentCounts != null && recentCountTtlMillis > 0
+                && isTotal(request, summary))
+            {
+                recentCounts.put(countUrl, new Count(Long.valueOf(count)), recentCountTtlMillis);
+            }
+        } else {
+            metadata.put("size", "0");
+            metadata.put("count", "0");
+            LOGGER.trace("The Nagios XI API query ({}) on the structure ({}) matched zero results.", request.getQuery(), request.getStructure());
         }
-        LOGGER.debug(String.format("Nagios response - Raw Output: %s", result));
 
-        return result;
+        return new RecordList(plan.getFields(), recordList, metadata);
     }
 
-    private void testAuthenticationValues(String restEndpoint, String apiKey) throws BridgeError {
-        LOGGER.debug("Testing the Nagios XI authentication credentials");
-        HttpGet get = new HttpGet();
-        URI uri;
+    /**
+     * Whether the record count of a search page is the total number of matches.  Depending on the
+     * Nagios XI version the recordcount is either the total or just the number of records in the
+     * response, so it is only known to be the total when it is larger than the page, or when a
+     * first page that wasn't full holds every match.
+     */
+    private static boolean isTotal(BridgeRequest request, NagiosResponseReader.Summary summary) throws BridgeError {
+        String[] pagination = getPagination(request);
         try {
-            uri = new URI(
-                String.format(
-                    "%s/api/v1/system/status?apikey=%s",
-                    StringUtils.chomp(restEndpoint, "/"), 
-                    apiKey
-                )
-            );
-        } catch (URISyntaxException e) {
-            throw new BridgeError(e);
+            return Long.parseLong(summary.getRecordCount()) > summary.getSize()
+                || (Integer.parseInt(pagination[1]) == 0 && summary.getSize() < Integer.parseInt(pagination[0]));
+        } catch (NumberFormatException e) {
+            return false;
         }
-        get.setURI(uri);
+    }
 
-        HttpClient client = HttpClients.createDefault();
-        HttpResponse response;
-        String apiErrorMessage = null;
-        try {
-            response = client.execute(get);
-            HttpEntity entity = response.getEntity();
-            Integer responseCode = response.getStatusLine().getStatusCode();
-            if (responseCode == 401) {
-                throw new BridgeError("Unauthorized: The supplied API key is not valid.");
+    /**
+     * Fetches a large search window as concurrent chunks of 'Parallel Page Chunk Size' records and
+     * merges them back in order.  Only the chunks that can hold matches are fetched: when a search
+     * with the same qualification recently gave the total, the other chunks start first and the
+     * caller's thread fetches the first chunk itself; otherwise the first chunk is fetched before
+     * the others to learn the total, and chunks that haven't started yet are skipped once an
+     * earlier chunk comes back short.
+     */
+    private RecordList fetchRecordListInChunks(BridgeRequest request, NagiosRequestPlan plan,
+        NagiosQualificationParser nagiosParser, String countUrl) throws BridgeError
+    {
+        String[] pagination = getPagination(request);
+        int pageSize = Integer.parseInt(pagination[0]);
+        int offset = Integer.parseInt(pagination[1]);
+        String query = plan.resolveQuery(request.getParameters(), nagiosParser);
+        String sortKey = pageSortKeys.get(plan.getStructure());
+        String orderBy = plan.getOrderBy() == null
+            ? sortKey + ":a"
+            : plan.getOrderBy() + "," + sortKey + ":a";
+
+        int chunks = (pageSize + pageChunkSize - 1) / pageChunkSize;
+        List<String> chunkUrls = new ArrayList<>();
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            int chunkOffset = offset + chunk * pageChunkSize;
+            int chunkSize = Math.min(pageChunkSize, pageSize - chunk * pageChunkSize);
+            chunkUrls.add(plan.buildUrl(apiEndpoint, apiKey, "search", query,
+                String.valueOf(chunkSize), String.valueOf(chunkOffset), orderBy));
+        }
+
+        List<CompletableFuture<Page>> futures = new ArrayList<>();
+        Count recentCount = recentCounts == null ? null : (Count)recentCounts.peek(countUrl);
+        if (recentCount != null && recentCount.getValue() != null) {
+            chunks = chunksHolding(recentCount.getValue(), offset, chunks);
+            futures.add(null);
+        } else {
+            // Depending on the Nagios XI version the recordcount is either the total number of
+            // matches or just the number of records in the response.
+            Page page = fetchPage(plan, chunkUrls.get(0));
+            NagiosResponseReader.Summary summary = page.summary;
+            if (summary.getSize() < pageChunkSize) {
+                chunks = 1;
+            } else if (summary.getRecordCount() != null && Long.parseLong(summary.getRecordCount()) > summary.getSize()) {
+                chunks = chunksHolding(Long.parseLong(summary.getRecordCount()), offset, chunks);
             }
-            if (responseCode < 200 || responseCode >= 300) {
-                throw new BridgeError(
-                    String.format(
-                        "Unsuccessful HTTP response - the server returned a %s status code, expected 200.",
-                        responseCode
-                    )
-                );
-            } else {
-                String apiResponse = EntityUtils.toString(entity);
+            futures.add(CompletableFuture.completedFuture(page));
+        }
+
+        // The chunks run on other threads are still part of the caller's operation.
+        String operation = NagiosMetrics.currentOperation();
+        AtomicInteger firstShortChunk = new AtomicInteger(Integer.MAX_VALUE);
+        for (int chunk = 1; chunk < chunks; chunk++) {
+            int index = chunk;
+            String chunkUrl = chunkUrls.get(chunk);
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                if (firstShortChunk.get() < index) {
+                    return null;
+                }
                 try {
-                    apiErrorMessage = JsonPath
-                        .parse(apiResponse)
-                        .read("$.error", String.class);
-                } catch (PathNotFoundException err) {}
-                if (apiErrorMessage != null) {
-                    throw new BridgeError(
-                        String.format(
-                            "The Nagios XI server responding with the following API error message: %s", 
-                            apiErrorMessage
-                        )
-                    );
+                    Page page = NagiosMetrics.runAs(operation, () -> fetchPage(plan, chunkUrl));
+                    if (page.summary.getSize() < pageChunkSize) {
+                        firstShortChunk.accumulateAndGet(index, Math::min);
+                    }
+                    return page;
+                } catch (BridgeError e) {
+                    throw new CompletionException(e);
+                }
+            }, pageExecutor));
+        }
+        if (futures.get(0) == null) {
+            futures.set(0, CompletableFuture.completedFuture(fetchPage(plan, chunkUrls.get(0))));
+        }
+
+        List<Record> recordList = new ArrayList<>();
+        NagiosResponseReader.Summary first = null;
+        boolean rootFound = false;
+        boolean countIsTotal = false;
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            Page page;
+            try {
+                page = futures.get(chunk).join();
+            } catch (CompletionException e) {
+                // Chunks already running can't be interrupted and are left to finish.
+                if (e.getCause() instanceof BridgeError) {
+                    throw (BridgeError)e.getCause();
                 }
+                throw new BridgeError("Unable to fetch part of a split Nagios XI search.", e.getCause());
+            }
+            if (page == null) {
+                break;
+            }
+            NagiosResponseReader.Summary summary = page.summary;
+            if (first == null) {
+                first = summary;
+            }
+            rootFound |= summary.isRootFound();
+            countIsTotal |= summary.getRecordCount() != null
+                && Long.parseLong(summary.getRecordCount()) > summary.getSize();
+            recordList.addAll(page.records);
+            if (summary.getSize() < pageChunkSize) {
+                // A short chunk is the end of the matches.
+                break;
             }
         }
-        catch (IOException e) {
-            throw new BridgeError("Unable to make a connection to the Nagios system status API.", e);
+
+        Map<String,String> metadata = new LinkedHashMap<>();
+        if (rootFound) {
+            String count = countIsTotal ? first.getRecordCount() : String.valueOf(recordList.size());
+            metadata.put("count", count);
+            metadata.put("size", String.valueOf(recordList.size()));
+            if (countIsTotal && recentCounts != null && recentCountTtlMillis > 0) {
+                recentCounts.put(countUrl, new Count(Long.valueOf(count)), recentCountTtlMillis);
+            }
+        } else {
+            metadata.put("size", "0");
+            metadata.put("count", "0");
+        }
+        return new RecordList(plan.getFields(), recordList, metadata);
+    }
+
+    /** How many of the window's chunks, starting at the offset, can hold any of count matches. */
+    private int chunksHolding(long count, int offset, int chunks) {
+        long remaining = Math.max(0, count - offset);
+        return (int)Math.max(1, Math.min(chunks, (remaining + pageChunkSize - 1) / pageChunkSize));
+    }
+
+    /** A page of records along with what was found while reading it. */
+    private static class Page {
+        private final NagiosResponseReader.Summary summary;
+        private final List<Record> records;
+
+        private Page(NagiosResponseReader.Summary summary, List<Record> records) {
+            this.summary = summary;
+            this.records = records;
+        }
+    }
+
+    /** Fetches one page of results. */
+    private Page fetchPage(NagiosRequestPlan plan, String url) throws BridgeError {
+        // Each element is mapped to a row as soon as it has been decoded, so only the current
+        // element is ever held in its raw form.
+        // The page is built inside the consumer so a memoized page can be reused as a whole.
+        if (compactRecordLists) {
+            return nagiosQuery(url, memoKey(plan, url), (content) -> {
+                NagiosRecordTable table = new NagiosRecordTable(plan.getFields());
+                NagiosResponseReader.Summary summary = plan.getReader().read(content, NagiosMetrics.timed((element) -> {
+                    table.add(plan, element);
+                    cacheObject(plan, element);
+                    return true;
+                }));
+                return new Page(summary, table.getRecords());
+            });
+        }
+        return nagiosQuery(url, memoKey(plan, url), (content) -> {
+            List<Record> records = new ArrayList<>();
+            NagiosResponseReader.Summary summary = plan.getReader().read(content, NagiosMetrics.timed((element) -> {
+                records.add(new Record(plan.toRecordValues(element)));
+                cacheObject(plan, element);
+                return true;
+            }));
+            return new Page(summary, Collections.unmodifiableList(records));
+        });
+    }
+
+    /** The response memo key of a request, or null when its structure isn't memoized. */
+    private String memoKey(NagiosRequestPlan plan, String url) {
+        return responseMemo == null || memoStructures.contains(plan.getStructure()) == false
+            ? null
+            : url + " " + StringUtils.join(plan.getFields(), ",");
+    }
+
+    /** Keeps a fetched element for retrieves by its natural keys, when its structure is cached. */
+    private void cacheObject(NagiosRequestPlan plan, Object element) {
+        NagiosObjectCache objects = this.objectCache;
+        if (objects != null) {
+            objects.put(plan.getStructure(), element);
+        }
+    }
+
+    /** Whether the search asks for a window large enough to split across concurrent requests. */
+    private boolean isSplitSearch(BridgeRequest request, NagiosRequestPlan plan) throws BridgeError {
+        if (pageExecutor == null || pageSortKeys.containsKey(plan.getStructure()) == false) {
+            return false;
+        }
+        String[] pagination = getPagination(request);
+        try {
+            return Integer.parseInt(pagination[0]) > pageChunkSize && Integer.parseInt(pagination[1]) >= 0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /** Applies the request's pagination to locally selected elements. */
+    private RecordList toPagedRecordList(BridgeRequest request, NagiosRequestPlan plan, List<Object> elements)
+        throws BridgeError
+    {
+        String[] pagination = getPagination(request);
+        int pageSize = Integer.parseInt(pagination[0]);
+        int offset = Math.min(Integer.parseInt(pagination[1]), elements.size());
+        List<Object> page = elements.subList(offset, Math.min(elements.size(), offset + pageSize));
+        List<Record> records;
+        if (compactRecordLists) {
+            NagiosRecordTable table = new NagiosRecordTable(plan.getFields());
+            page.forEach((element) -> table.add(plan, element));
+            records = table.getRecords();
+        } else {
+            records = new ArrayList<>();
+            for (Object element : page) {
+                records.add(new Record(plan.toRecordValues(element)));
+            }
+        }
+        Map<String,String> metadata = new LinkedHashMap<>();
+        metadata.put("count", String.valueOf(elements.size()));
+        metadata.put("size", String.valueOf(records.size()));
+        return new RecordList(plan.getFields(), records, metadata);
+    }
+
+    /**
+     * Serves the result from the response cache when the structure has a time to live configured,
+     * otherwise loads it directly.  Identical concurrent loads share a single Nagios XI call.
+     */
+    private <T> T cached(String queryMethod, NagiosRequestPlan plan, String url,
+        NagiosResponseCache.Loader<T> loader) throws BridgeError
+    {
+        String key = cacheKey(queryMethod, plan, url);
+        NagiosSingleFlight flights = this.singleFlight;
+        NagiosResponseCache.Loader<T> coalescedLoader = flights == null
+            ? loader
+            : () -> flights.execute(key, loader);
+
+        Long ttl = responseCacheTtls.get(plan.getStructure());
+        long ttlMillis = TimeUnit.SECONDS.toMillis(ttl == null ? responseCacheDefaultTtl : ttl);
+        if (ttlMillis <= 0 || responseCache == null) {
+            return coalescedLoader.load();
+        }
+        try {
+            return responseCache.get(key, ttlMillis, coalescedLoader);
+        } catch (BridgeError e) {
+            // While Nagios XI is unavailable, answer with the last result it gave for the request.
+            NagiosCircuitBreaker breaker = this.circuitBreaker;
+            NagiosResponseCache cache = this.responseCache;
+            if (breaker != null && breaker.getState() != NagiosCircuitBreaker.State.CLOSED && cache != null) {
+                @SuppressWarnings("unchecked")
+                T lastKnown = (T)cache.peekLastKnown(key);
+                if (lastKnown != null) {
+                    cache.countLastKnownHit();
+                    LOGGER.debug("Answering from the last cached result while Nagios XI is unavailable: {}", key);
+                    return lastKnown;
+                }
+            }
+            throw e;
+        }
+    }
+
+    private static String cacheKey(String queryMethod, NagiosRequestPlan plan, String url) {
+        return queryMethod + " " + url + " " + StringUtils.join(plan.getFields(), ",");
+    }
+
+    /**
+     * Schedules read-ahead of the pages that follow a served search page, up to the prefetch
+     * depth, stopping at the last page.
+     */
+    private void prefetchFollowingPages(NagiosPrefetcher pages, BridgeRequest request, NagiosRequestPlan plan,
+        NagiosQualificationParser nagiosParser, RecordList page) throws BridgeError
+    {
+        String[] pagination = getPagination(request);
+        int pageSize;
+        int offset;
+        try {
+            pageSize = Integer.parseInt(pagination[0]);
+            offset = Integer.parseInt(pagination[1]);
+        } catch (NumberFormatException e) {
+            return;
+        }
+        if (page.getRecords().size() < pageSize) {
+            return;
+        }
+        // Depending on the Nagios XI version the count is either the total or just this page's size.
+        String count = page.getMetadata().get("count");
+        long total = StringUtils.isNumeric(count) && count.isEmpty() == false
+            && Long.parseLong(count) > page.getRecords().size()
+            ? Long.parseLong(count)
+            : Long.MAX_VALUE;
+        for (int depth = 1; depth <= prefetchDepth; depth++) {
+            long nextOffset = offset + (long)depth * pageSize;
+            if (nextOffset >= total || nextOffset > Integer.MAX_VALUE) {
+                break;
+            }
+            BridgeRequest next = new BridgeRequest();
+            next.setStructure(request.getStructure());
+            next.setQuery(request.getQuery());
+            next.setFields(request.getFields());
+            next.setParameters(request.getParameters());
+            Map<String,String> metadata = request.getMetadata() == null
+                ? new HashMap<>()
+                : new HashMap<>(request.getMetadata());
+            metadata.put("pageSize", String.valueOf(pageSize));
+            metadata.put("offset", String.valueOf(nextOffset));
+            next.setMetadata(metadata);
+            String nextUrl = buildUrl("search", next, plan, nagiosParser);
+            String nextCountUrl = buildUrl("count", next, plan, nagiosParser);
+            // Going through the cache means a request for the page while it loads joins the prefetch.
+            pages.prefetch(cacheKey("search", plan, nextUrl), () -> isSplitSearch(next, plan)
+                ? cached("search", plan, nextUrl,
+                    () -> fetchRecordListInChunks(next, plan, new NagiosQualificationParser(), nextCountUrl))
+                : cached("search", plan, nextUrl, () -> fetchRecordList(next, plan, nextUrl, nextCountUrl)));
+        }
+    }
+
+    /** Whether Nagios XI is too busy, or unavailable, to spend calls on read-ahead. */
+    private boolean isUnderPressure() {
+        NagiosCircuitBreaker breaker = this.circuitBreaker;
+        NagiosConcurrencyLimiter limiter = this.concurrencyLimiter;
+        return (breaker != null && breaker.getState() != NagiosCircuitBreaker.State.CLOSED)
+            || (limiter != null && limiter.hasSpareCapacity() == false);
+    }
+
+    /**
+     * Runs the call on the request pool.  Cancelling the returned future cancels the pool task, so
+     * a call that hasn't started never runs and a running one is interrupted.
+     */
+    private <T> CompletableFuture<T> submit(NagiosResponseCache.Loader<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        ExecutorService executor = this.requestExecutor;
+        if (executor == null) {
+            future.completeExceptionally(new BridgeError("The Nagios XI adapter has not been initialized."));
+            return future;
+        }
+        try {
+            Future<?> task = executor.submit(() -> {
+                try {
+                    future.complete(call.load());
+                } catch (Throwable e) {
+                    // Anything left uncaught would leave the future, and whoever waits on it, hanging.
+                    future.completeExceptionally(e);
+                }
+            });
+            future.whenComplete((result, error) -> {
+                if (future.isCancelled()) {
+                    task.cancel(true);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(new BridgeError("The Nagios XI adapter has been shut down.", e));
+        }
+        return future;
+    }
+
+    /** Returns the requested page size and offset, defaulting to the first 1000 records. */
+    private static String[] getPagination(BridgeRequest request) throws BridgeError {
+        Map<String,String> metadata = BridgeUtils.normalizePaginationMetadata(request.getMetadata());
+        String pageSize = "1000";
+        String offset = "0";
+
+        if (StringUtils.isNotBlank(metadata.get("pageSize")) && metadata.get("pageSize").equals("0") == false) {
+            pageSize = metadata.get("pageSize");
+        }
+        if (StringUtils.isNotBlank(metadata.get("offset"))) {
+            offset = metadata.get("offset");
+        }
+        return new String[] {pageSize, offset};
+    }
+
+    /**
+     * Evaluates the request against the mirrored snapshot or synchronized history of its structure.
+     * Returns null when the structure isn't held locally, hasn't loaded yet, or the qualification
+     * can't be evaluated locally.
+     */
+    private List<Object> selectLocally(BridgeRequest request, NagiosRequestPlan plan,
+        NagiosQualificationParser nagiosParser) throws BridgeError
+    {
+        NagiosHistoryStore history = historyStores.get(plan.getStructure());
+        if (history != null) {
+            return history.select(plan.resolveQuery(request.getParameters(), nagiosParser),
+                NagiosQueryFilter.toComparator(plan.getOrderBy()));
+        }
+        if (NagiosMembershipIndex.STRUCTURES.containsKey(plan.getStructure())) {
+            return selectMembership(request, plan, nagiosParser);
+        }
+        NagiosMirror currentMirror = this.mirror;
+        if (currentMirror == null || currentMirror.isMirrored(plan.getStructure()) == false) {
+            return null;
+        }
+        NagiosMirror.Snapshot snapshot = currentMirror.getSnapshot(plan.getStructure());
+        NagiosQueryFilter filter = NagiosQueryFilter.parse(plan.resolveQuery(request.getParameters(), nagiosParser));
+        if (snapshot == null || filter == null) {
+            return null;
+        }
+        return snapshot.select(filter, NagiosQueryFilter.toComparator(plan.getOrderBy()));
+    }
+
+    /** Answers a request on a virtual group membership structure from the membership index. */
+    private List<Object> selectMembership(BridgeRequest request, NagiosRequestPlan plan,
+        NagiosQualificationParser nagiosParser) throws BridgeError
+    {
+        NagiosMembershipIndex index = this.membershipIndex;
+        if (index == null || index.isIndexed(plan.getStructure()) == false) {
+            throw new BridgeError(String.format("The %s structure must be listed in the '%s' property.",
+                plan.getStructure(), Properties.MEMBERSHIP_STRUCTURES));
+        }
+        String query = plan.resolveQuery(request.getParameters(), nagiosParser);
+        NagiosQueryFilter filter = NagiosQueryFilter.parse(query);
+        if (filter == null) {
+            throw new BridgeError(String.format(
+                "The query (%s) on the %s structure can only use field conditions.", query, plan.getStructure()));
+        }
+        return index.select(plan.getStructure(), filter, NagiosQueryFilter.toComparator(plan.getOrderBy()));
+    }
+
+    /** Checks the API key, recording the outcome for {@link #getWarmStartStats()}. */
+    private void authenticate(String restEndpoint, String apiKey) throws BridgeError {
+        authenticationState.set(-1);
+        try {
+            testAuthenticationValues(restEndpoint, apiKey);
+            authenticationState.set(1);
+        } catch (BridgeError | RuntimeException e) {
+            authenticationState.set(0);
+            throw e;
+        }
+    }
+
+    /** Loads every element of a structure for the mirror. */
+    private List<Object> loadSnapshot(String structure) throws BridgeError {
+        NagiosResponseReader reader = new NagiosResponseReader(NagiosRequestPlan.getJsonRootPath(structure));
+        String url = String.format("%s/api/v1/%s?apikey=%s", apiEndpoint, StringUtils.chomp(structure, "/"), apiKey);
+        List<Object> elements = new ArrayList<>();
+        nagiosQuery(url, (content) -> reader.read(content, (element) -> elements.add(element)));
+        return elements;
+    }
+
+    /** Loads the entries of a history structure between two epoch second timestamps. */
+    private List<Object> loadHistory(String structure, long startTime, long endTime) throws BridgeError {
+        NagiosResponseReader reader = new NagiosResponseReader(NagiosRequestPlan.getJsonRootPath(structure));
+        String url = String.format("%s/api/v1/%s?apikey=%s&starttime=%d&endtime=%d",
+            apiEndpoint, StringUtils.chomp(structure, "/"), apiKey, startTime, endTime);
+        List<Object> elements = new ArrayList<>();
+        nagiosQuery(url, (content) -> reader.read(content, (element) -> elements.add(element)));
+        return elements;
+    }
+
+    private <T> T nagiosQuery(String url, ResponseConsumer<T> consumer) throws BridgeError {
+        return nagiosQuery(url, null, consumer);
+    }
+
+    /**
+     * Calls Nagios XI and hands the response body to the consumer.  With a memo key the result is
+     * memoized: the request is made conditional on the memoized response's validators, and a
+     * 304 response or an identical body reuses the memoized result instead of consuming the body.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T nagiosQuery(String url, String memoKey, ResponseConsumer<T> consumer) throws BridgeError {
+
+        T result;
+        
+        URI uri;
+        try {
+            uri = new URI(url);
+        } catch (URISyntaxException e) {
+            throw new BridgeError(e);
+        }
+        CloseableHttpClient client = getHttpClient();
+        String structure = structureOf(url);
+        NagiosConcurrencyLimiter limiter = this.concurrencyLimiter;
+        if (limiter != null) {
+            limiter.acquire(priorityOf(structure));
+        }
+        NagiosCircuitBreaker breaker = this.circuitBreaker;
+        if (breaker != null) {
+            try {
+                breaker.acquire();
+            } catch (BridgeError e) {
+                if (limiter != null) {
+                    limiter.cancel();
+                }
+                throw e;
+            }
+        }
+
+        // Make the call to the REST source and stream the (decompressed) response entity straight
+        // into the consumer. Closing the response hands the connection back to the pool (or
+        // discards it if the body was not fully read).
+        NagiosMetrics.Call call = metrics.startCall(structure);
+        NagiosResponseMemo memo = memoKey == null ? null : this.responseMemo;
+        NagiosResponseMemo.Entry memoized = memo == null ? null : memo.get(memoKey);
+        Exchange exchange = new Exchange(client, uri, call, conditionalHeaders(memoized));
+        ScheduledFuture<?> deadline = totalTimeoutMillis > 0
+            ? backgroundExecutor.schedule(exchange::expire, totalTimeoutMillis, TimeUnit.MILLISECONDS)
+            : null;
+        long transferredBytes = 0;
+        boolean healthy = false;
+        try (CloseableHttpResponse response = send(exchange, structure)) {
+            Integer responseStatus = response.getStatusLine().getStatusCode();
+
+            HttpEntity entity = response.getEntity();
+            if (responseStatus == 304 && memoized != null) {
+                call.bodyStarted();
+                EntityUtils.consume(entity);
+                memo.reused(memoized, true);
+                healthy = true;
+                return (T)memoized.getResult();
+            }
+            if (responseStatus >= 300 || responseStatus < 200) {
+                call.failed(responseStatus);
+                healthy = responseStatus < 500;
+                String errorMessage = entity == null ? "" : readFully(decode(entity, entity.getContent()));
+                throw new BridgeError(
+                    String.format(
+                        "The Nagios server returned a HTTP status code of %d, but 200 was expected. Response body: %s",
+                        responseStatus,
+                        errorMessage
+                    )
+                );
+            }
+            LOGGER.debug("Request response code: {}", responseStatus);
+
+            call.bodyStarted();
+            if (entity == null) {
+                result = consumer.consume(new ByteArrayInputStream(new byte[0]));
+            } else {
+                CountingInputStream transferred = new CountingInputStream(entity.getContent(), null);
+                CountingInputStream decoded = new CountingInputStream(decode(entity, transferred), call);
+                try {
+                    result = memo == null
+                        ? consumer.consume(decoded)
+                        : consumeMemoized(memo, memoKey, memoized, response, decoded, consumer);
+                    releaseContent(exchange.getWinner(), transferred);
+                } finally {
+                    transferredBytes = transferred.getCount();
+                    recordTransfer(url, transferred.getCount(), decoded.getCount());
+                }
+            }
+            healthy = true;
+        } catch (IOException e) {
+            exchange.abort();
+            call.failed(0);
+            if (exchange.isExpired()) {
+                increment("timeouts");
+                throw new BridgeError(String.format(
+                    "The Nagios server did not respond within the total timeout of %d ms", totalTimeoutMillis), e);
+            }
+            throw new BridgeError("Unable to make a connection to the Nagios server", e);
+        } finally {
+            if (deadline != null) {
+                deadline.cancel(false);
+            }
+            call.finish(transferredBytes);
+            if (breaker != null) {
+                if (healthy) {
+                    breaker.recordSuccess();
+                } else {
+                    breaker.recordFailure();
+                }
+            }
+            if (limiter != null) {
+                limiter.release(NagiosMetrics.currentOperation() + " " + structure, call.getServerNanos(),
+                    healthy == false);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Buffers and digests a response body.  A body identical to the one the memoized result was
+     * built from reuses that result; any other body is consumed and its result memoized.  Bodies
+     * over the memo's size limit are consumed as they stream in and not memoized.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T consumeMemoized(NagiosResponseMemo memo, String key, NagiosResponseMemo.Entry memoized,
+        HttpResponse response, InputStream content, ResponseConsumer<T> consumer) throws IOException, BridgeError
+    {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(8192);
+        byte[] chunk = new byte[8192];
+        int read;
+        while ((read = content.read(chunk)) != -1) {
+            buffer.write(chunk, 0, read);
+            if (buffer.size() > memo.getMaxBodyBytes()) {
+                memo.skipped();
+                return consumer.consume(new SequenceInputStream(new ByteArrayInputStream(buffer.toByteArray()), content));
+            }
+        }
+        byte[] body = buffer.toByteArray();
+        byte[] digest = memo.digest(body);
+        String etag = headerValue(response, HttpHeaders.ETAG);
+        String lastModified = headerValue(response, HttpHeaders.LAST_MODIFIED);
+        if (memoized != null && memoized.matches(digest)) {
+            memo.reused(memoized, false);
+            memo.revalidate(key, memoized, etag, lastModified);
+            return (T)memoized.getResult();
+        }
+        long start = System.nanoTime();
+        T result = consumer.consume(new ByteArrayInputStream(body));
+        memo.put(key, new NagiosResponseMemo.Entry(digest, etag, lastModified, result, System.nanoTime() - start));
+        return result;
+    }
+
+    /** The validators of a memoized response, sent to make the next request conditional. */
+    private static List<Header> conditionalHeaders(NagiosResponseMemo.Entry memoized) {
+        List<Header> headers = new ArrayList<>(2);
+        if (memoized != null && memoized.getEtag() != null) {
+            headers.add(new BasicHeader(HttpHeaders.IF_NONE_MATCH, memoized.getEtag()));
+        }
+        if (memoized != null && memoized.getLastModified() != null) {
+            headers.add(new BasicHeader(HttpHeaders.IF_MODIFIED_SINCE, memoized.getLastModified()));
+        }
+        return headers;
+    }
+
+    private static String headerValue(HttpResponse response, String name) {
+        Header header = response.getFirstHeader(name);
+        return header == null ? null : header.getValue();
+    }
+
+    /**
+     * Sends the request, hedged when enabled, and retries it with a jittered exponential backoff
+     * when the connection fails before a response arrives.
+     */
+    private CloseableHttpResponse send(Exchange exchange, String structure) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return exchange.send(structure);
+            } catch (IOException e) {
+                if (attempt >= connectionRetries || exchange.isExpired() || isRetriable(e) == false) {
+                    throw e;
+                }
+                long ceiling = Math.max(1, retryBackoffMillis << Math.min(attempt, 10));
+                long backoff = 1 + ThreadLocalRandom.current().nextLong(ceiling);
+                increment("retries");
+                LOGGER.debug("Retrying a Nagios XI request to {} in {} ms after: {}", structure, backoff, e.toString());
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting to retry a Nagios XI request.");
+                }
+            }
+        }
+    }
+
+    /** The queue priority of a call: its structure's, or else its operation's. */
+    private int priorityOf(String structure) {
+        Integer priority = requestPriorities.get(structure);
+        if (priority == null) {
+            priority = requestPriorities.get(NagiosMetrics.currentOperation());
+        }
+        return priority == null ? Integer.MAX_VALUE : priority;
+    }
+
+    /** Connection failures are worth retrying; read timeouts and aborted requests are not. */
+    private static boolean isRetriable(IOException e) {
+        return e instanceof ConnectException
+            || e instanceof ConnectTimeoutException
+            || e instanceof NoHttpResponseException
+            || e instanceof SocketException;
+    }
+
+    /** The delay before hedging a request: the structure's p95 response time, but at least the hedge delay. */
+    private long hedgeDelay(String structure) {
+        NagiosMetrics.Histogram times = responseTimes.get(structure);
+        if (times == null || times.count() < 20) {
+            return hedgeDelayMillis;
+        }
+        return Math.max(hedgeDelayMillis, TimeUnit.MICROSECONDS.toMillis(times.percentileMicros(0.95)));
+    }
+
+    /** Records how long a structure took to answer, starting over periodically so the p95 stays current. */
+    private void recordResponseTime(String structure, long nanos) {
+        NagiosMetrics.Histogram times = responseTimes.computeIfAbsent(structure, (key) -> new NagiosMetrics.Histogram());
+        if (times.count() >= 10000) {
+            responseTimes.remove(structure, times);
+        }
+        times.record(nanos);
+    }
+
+    private void increment(String stat) {
+        tailLatencyStats.computeIfAbsent(stat, (key) -> new AtomicLong()).incrementAndGet();
+    }
+
+    /**
+     * The requests sent for one Nagios XI call.  Each send races the request on the calling thread
+     * against a hedged copy sent after the hedge delay; the first response wins and the other
+     * request is aborted.  Expiring the exchange aborts every request, including one whose body
+     * is being read.
+     */
+    private class Exchange {
+        private final CloseableHttpClient client;
+        private final URI uri;
+        private final NagiosMetrics.Call call;
+        private final List<Header> conditions;
+        private final List<HttpGet> requests = new CopyOnWriteArrayList<>();
+        private volatile HttpGet winner;
+        private volatile boolean expired;
+
+        private Exchange(CloseableHttpClient client, URI uri, NagiosMetrics.Call call, List<Header> conditions) {
+            this.client = client;
+            this.uri = uri;
+            this.call = call;
+            this.conditions = conditions;
+        }
+
+        private CloseableHttpResponse send(String structure) throws IOException {
+            CompletableFuture<CloseableHttpResponse> response = new CompletableFuture<>();
+            AtomicInteger pending = new AtomicInteger(1);
+            ExecutorService hedges = hedgeExecutor;
+            NagiosCircuitBreaker breaker = circuitBreaker;
+            ScheduledFuture<?> hedge = null;
+            if (hedges != null && (breaker == null || breaker.getState() == NagiosCircuitBreaker.State.CLOSED)) {
+                hedge = backgroundExecutor.schedule(() -> hedges.execute(() -> {
+                    if (response.isDone() == false) {
+                        pending.incrementAndGet();
+                        increment("hedges");
+                        attempt(structure, response, pending, true);
+                    }
+                }), hedgeDelay(structure), TimeUnit.MILLISECONDS);
+            }
+            attempt(structure, response, pending, false);
+            if (hedge != null) {
+                hedge.cancel(false);
+            }
+            try {
+                return response.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                abort();
+                throw new InterruptedIOException("Interrupted while waiting for a Nagios XI response.");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException)e.getCause();
+                }
+                throw new IOException(e.getCause());
+            }
+        }
+
+        private void attempt(String structure, CompletableFuture<CloseableHttpResponse> response,
+            AtomicInteger pending, boolean hedged)
+        {
+            HttpGet get = new HttpGet(uri);
+            if (requestCompression) {
+                get.setHeader(HttpHeaders.ACCEPT_ENCODING, "gzip,deflate");
+            }
+            conditions.forEach(get::addHeader);
+            requests.add(get);
+            if (expired) {
+                get.abort();
+            }
+            HttpClientContext context = HttpClientContext.create();
+            context.setAttribute(CALL_ATTRIBUTE, call);
+            long start = System.nanoTime();
+            try {
+                CloseableHttpResponse attemptResponse = client.execute(get, context);
+                boolean won;
+                synchronized (this) {
+                    won = response.isDone() == false;
+                    if (won) {
+                        winner = get;
+                        response.complete(attemptResponse);
+                    }
+                }
+                if (won) {
+                    recordResponseTime(structure, System.nanoTime() - start);
+                    if (hedged) {
+                        increment("hedgeWins");
+                    }
+                    requests.stream().filter((other) -> other != get).forEach(HttpGet::abort);
+                } else {
+                    attemptResponse.close();
+                }
+            } catch (IOException | RuntimeException e) {
+                if (pending.decrementAndGet() == 0) {
+                    response.completeExceptionally(e instanceof IOException ? e : new IOException(e));
+                }
+            }
+        }
+
+        /** The request whose response won the race. */
+        private HttpGet getWinner() {
+            return winner;
+        }
+
+        private void expire() {
+            expired = true;
+            abort();
+        }
+
+        private boolean isExpired() {
+            return expired;
+        }
+
+        private void abort() {
+            requests.forEach(HttpGet::abort);
+        }
+    }
+
+    /** Wraps the raw entity content in a streaming decoder for its Content-Encoding, if any. */
+    private static InputStream decode(HttpEntity entity, InputStream content) throws IOException {
+        Header encoding = entity.getContentEncoding();
+        String name = encoding == null ? "" : encoding.getValue().trim().toLowerCase();
+        if (name.equals("gzip") || name.equals("x-gzip")) {
+            return new GZIPInputStream(content);
+        } else if (name.equals("deflate")) {
+            // Handles both zlib wrapped and raw deflate bodies.
+            return new DeflateInputStream(content);
+        }
+        return content;
+    }
+
+    private static String readFully(InputStream content) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = content.read(buffer)) >= 0) {
+            body.write(buffer, 0, read);
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String structureOf(String url) {
+        return StringUtils.substringBefore(StringUtils.substringAfter(url, "/api/v1/"), "?");
+    }
+
+    /** Adds the transferred and decoded byte counts of a response to its structure's totals. */
+    private void recordTransfer(String url, long transferredBytes, long decodedBytes) {
+        String structure = structureOf(url);
+        transferStats.computeIfAbsent(structure + ".responses", (key) -> new AtomicLong()).incrementAndGet();
+        transferStats.computeIfAbsent(structure + ".transferredBytes", (key) -> new AtomicLong())
+            .addAndGet(transferredBytes);
+        transferStats.computeIfAbsent(structure + ".decodedBytes", (key) -> new AtomicLong())
+            .addAndGet(decodedBytes);
+    }
+
+    /** Counts the bytes read through it, and the time spent reading when given a metrics call. */
+    private static class CountingInputStream extends FilterInputStream {
+        private final NagiosMetrics.Call call;
+        private long count;
+
+        private CountingInputStream(InputStream in, NagiosMetrics.Call call) {
+            super(in);
+            this.call = call;
+        }
+
+        private long getCount() {
+            return count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value >= 0) {
+                count++;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            long start = call == null ? 0 : System.nanoTime();
+            int read = super.read(buffer, offset, length);
+            if (call != null) {
+                call.addReadNanos(System.nanoTime() - start);
+            }
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    /** Marks the end of the connect phase and the arrival of the response headers. */
+    private static class TimedRequestExecutor extends HttpRequestExecutor {
+        @Override
+        public HttpResponse execute(HttpRequest request, HttpClientConnection connection, HttpContext context)
+            throws IOException, HttpException
+        {
+            NagiosMetrics.Call call = (NagiosMetrics.Call)context.getAttribute(CALL_ATTRIBUTE);
+            if (call != null) {
+                call.requestSent();
+            }
+            long sent = System.nanoTime();
+            HttpResponse response = super.execute(request, connection, context);
+            if (call != null) {
+                call.responseReceived(System.nanoTime() - sent);
+            }
+            return response;
+        }
+    }
+
+    /**
+     * Reads whatever is left after the JSON document so the connection can go back to the pool.
+     * If the consumer stopped early and a large part of the body is still unread, the connection
+     * is discarded instead of downloading the rest of the body.
+     */
+    private static void releaseContent(HttpGet get, InputStream content) throws IOException {
+        byte[] buffer = new byte[1024];
+        long drained = 0;
+        while (drained < MAX_DRAIN_BYTES) {
+            int read = content.read(buffer);
+            if (read < 0) {
+                return;
+            }
+            drained += read;
+        }
+        get.abort();
+    }
+
+    private void testAuthenticationValues(String restEndpoint, String apiKey) throws BridgeError {
+        LOGGER.debug("Testing the Nagios XI authentication credentials");
+        HttpGet get = new HttpGet();
+        URI uri;
+        try {
+            uri = new URI(
+                String.format(
+                    "%s/api/v1/system/status?apikey=%s",
+                    StringUtils.chomp(restEndpoint, "/"), 
+                    apiKey
+                )
+            );
+        } catch (URISyntaxException e) {
+            throw new BridgeError(e);
+        }
+        get.setURI(uri);
+
+        String apiErrorMessage = null;
+        try (CloseableHttpResponse response = getHttpClient().execute(get)) {
+            HttpEntity entity = response.getEntity();
+            Integer responseCode = response.getStatusLine().getStatusCode();
+            if (responseCode == 401) {
+                throw new BridgeError("Unauthorized: The supplied API key is not valid.");
+            }
+            if (responseCode < 200 || responseCode >= 300) {
+                throw new BridgeError(
+                    String.format(
+                        "Unsuccessful HTTP response - the server returned a %s status code, expected 200.",
+                        responseCode
+                    )
+                );
+            } else {
+                String apiResponse = EntityUtils.toString(entity);
+                try {
+                    apiErrorMessage = JsonPath
+                        .parse(apiResponse)
+                        .read("$.error", String.class);
+                } catch (PathNotFoundException err) {}
+                if (apiErrorMessage != null) {
+                    throw new BridgeError(
+                        String.format(
+                            "The Nagios XI server responding with the following API error message: %s", 
+                            apiErrorMessage
+                        )
+                    );
+                }
+            }
+        }
+        catch (IOException e) {
+            get.abort();
+            throw new BridgeError("Unable to make a connection to the Nagios system status API.", e);
+        }
+    }
+
+    private void initializeHttpClient() throws BridgeError {
+        // Release any client left over from a previous initialization before replacing it.
+        closeHttpClient();
+
+        PoolingHttpClientConnectionManager manager = new PoolingHttpClientConnectionManager();
+        manager.setMaxTotal(getIntegerProperty(Properties.MAX_CONNECTIONS, 50));
+        manager.setDefaultMaxPerRoute(getIntegerProperty(Properties.MAX_CONNECTIONS_PER_ROUTE, 20));
+        // Re-check connections that have been idle for a while before leasing them again.
+        manager.setValidateAfterInactivity(2000);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+            .setConnectTimeout(getIntegerProperty(Properties.CONNECT_TIMEOUT, 10000))
+            .setSocketTimeout(getIntegerProperty(Properties.SOCKET_TIMEOUT, 60000))
+            .setConnectionRequestTimeout(getIntegerProperty(Properties.CONNECTION_REQUEST_TIMEOUT, 10000))
+            .build();
+
+        this.connectionManager = manager;
+        this.httpClient = HttpClients.custom()
+            .setConnectionManager(manager)
+            .setDefaultRequestConfig(requestConfig)
+            .setKeepAliveStrategy(DefaultConnectionKeepAliveStrategy.INSTANCE)
+            // Compression is negotiated and decoded in nagiosQuery, so the bytes on the wire can be counted.
+            .disableContentCompression()
+            .setRequestExecutor(new TimedRequestExecutor())
+            .evictExpiredConnections()
+            .evictIdleConnections((long)getIntegerProperty(Properties.IDLE_CONNECTION_TIMEOUT, 30), TimeUnit.SECONDS)
+            .build();
+    }
+
+    private CloseableHttpClient getHttpClient() throws BridgeError {
+        if (httpClient == null) {
+            throw new BridgeError("The Nagios XI adapter has not been initialized.");
+        }
+        return httpClient;
+    }
+
+    private void closeHttpClient() {
+        if (httpClient != null) {
+            try {
+                // Closing the client also stops the idle connection evictor and shuts down the pool.
+                httpClient.close();
+            } catch (IOException e) {
+                LOGGER.warn("Unable to cleanly close the Nagios XI HTTP client.", e);
+            }
+            httpClient = null;
+            connectionManager = null;
+        }
+    }
+
+    private void initializeTailLatencyControls() throws BridgeError {
+        closeHedgeExecutor();
+        this.totalTimeoutMillis = getIntegerProperty(Properties.TOTAL_TIMEOUT, 120000);
+        this.connectionRetries = getIntegerProperty(Properties.CONNECTION_RETRIES, 2);
+        this.retryBackoffMillis = getIntegerProperty(Properties.RETRY_BACKOFF, 100);
+        this.hedgeDelayMillis = getIntegerProperty(Properties.HEDGE_DELAY, 50);
+        if ("true".equalsIgnoreCase(properties.getValue(Properties.HEDGE_REQUESTS))) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            this.hedgeExecutor = Executors.newCachedThreadPool((runnable) -> {
+                Thread thread = new Thread(runnable, "nagios-xi-hedge-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        Map<String,Integer> priorities = new HashMap<>();
+        for (String pair : getListProperty(Properties.REQUEST_PRIORITIES)) {
+            String[] parts = pair.split("=", 2);
+            try {
+                priorities.put(parts[0].trim(), Integer.parseInt(parts[1].trim()));
+            } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+                throw new BridgeError(String.format(
+                    "The '%s' property entry '%s' must be in the form operation=number or structure=number.",
+                    Properties.REQUEST_PRIORITIES, pair));
+            }
+        }
+        this.requestPriorities = priorities;
+        int concurrencyLimit = getIntegerProperty(Properties.CONCURRENCY_LIMIT, 20);
+        this.concurrencyLimiter = concurrencyLimit <= 0
+            ? null
+            : new NagiosConcurrencyLimiter(concurrencyLimit, getIntegerProperty(Properties.MAX_CONCURRENCY_LIMIT, 50),
+                getIntegerProperty(Properties.REQUEST_QUEUE_SIZE, 100),
+                getIntegerProperty(Properties.REQUEST_QUEUE_TIMEOUT, 10000));
+        int failureThreshold = getIntegerProperty(Properties.CIRCUIT_FAILURE_THRESHOLD, 5);
+        this.circuitBreaker = failureThreshold <= 0
+            ? null
+            : new NagiosCircuitBreaker(failureThreshold,
+                TimeUnit.SECONDS.toMillis(getIntegerProperty(Properties.CIRCUIT_OPEN_TIME, 30)));
+    }
+
+    private void closeHedgeExecutor() {
+        if (hedgeExecutor != null) {
+            hedgeExecutor.shutdownNow();
+            hedgeExecutor = null;
+        }
+    }
+
+    private void initializeBackgroundExecutor() {
+        closeBackgroundExecutor();
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.backgroundExecutor = Executors.newScheduledThreadPool(4, (runnable) -> {
+            Thread thread = new Thread(runnable, "nagios-xi-adapter-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private void closeBackgroundExecutor() {
+        if (backgroundExecutor != null) {
+            backgroundExecutor.shutdownNow();
+            backgroundExecutor = null;
+        }
+    }
+
+    private void initializeRetrieveBatcher() throws BridgeError {
+        Map<String,String> keyFields = new HashMap<>();
+        for (String pair : getListProperty(Properties.RETRIEVE_BATCH_KEYS)) {
+            String[] parts = pair.split("=", 2);
+            if (parts.length < 2 || StringUtils.isBlank(parts[1])) {
+                throw new BridgeError(String.format(
+                    "The '%s' property entry '%s' must be in the form structure=field.",
+                    Properties.RETRIEVE_BATCH_KEYS, pair));
+            }
+            keyFields.put(parts[0].trim(), parts[1].trim());
+        }
+        this.retrieveBatcher = keyFields.isEmpty()
+            ? null
+            : new NagiosRetrieveBatcher(keyFields, getIntegerProperty(Properties.RETRIEVE_BATCH_WINDOW, 5),
+                getIntegerProperty(Properties.RETRIEVE_BATCH_SIZE, 50), this::search);
+    }
+
+    private void initializePageExecutor() throws BridgeError {
+        closePageExecutor();
+        Map<String,String> sortKeys = new HashMap<>();
+        for (String pair : getListProperty(Properties.PAGE_SORT_KEYS)) {
+            String[] parts = pair.split("=", 2);
+            if (parts.length < 2 || StringUtils.isBlank(parts[1])) {
+                throw new BridgeError(String.format(
+                    "The '%s' property entry '%s' must be in the form structure=field.",
+                    Properties.PAGE_SORT_KEYS, pair));
+            }
+            sortKeys.put(parts[0].trim(), parts[1].trim());
+        }
+        this.pageSortKeys = sortKeys;
+        this.pageChunkSize = getIntegerProperty(Properties.PAGE_CHUNK_SIZE, 0);
+        if (pageChunkSize > 0) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            this.pageExecutor = Executors.newFixedThreadPool(
+                Math.max(1, getIntegerProperty(Properties.PAGE_THREADS, 4)), (runnable) -> {
+                    Thread thread = new Thread(runnable, "nagios-xi-page-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        }
+    }
+
+    private void closePageExecutor() {
+        if (pageExecutor != null) {
+            pageExecutor.shutdownNow();
+            pageExecutor = null;
+        }
+    }
+
+    private void initializeRequestExecutor() throws BridgeError {
+        closeRequestExecutor();
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.requestExecutor = Executors.newFixedThreadPool(
+            Math.max(1, getIntegerProperty(Properties.ASYNC_THREADS, 10)), (runnable) -> {
+                Thread thread = new Thread(runnable, "nagios-xi-request-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+    }
+
+    private void closeRequestExecutor() {
+        if (requestExecutor != null) {
+            requestExecutor.shutdownNow();
+            requestExecutor = null;
+        }
+    }
+
+    private void registerMetrics() {
+        unregisterMetrics();
+        if ("false".equalsIgnoreCase(properties.getValue(Properties.JMX_METRICS))) {
+            return;
+        }
+        try {
+            ObjectName name = new ObjectName("com.kineticdata.bridgehub.adapter.nagios:type=NagiosXiAdapter,instance="
+                + METRICS_INSTANCES.incrementAndGet());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+            this.metricsName = name;
+        } catch (JMException e) {
+            LOGGER.warn("Unable to register the Nagios XI adapter metrics MBean.", e);
+        }
+    }
+
+    private void unregisterMetrics() {
+        if (metricsName != null) {
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                if (server.isRegistered(metricsName)) {
+                    server.unregisterMBean(metricsName);
+                }
+            } catch (JMException e) {
+                LOGGER.warn("Unable to unregister the Nagios XI adapter metrics MBean.", e);
+            }
+            metricsName = null;
+        }
+    }
+
+    private void initializePrefetcher() throws BridgeError {
+        closePrefetcher();
+        this.prefetchStructures = getListProperty(Properties.PREFETCH_STRUCTURES);
+        this.prefetchDepth = Math.max(1, getIntegerProperty(Properties.PREFETCH_DEPTH, 1));
+        if (prefetchStructures.isEmpty() == false) {
+            this.prefetcher = new NagiosPrefetcher(getIntegerProperty(Properties.PREFETCH_CACHE_SIZE, 200),
+                TimeUnit.SECONDS.toMillis(getIntegerProperty(Properties.PREFETCH_TTL, 30)), this::isUnderPressure);
+        }
+    }
+
+    private void closePrefetcher() {
+        if (prefetcher != null) {
+            prefetcher.close();
+            prefetcher = null;
+        }
+    }
+
+    private void initializeResponseMemo() throws BridgeError {
+        this.memoStructures = getListProperty(Properties.MEMO_STRUCTURES);
+        this.responseMemo = memoStructures.isEmpty()
+            ? null
+            : new NagiosResponseMemo(getIntegerProperty(Properties.MEMO_MAX_ENTRIES, 500),
+                getIntegerProperty(Properties.MEMO_MAX_BODY_SIZE, 8388608));
+    }
+
+    private void initializeObjectCache() throws BridgeError {
+        long ttlMillis = TimeUnit.SECONDS.toMillis(getIntegerProperty(Properties.OBJECT_CACHE_TTL, 0));
+        if (ttlMillis <= 0) {
+            this.objectCache = null;
+            return;
+        }
+        Map<String,List<String[]>> keys = new HashMap<>();
+        for (String pair : getListProperty(Properties.OBJECT_CACHE_KEYS)) {
+            String[] parts = pair.split("=", 2);
+            if (parts.length < 2 || StringUtils.isBlank(parts[1])) {
+                throw new BridgeError(String.format(
+                    "The '%s' property entry '%s' must be in the form structure=field|field+field.",
+                    Properties.OBJECT_CACHE_KEYS, pair));
+            }
+            List<String[]> structureKeys = new ArrayList<>();
+            for (String key : parts[1].split("\\|")) {
+                structureKeys.add(StringUtils.stripAll(key.split("\\+")));
+            }
+            keys.put(parts[0].trim(), structureKeys);
+        }
+        this.objectCache = new NagiosObjectCache(keys, ttlMillis,
+            getIntegerProperty(Properties.OBJECT_CACHE_MAX_ENTRIES, 50000));
+    }
+
+    private void initializeFederation() throws BridgeError {
+        List<String> urls = new ArrayList<>();
+        for (String url : this.apiEndpoint.split(",")) {
+            if (StringUtils.isNotBlank(url)) {
+                urls.add(url.trim().replaceFirst("(\\/)$", ""));
+            }
+        }
+        String[] keys = StringUtils.defaultString(this.apiKey).split(",", -1);
+        if (keys.length != 1 && keys.length != urls.size()) {
+            throw new BridgeError(String.format("The '%s' property must have one key, or one key for each of the %d "
+                + "'%s' URLs.", Properties.API_KEY, urls.size(), Properties.API_URL));
+        }
+
+        Map<String,NagiosXiAdapter> instances = new LinkedHashMap<>();
+        try {
+            for (int i = 0; i < urls.size(); i++) {
+                String name = instanceName(urls.get(i));
+                for (int suffix = 2; instances.containsKey(name); suffix++) {
+                    name = instanceName(urls.get(i)) + "#" + suffix;
+                }
+                Map<String,String> values = properties.getValues();
+                values.put(Properties.API_URL, urls.get(i));
+                values.put(Properties.API_KEY, keys[keys.length == 1 ? 0 : i].trim());
+                String warmCacheDirectory = values.get(Properties.WARM_CACHE_DIRECTORY);
+                if (StringUtils.isNotBlank(warmCacheDirectory)) {
+                    values.put(Properties.WARM_CACHE_DIRECTORY,
+                        Paths.get(warmCacheDirectory.trim(), name.replaceAll("[^A-Za-z0-9_.-]", "_")).toString());
+                }
+                NagiosXiAdapter instance = new NagiosXiAdapter();
+                instance.setProperties(values);
+                instances.put(name, instance);
+                instance.initialize_noAuth();
+            }
+        } catch (BridgeError | RuntimeException e) {
+            instances.values().forEach(NagiosXiAdapter::destroy);
+            throw e;
+        }
+        this.federation = new NagiosFederation(instances, getIntegerProperty(Properties.INSTANCE_TIMEOUT, 30000),
+            "false".equalsIgnoreCase(properties.getValue(Properties.PARTIAL_RESULTS)) == false);
+    }
+
+    private void closeFederation() {
+        if (federation != null) {
+            federation.close();
+            federation = null;
+        }
+    }
+
+    /** The host (and port, if given) of an instance URL, naming the instance in results. */
+    private static String instanceName(String url) throws BridgeError {
+        try {
+            URI uri = new URI(url);
+            if (uri.getHost() == null) {
+                throw new BridgeError(String.format("The '%s' URL '%s' has no host.", Properties.API_URL, url));
+            }
+            return uri.getPort() < 0 ? uri.getHost() : uri.getHost() + ":" + uri.getPort();
+        } catch (URISyntaxException e) {
+            throw new BridgeError(String.format("The '%s' URL '%s' is not valid.", Properties.API_URL, url), e);
+        }
+    }
+
+    private void initializeSnapshotStore() throws BridgeError {
+        String directory = properties.getValue(Properties.WARM_CACHE_DIRECTORY);
+        try {
+            this.snapshotStore = StringUtils.isBlank(directory)
+                ? null
+                : new NagiosSnapshotStore(Paths.get(directory.trim()), this.apiEndpoint);
+        } catch (InvalidPathException e) {
+            throw new BridgeError(String.format("The '%s' property value '%s' is not a valid directory.",
+                Properties.WARM_CACHE_DIRECTORY, directory), e);
+        }
+    }
+
+    private void initializeMirror() throws BridgeError {
+        closeMirror();
+        Set<String> structures = getListProperty(Properties.MIRROR_STRUCTURES);
+        if (structures.isEmpty() == false) {
+            NagiosMirror newMirror = new NagiosMirror(structures, getListProperty(Properties.MIRROR_INDEX_FIELDS),
+                this::loadSnapshot, snapshotStore);
+            newMirror.start(backgroundExecutor,
+                TimeUnit.SECONDS.toMillis(getIntegerProperty(Properties.MIRROR_REFRESH_INTERVAL, 60)));
+            this.mirror = newMirror;
+        }
+    }
+
+    private void closeMirror() {
+        if (mirror != null) {
+            mirror.stop();
+            mirror = null;
+        }
+    }
+
+    private void initializeMembershipIndex() throws BridgeError {
+        closeMembershipIndex();
+        Set<String> structures = getListProperty(Properties.MEMBERSHIP_STRUCTURES);
+        for (String structure : structures) {
+            if (NagiosMembershipIndex.STRUCTURES.containsKey(structure) == false) {
+                throw new BridgeError(String.format("The '%s' property entry '%s' must be one of %s.",
+                    Properties.MEMBERSHIP_STRUCTURES, structure, NagiosMembershipIndex.STRUCTURES.keySet()));
+            }
+        }
+        if (structures.isEmpty() == false) {
+            NagiosMembershipIndex index = new NagiosMembershipIndex(structures, this::loadSnapshot, snapshotStore);
+            index.start(backgroundExecutor,
+                TimeUnit.SECONDS.toMillis(getIntegerProperty(Properties.MEMBERSHIP_REFRESH_INTERVAL, 300)));
+            this.membershipIndex = index;
+        }
+    }
+
+    private void closeMembershipIndex() {
+        if (membershipIndex != null) {
+            membershipIndex.stop();
+            membershipIndex = null;
+        }
+    }
+
+    private void initializeHistory() throws BridgeError {
+        closeHistory();
+        Set<String> structures = getListProperty(Properties.HISTORY_STRUCTURES);
+        if (structures.isEmpty()) {
+            return;
+        }
+        ZoneId zone;
+        try {
+            String zoneProperty = properties.getValue(Properties.HISTORY_TIME_ZONE);
+            zone = StringUtils.isBlank(zoneProperty) ? ZoneId.systemDefault() : ZoneId.of(zoneProperty.trim());
+        } catch (DateTimeException e) {
+            throw new BridgeError(String.format("The '%s' property is not a valid time zone.",
+                Properties.HISTORY_TIME_ZONE));
+        }
+        long retentionSeconds = TimeUnit.HOURS.toSeconds(getIntegerProperty(Properties.HISTORY_RETENTION, 24));
+        int maxEntries = getIntegerProperty(Properties.HISTORY_MAX_ENTRIES, 500000);
+        long syncIntervalMillis = TimeUnit.SECONDS.toMillis(getIntegerProperty(Properties.HISTORY_SYNC_INTERVAL, 30));
+
+        Map<String,NagiosHistoryStore> stores = new HashMap<>();
+        for (String structure : structures) {
+            if (NagiosHistoryStore.isSupported(structure) == false) {
+                throw new BridgeError(String.format("The '%s' property entry '%s' is not a supported history "
+                    + "structure.", Properties.HISTORY_STRUCTURES, structure));
+            }
+            NagiosHistoryStore store = new NagiosHistoryStore(structure, zone, retentionSeconds, maxEntries,
+                this::loadHistory);
+            store.start(backgroundExecutor, syncIntervalMillis);
+            stores.put(structure, store);
+        }
+        this.historyStores = stores;
+    }
+
+    private void closeHistory() {
+        historyStores.values().forEach(NagiosHistoryStore::stop);
+        historyStores = new HashMap<>();
+    }
+
+    private void initializeResponseCache() throws BridgeError {
+        Map<String,Long> ttls = new HashMap<>();
+        String ttlProperty = properties.getValue(Properties.CACHE_TTLS);
+        if (StringUtils.isNotBlank(ttlProperty)) {
+            for (String pair : ttlProperty.split(",")) {
+                String[] parts = pair.split("=", 2);
+                try {
+                    ttls.put(parts[0].trim(), Long.valueOf(parts[1].trim()));
+                } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+                    throw new BridgeError(String.format(
+                        "The '%s' property entry '%s' must be in the form structure=seconds.",
+                        Properties.CACHE_TTLS, pair));
+                }
+            }
+        }
+        this.responseCacheTtls = ttls;
+        this.responseCacheDefaultTtl = getIntegerProperty(Properties.CACHE_DEFAULT_TTL, 0);
+        this.responseCache = new NagiosResponseCache(
+            getIntegerProperty(Properties.CACHE_MAX_ENTRIES, 1000),
+            getIntegerProperty(Properties.CACHE_MAX_MEGABYTES, 64) * 1024L * 1024L,
+            TimeUnit.SECONDS.toMillis(getIntegerProperty(Properties.CACHE_STALE_WINDOW, 0)),
+            backgroundExecutor
+        );
+    }
+
+    private Set<String> getListProperty(String name) {
+        Set<String> values = new LinkedHashSet<>();
+        String value = properties.getValue(name);
+        if (StringUtils.isNotBlank(value)) {
+            for (String item : value.split(",")) {
+                if (StringUtils.isNotBlank(item)) {
+                    values.add(item.trim());
+                }
+            }
+        }
+        return values;
+    }
+
+    private int getIntegerProperty(String name, int defaultValue) throws BridgeError {
+        String value = properties.getValue(name);
+        if (StringUtils.isBlank(value)) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new BridgeError(String.format("The '%s' property must be a whole number, but was '%s'.", name, value));
         }
     }
 
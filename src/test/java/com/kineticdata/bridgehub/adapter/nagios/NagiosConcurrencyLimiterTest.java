@@ -0,0 +1,113 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class NagiosConcurrencyLimiterTest {
+
+    @Test
+    public void test_queuedCallsGoInPriorityOrder() throws Exception {
+        NagiosConcurrencyLimiter limiter = new NagiosConcurrencyLimiter(1, 1, 10, 5000);
+        limiter.acquire(0);
+
+        List<Integer> order = new CopyOnWriteArrayList<>();
+        Thread search = waitFor(limiter, 2, order);
+        Thread retrieve = waitFor(limiter, 0, order);
+        while (limiter.getStats().get("queueDepth") < 2) {
+            Thread.sleep(5);
+        }
+        limiter.release("search objects/host", TimeUnit.MILLISECONDS.toNanos(10), false);
+        search.join(5000);
+        retrieve.join(5000);
+
+        assertEquals(0, order.get(0).intValue());
+        assertEquals(2, order.get(1).intValue());
+    }
+
+    @Test
+    public void test_rejectsWhenQueueIsFull() throws Exception {
+        NagiosConcurrencyLimiter limiter = new NagiosConcurrencyLimiter(1, 1, 0, 5000);
+        limiter.acquire(0);
+        try {
+            limiter.acquire(0);
+            fail("Expected the full queue to reject the call.");
+        } catch (BridgeError e) {
+            assertEquals("Nagios XI is overloaded: 1 requests are in flight (limit 1) and 0 are queued.",
+                e.getMessage());
+        }
+        assertEquals(Long.valueOf(1), limiter.getStats().get("rejected"));
+    }
+
+    @Test
+    public void test_limitAdaptsToResponseTimes() throws Exception {
+        NagiosConcurrencyLimiter limiter = new NagiosConcurrencyLimiter(4, 100, 10, 5000);
+        // Fast responses with the limit in use raise it.
+        for (int i = 0; i < 50; i++) {
+            for (int j = 0; j < 4; j++) {
+                limiter.acquire(0);
+            }
+            for (int j = 0; j < 4; j++) {
+                limiter.release("search objects/host", TimeUnit.MILLISECONDS.toNanos(10), false);
+            }
+        }
+        long raised = limiter.getStats().get("limit");
+        assertTrue(raised > 4);
+
+        // A slow response, or a failure once the hold has passed, lowers it.
+        limiter.acquire(0);
+        limiter.release("search objects/host", TimeUnit.MILLISECONDS.toNanos(100), false);
+        assertTrue(limiter.getStats().get("limit") < raised);
+        assertEquals(Long.valueOf(1), limiter.getStats().get("decreases"));
+    }
+
+    @Test
+    public void test_mixedLatenciesKeepTheLimit() throws Exception {
+        NagiosConcurrencyLimiter limiter = new NagiosConcurrencyLimiter(20, 50, 10, 5000);
+        Random random = new Random(1);
+        // Quick retrieves and ten times slower searches from a healthy server, with some jitter.
+        for (int i = 0; i < 500; i++) {
+            for (int j = 0; j < 10; j++) {
+                limiter.acquire(0);
+            }
+            for (int j = 0; j < 10; j++) {
+                boolean search = random.nextInt(3) == 0;
+                long micros = (search ? 50000 : 5000) * (80 + random.nextInt(41)) / 100;
+                limiter.release(search ? "search objects/servicestatus" : "retrieve objects/host",
+                    TimeUnit.MICROSECONDS.toNanos(micros), false);
+            }
+        }
+
+        assertEquals(Long.valueOf(0), limiter.getStats().get("decreases"));
+        assertTrue(limiter.getStats().get("limit") >= 20);
+        assertTrue(limiter.getStats().get("noLoadMicros.search objects/servicestatus")
+            > limiter.getStats().get("noLoadMicros.retrieve objects/host"));
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PRIVATE HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    private Thread waitFor(NagiosConcurrencyLimiter limiter, int priority, List<Integer> order) throws Exception {
+        long queued = limiter.getStats().get("queued");
+        Thread thread = new Thread(() -> {
+            try {
+                limiter.acquire(priority);
+                order.add(priority);
+                limiter.release("search objects/host", TimeUnit.MILLISECONDS.toNanos(10), false);
+            } catch (BridgeError e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.start();
+        // Queue the threads one after the other.
+        while (limiter.getStats().get("queued") == queued) {
+            Thread.sleep(5);
+        }
+        return thread;
+    }
+}
@@ -0,0 +1,207 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+
+/**
+ * Generates synthetic Nagios XI API responses for every structure in
+ * {@link NagiosQualificationParser#jsonPathMapping}, shaped like the real API (string valued
+ * fields, a <code>recordcount</code> beside the record array).  Shared by the benchmarks and the
+ * stand-in Nagios XI server used by the tests.
+ */
+public class NagiosFixtures {
+
+    /** Base time of the generated timestamps (2019-05-01 00:00:00 UTC). */
+    public static final long BASE_TIME = 1556668800L;
+
+    private static final DateTimeFormatter NAGIOS_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
+        .withZone(ZoneOffset.UTC);
+
+    private static final List<String> HOST_FIELDS = Arrays.asList(
+        "instance_id", "host_object_id", "host_name", "address", "display_name");
+    private static final List<String> SERVICE_FIELDS = Arrays.asList(
+        "service_object_id", "service_description");
+    private static final List<String> STATUS_FIELDS = Arrays.asList(
+        "current_state", "last_check", "next_check", "status_update_time", "output",
+        "problem_has_been_acknowledged", "current_check_attempt", "max_check_attempts");
+    private static final List<String> HISTORY_FIELDS = Arrays.asList(
+        "state_time", "state", "state_type", "last_state", "output");
+    private static final List<String> LOG_FIELDS = Arrays.asList(
+        "instance_id", "entry_time", "logentry_type", "logentry_data");
+    private static final List<String> GROUP_FIELDS = Arrays.asList(
+        "instance_id", "hostgroup_object_id", "hostgroup_name", "alias", "host_name");
+
+    private NagiosFixtures() {
+    }
+
+    /** The field names of a generated element, padded with attr_NN fields to the given width. */
+    public static List<String> fieldNames(String structure, int width) {
+        List<String> fields = new ArrayList<>();
+        if (structure.equals("objects/logentries")) {
+            fields.addAll(LOG_FIELDS);
+        } else if (structure.endsWith("group") || structure.endsWith("groupmembers")) {
+            fields.addAll(GROUP_FIELDS);
+        } else {
+            fields.addAll(HOST_FIELDS);
+            if (structure.contains("service") || structure.equals("objects/statehistory")
+                || structure.equals("objects/comment") || structure.equals("objects/downtime"))
+            {
+                fields.addAll(SERVICE_FIELDS);
+            }
+            if (structure.endsWith("status")) {
+                fields.addAll(STATUS_FIELDS);
+            } else if (structure.equals("objects/statehistory")) {
+                fields.addAll(HISTORY_FIELDS);
+            }
+        }
+        for (int i = 1; fields.size() < width; i++) {
+            fields.add(String.format("attr_%02d", i));
+        }
+        return Collections.unmodifiableList(fields);
+    }
+
+    /**
+     * Generates the elements of a structure.  Element <code>i</code> belongs to host
+     * <code>i / servicesPerHost</code>; history entries are one minute apart from {@link #BASE_TIME}.
+     */
+    public static List<JSONObject> elements(String structure, int count, int servicesPerHost, int width) {
+        List<String> fields = fieldNames(structure, width);
+        List<JSONObject> elements = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            JSONObject element = new JSONObject();
+            for (String field : fields) {
+                element.put(field, value(field, i, Math.max(1, servicesPerHost)));
+            }
+            elements.add(element);
+        }
+        return elements;
+    }
+
+    /**
+     * Generates the nested documents of a group member structure (such as objects/hostgroupmembers),
+     * the way Nagios XI returns them.  Host <code>h</code> is in group <code>h % groups</code>, along
+     * with its services for service groups; contact <code>c</code> of <code>hosts</code> contacts
+     * likewise.
+     */
+    public static List<JSONObject> groupMembers(String structure, int groups, int hosts, int servicesPerHost) {
+        String type = structure.substring("objects/".length(), structure.indexOf("groupmembers"));
+        List<JSONObject> documents = new ArrayList<>(groups);
+        for (int group = 0; group < groups; group++) {
+            JSONArray members = new JSONArray();
+            for (int host = group; host < hosts; host += groups) {
+                int count = type.equals("service") ? servicesPerHost : 1;
+                for (int service = 0; service < count; service++) {
+                    JSONObject member = new JSONObject();
+                    member.put("@attributes", attributes(type.equals("service")
+                        ? 1000000 + host * servicesPerHost + service
+                        : 1000 + host));
+                    if (type.equals("contact")) {
+                        member.put("contact_name", String.format("contact%05d", host));
+                    } else {
+                        member.put("host_name", String.format("host%05d", host));
+                    }
+                    if (type.equals("service")) {
+                        member.put("service_description", String.format("Service %03d", service));
+                    }
+                    members.add(member);
+                }
+            }
+            JSONObject memberList = new JSONObject();
+            memberList.put(type, members);
+            JSONObject document = new JSONObject();
+            document.put("@attributes", attributes(500 + group));
+            document.put("instance_id", "1");
+            document.put(type + "group_name", String.format("group%02d", group));
+            document.put("members", memberList);
+            documents.add(document);
+        }
+        return documents;
+    }
+
+    /** Wraps elements in the structure's response envelope. */
+    public static String response(String structure, List<JSONObject> elements, long recordCount) {
+        String[] path = NagiosRequestPlan.getJsonRootPath(structure).substring(2).split("\\.");
+        JSONObject list = new JSONObject();
+        list.put("recordcount", String.valueOf(recordCount));
+        JSONArray records = new JSONArray();
+        records.addAll(elements);
+        list.put(path[1], records);
+        JSONObject document = new JSONObject();
+        document.put(path[0], list);
+        return document.toJSONString();
+    }
+
+    /** A complete response of <code>count</code> generated records, as UTF-8 bytes. */
+    public static byte[] responseBytes(String structure, int count, int width) {
+        return response(structure, elements(structure, count, 10, width), count).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PRIVATE HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    private static JSONObject attributes(int id) {
+        JSONObject attributes = new JSONObject();
+        attributes.put("id", String.valueOf(id));
+        return attributes;
+    }
+
+    private static String value(String field, int index, int servicesPerHost) {
+        int host = index / servicesPerHost;
+        int service = index % servicesPerHost;
+        switch (field) {
+            case "instance_id":
+                return "1";
+            case "host_object_id":
+                return String.valueOf(1000 + host);
+            case "host_name":
+            case "display_name":
+                return String.format("host%05d", host);
+            case "address":
+                return String.format("10.%d.%d.%d", host / 65536 % 256, host / 256 % 256, host % 256);
+            case "service_object_id":
+                return String.valueOf(1000000 + index);
+            case "service_description":
+                return String.format("Service %03d", service);
+            case "current_state":
+            case "state":
+            case "last_state":
+                return String.valueOf(index % 7 == 0 ? 2 : index % 5 == 0 ? 1 : 0);
+            case "state_type":
+            case "problem_has_been_acknowledged":
+                return String.valueOf(index % 2);
+            case "current_check_attempt":
+                return "1";
+            case "max_check_attempts":
+                return "3";
+            case "last_check":
+            case "status_update_time":
+            case "state_time":
+            case "entry_time":
+                return NAGIOS_TIME.format(Instant.ofEpochSecond(BASE_TIME + 60L * index));
+            case "next_check":
+                return NAGIOS_TIME.format(Instant.ofEpochSecond(BASE_TIME + 60L * index + 300));
+            case "output":
+            case "logentry_data":
+                return "OK - response time " + (index % 1000) + "ms | time=" + (index % 1000) + "ms;500;1000;0";
+            case "logentry_type":
+                return "262144";
+            case "hostgroup_object_id":
+                return String.valueOf(500 + host % 20);
+            case "hostgroup_name":
+                return String.format("group%02d", host % 20);
+            case "alias":
+                return String.format("Group %02d", host % 20);
+            default:
+                return field + "-" + index;
+        }
+    }
+}
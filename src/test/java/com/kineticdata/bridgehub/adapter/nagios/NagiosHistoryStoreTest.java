@@ -0,0 +1,99 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import net.minidev.json.JSONObject;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class NagiosHistoryStoreTest {
+
+    private static final long HOUR = 3600;
+    private final long now = System.currentTimeMillis() / 1000;
+    private final List<long[]> requestedWindows = new ArrayList<>();
+    private final LinkedList<List<Object>> responses = new LinkedList<>();
+
+    @Test
+    public void test_syncOnlyRequestsNewerEntries() throws Exception {
+        NagiosHistoryStore store = store(24 * HOUR);
+        responses.add(Arrays.asList(entry("web01", now - 2 * HOUR, "2"), entry("web02", now - 60, "1")));
+        responses.add(Arrays.asList(entry("web02", now - 60, "1"), entry("db01", now - 60, "2")));
+        store.sync();
+        store.sync();
+
+        assertEquals(now - 24 * HOUR, requestedWindows.get(0)[0]);
+        // The second sync starts at the newest timestamp already held and skips what it has seen.
+        assertEquals(now - 60, requestedWindows.get(1)[0]);
+        assertEquals(Long.valueOf(3), store.getStats().get("objects/statehistory.size"));
+    }
+
+    @Test
+    public void test_selectsTimeRangeLocally() throws Exception {
+        NagiosHistoryStore store = store(24 * HOUR);
+        responses.add(Arrays.asList(
+            entry("web01", now - 5 * HOUR, "2"),
+            entry("web01", now - 2 * HOUR, "0"),
+            entry("web02", now - 60, "2")));
+        store.sync();
+
+        List<Object> matches = store.select("starttime=" + (now - 3 * HOUR) + "&state=2", null);
+        assertEquals(1, matches.size());
+        assertEquals("web02", ((Map)matches.get(0)).get("host_name"));
+        assertEquals(2, store.select("starttime=" + (now - 6 * HOUR) + "&endtime=" + (now - HOUR), null).size());
+        assertEquals(1, store.select("starttime=" + (now - 6 * HOUR) + "&endtime=" + (now - 4 * HOUR), null).size());
+        assertEquals(0, store.select("starttime=" + (now - HOUR) + "&endtime=" + (now - 2 * HOUR), null).size());
+    }
+
+    @Test
+    public void test_rangesOutsideTheWindowGoToNagios() throws Exception {
+        NagiosHistoryStore store = store(24 * HOUR);
+        assertNull(store.select("starttime=" + (now - HOUR), null));
+
+        responses.add(new ArrayList<>());
+        store.sync();
+        assertNotNull(store.select("starttime=" + (now - HOUR), null));
+        assertNull(store.select("starttime=" + (now - 48 * HOUR), null));
+        assertNull(store.select("host_name=web01", null));
+    }
+
+    @Test
+    public void test_expireDropsOldEntries() throws Exception {
+        NagiosHistoryStore store = store(24 * HOUR);
+        responses.add(Arrays.asList(entry("web01", now - 23 * HOUR, "2"), entry("web02", now - 60, "1")));
+        store.sync();
+
+        NagiosHistoryStore shorter = store(HOUR);
+        responses.add(Arrays.asList(entry("web01", now - 23 * HOUR, "2"), entry("web02", now - 60, "1")));
+        shorter.sync();
+        shorter.expire();
+
+        assertEquals(Long.valueOf(2), store.getStats().get("objects/statehistory.size"));
+        assertEquals(Long.valueOf(1), shorter.getStats().get("objects/statehistory.size"));
+    }
+
+    /*
+    * PRIVATE HELPER METHODS
+    */
+    private NagiosHistoryStore store(long retentionSeconds) {
+        return new NagiosHistoryStore("objects/statehistory", ZoneOffset.UTC, retentionSeconds, 1000,
+            (structure, startTime, endTime) -> {
+                requestedWindows.add(new long[] {startTime, endTime});
+                return responses.removeFirst();
+            });
+    }
+
+    private JSONObject entry(String hostName, long time, String state) {
+        JSONObject entry = new JSONObject();
+        entry.put("host_name", hostName);
+        entry.put("state", state);
+        entry.put("state_time", DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
+            .format(Instant.ofEpochSecond(time).atOffset(ZoneOffset.UTC)));
+        return entry;
+    }
+}
@@ -0,0 +1,115 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import com.kineticdata.bridgehub.adapter.BridgeRequest;
+import com.kineticdata.bridgehub.adapter.Record;
+import com.kineticdata.bridgehub.adapter.RecordList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class NagiosJoinerTest {
+
+    @Test
+    public void test_joinedFieldsAreLookedUpInBatches() throws Exception {
+        List<String> lookups = new ArrayList<>();
+        NagiosJoiner joiner = new NagiosJoiner((search) -> {
+            if (search.getStructure().equals("objects/servicestatus")) {
+                return new RecordList(search.getFields(), Arrays.asList(
+                    record("host_name", "web01", "service_description", "HTTP"),
+                    record("host_name", "web02", "service_description", "HTTP"),
+                    record("host_name", "web01", "service_description", "SSH"),
+                    record("host_name", "web03", "service_description", "HTTP")), new HashMap<>());
+            }
+            lookups.add(search.getQuery() + " " + search.getParameters().get("Join Keys"));
+            List<Record> hosts = new ArrayList<>();
+            for (String host : search.getParameters().get("Join Keys").split(",")) {
+                if (host.equals("web03") == false) {
+                    hosts.add(record("host_name", host, "address", "10.0.0." + host.substring(4)));
+                }
+            }
+            return new RecordList(search.getFields(), hosts);
+        }, 2);
+
+        RecordList result = joiner.search(request("host=objects/hoststatus:host_name",
+            "service_description", "host.address"));
+
+        assertEquals(Arrays.asList(
+            "host_name=in:<%=parameter[\"Join Keys\"]%> web01,web02",
+            "host_name=in:<%=parameter[\"Join Keys\"]%> web03"), lookups);
+        assertEquals(Arrays.asList("service_description", "host.address"), result.getFields());
+        assertEquals("10.0.0.1", result.getRecords().get(2).getValue("host.address"));
+        assertEquals("SSH", result.getRecords().get(2).getValue("service_description"));
+        // The join field wasn't requested, so it is dropped again.
+        assertFalse(result.getRecords().get(0).getRecord().containsKey("host_name"));
+        assertNull(result.getRecords().get(3).getValue("host.address"));
+        assertEquals(Long.valueOf(3), joiner.getStats().get("keys"));
+        assertEquals(Long.valueOf(1), joiner.getStats().get("unmatched"));
+
+        try {
+            joiner.search(request("host=objects/hoststatus", "host.address"));
+            fail("Expected the invalid join to fail the search.");
+        } catch (BridgeError e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("host=objects/hoststatus"));
+        }
+    }
+
+    @Test
+    public void test_fullLookupIsRepeatedForTheMissingValues() throws Exception {
+        List<String> lookups = new ArrayList<>();
+        NagiosJoiner joiner = new NagiosJoiner((search) -> {
+            if (search.getStructure().equals("objects/servicestatus")) {
+                return new RecordList(search.getFields(), Arrays.asList(
+                    record("host_name", "web01"), record("host_name", "web02")), new HashMap<>());
+            }
+            String keys = search.getParameters().get("Join Keys");
+            lookups.add(keys);
+            // web01 has enough matches to fill a whole lookup and push web02 out of it.
+            List<Record> hosts = new ArrayList<>();
+            for (String host : keys.split(",")) {
+                int matches = host.equals("web01") ? 1000 : 1;
+                for (int i = 0; i < matches && hosts.size() < 1000; i++) {
+                    hosts.add(record("host_name", host, "address", host + "." + i));
+                }
+            }
+            return new RecordList(search.getFields(), hosts);
+        }, 50);
+
+        RecordList result = joiner.search(request("host=objects/hoststatus:host_name", "host.address"));
+
+        assertEquals(Arrays.asList("web01,web02", "web02"), lookups);
+        assertEquals("web01.0", result.getRecords().get(0).getValue("host.address"));
+        assertEquals("web02.0", result.getRecords().get(1).getValue("host.address"));
+        assertEquals(Long.valueOf(1), joiner.getStats().get("truncated"));
+        assertEquals(Long.valueOf(0), joiner.getStats().get("unmatched"));
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PRIVATE HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    private static BridgeRequest request(String join, String... fields) {
+        BridgeRequest request = new BridgeRequest();
+        request.setStructure("objects/servicestatus");
+        request.setQuery("");
+        request.setFields(Arrays.asList(fields));
+        Map<String,String> metadata = new HashMap<>();
+        metadata.put(NagiosJoiner.METADATA, join);
+        request.setMetadata(metadata);
+        request.setParameters(Collections.emptyMap());
+        return request;
+    }
+
+    private static Record record(String... fieldsAndValues) {
+        Map<String,Object> values = new HashMap<>();
+        for (int i = 0; i < fieldsAndValues.length; i += 2) {
+            values.put(fieldsAndValues[i], fieldsAndValues[i + 1]);
+        }
+        return new Record(values);
+    }
+}
@@ -0,0 +1,223 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import com.kineticdata.bridgehub.adapter.BridgeRequest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives count, retrieve and search calls against an adapter from many threads and reports
+ * latency percentiles, throughput, errors and socket usage.
+ *
+ * Run it against a {@link NagiosStandInServer} from the test classpath, for example:
+ * <pre>
+ * java -cp target/classes:target/test-classes:... \
+ *     com.kineticdata.bridgehub.adapter.nagios.NagiosLoadHarness threads=32 seconds=30 latency=20 jitter=10
+ * </pre>
+ */
+public class NagiosLoadHarness {
+
+    /** A single bridge call made by the harness. */
+    public interface Operation {
+        void run(NagiosXiAdapter adapter) throws BridgeError;
+    }
+
+    /** The outcome of a load run. */
+    public static class Report {
+        private final long operations;
+        private final long errors;
+        private final long elapsedMillis;
+        private final long[] sortedLatencyMicros;
+        private final Map<String,Integer> poolStats;
+        private final int serverConnections;
+
+        private Report(long operations, long errors, long elapsedMillis, long[] sortedLatencyMicros,
+            Map<String,Integer> poolStats, int serverConnections)
+        {
+            this.operations = operations;
+            this.errors = errors;
+            this.elapsedMillis = elapsedMillis;
+            this.sortedLatencyMicros = sortedLatencyMicros;
+            this.poolStats = poolStats;
+            this.serverConnections = serverConnections;
+        }
+
+        public long getOperations() {
+            return operations;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public double getThroughput() {
+            return elapsedMillis == 0 ? 0 : operations * 1000.0 / elapsedMillis;
+        }
+
+        /** The latency (in microseconds) below which the given fraction of calls completed. */
+        public long getPercentileMicros(double fraction) {
+            if (sortedLatencyMicros.length == 0) {
+                return 0;
+            }
+            int index = (int)Math.ceil(fraction * sortedLatencyMicros.length) - 1;
+            return sortedLatencyMicros[Math.max(0, Math.min(index, sortedLatencyMicros.length - 1))];
+        }
+
+        /** The adapter's connection pool at the end of the run. */
+        public Map<String,Integer> getPoolStats() {
+            return poolStats;
+        }
+
+        /** Distinct client sockets seen by the stand-in server, or -1 when no server was given. */
+        public int getServerConnections() {
+            return serverConnections;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("operations=%d errors=%d throughput=%.1f/s p50=%dus p99=%dus p999=%dus "
+                + "pool=%s serverConnections=%d",
+                operations, errors, getThroughput(), getPercentileMicros(0.5), getPercentileMicros(0.99),
+                getPercentileMicros(0.999), poolStats, serverConnections);
+        }
+    }
+
+    private final NagiosXiAdapter adapter;
+    private final NagiosStandInServer server;
+    private final List<Operation> operations = new ArrayList<>();
+
+    /** The server may be null; it is only used to report socket usage. */
+    public NagiosLoadHarness(NagiosXiAdapter adapter, NagiosStandInServer server) {
+        this.adapter = adapter;
+        this.server = server;
+    }
+
+    /** Adds an operation; operations are picked at random in proportion to their weight. */
+    public void addOperation(int weight, Operation operation) {
+        for (int i = 0; i < weight; i++) {
+            operations.add(operation);
+        }
+    }
+
+    /** Runs the operations from the given number of threads for the given time. */
+    public Report run(int threads, long durationMillis) throws InterruptedException {
+        AtomicLong errors = new AtomicLong();
+        List<Recorder> recorders = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(threads);
+        long start = System.nanoTime();
+        long end = start + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+
+        for (int t = 0; t < threads; t++) {
+            Recorder recorder = new Recorder();
+            recorders.add(recorder);
+            new Thread(() -> {
+                try {
+                    while (System.nanoTime() < end) {
+                        Operation operation = operations.get(ThreadLocalRandom.current().nextInt(operations.size()));
+                        long before = System.nanoTime();
+                        try {
+                            operation.run(adapter);
+                        } catch (BridgeError | RuntimeException e) {
+                            errors.incrementAndGet();
+                        }
+                        recorder.record((System.nanoTime() - before) / 1000);
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }, "nagios-load-" + t).start();
+        }
+        // The latch also makes each thread's recorded latencies visible here.
+        done.await();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        long[] merged = new long[recorders.stream().mapToInt((recorder) -> recorder.count).sum()];
+        int position = 0;
+        for (Recorder recorder : recorders) {
+            System.arraycopy(recorder.latencies, 0, merged, position, recorder.count);
+            position += recorder.count;
+        }
+        Arrays.sort(merged);
+        return new Report(merged.length, errors.get(), elapsedMillis, merged, adapter.getConnectionPoolStats(),
+            server == null ? -1 : server.getConnectionCount());
+    }
+
+    /** Latencies recorded by a single load thread. */
+    private static class Recorder {
+        private long[] latencies = new long[1024];
+        private int count;
+
+        private void record(long latencyMicros) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = latencyMicros;
+        }
+    }
+
+    /**
+     * Starts a stand-in server and runs a count/retrieve/search mix against it.  Arguments are
+     * name=value pairs: threads, seconds, hosts, services, latency, jitter, errorRate.
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String,String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            String[] parts = arg.split("=", 2);
+            options.put(parts[0], parts.length > 1 ? parts[1] : "");
+        }
+        int hosts = Integer.parseInt(options.getOrDefault("hosts", "500"));
+        NagiosStandInServer server = new NagiosStandInServer("KEY");
+        server.setHosts(hosts);
+        server.setServicesPerHost(Integer.parseInt(options.getOrDefault("services", "10")));
+        server.setLatency(Long.parseLong(options.getOrDefault("latency", "10")),
+            Long.parseLong(options.getOrDefault("jitter", "5")));
+        server.setErrorRate(Double.parseDouble(options.getOrDefault("errorRate", "0")));
+        server.start();
+
+        NagiosXiAdapter adapter = new NagiosXiAdapter();
+        Map<String,String> configuration = new HashMap<>();
+        configuration.put(NagiosXiAdapter.Properties.API_KEY, "KEY");
+        configuration.put(NagiosXiAdapter.Properties.API_URL, server.getUrl());
+        adapter.setProperties(configuration);
+        try {
+            adapter.initialize();
+            NagiosLoadHarness harness = new NagiosLoadHarness(adapter, server);
+            addDefaultMix(harness, hosts);
+            Report report = harness.run(Integer.parseInt(options.getOrDefault("threads", "16")),
+                TimeUnit.SECONDS.toMillis(Long.parseLong(options.getOrDefault("seconds", "10"))));
+            System.out.println(report);
+        } finally {
+            adapter.destroy();
+            server.stop();
+        }
+    }
+
+    /** A mix of host counts, host retrieves and service status searches. */
+    public static void addDefaultMix(NagiosLoadHarness harness, int hosts) {
+        harness.addOperation(2, (adapter) -> adapter.count(
+            request("objects/hoststatus", "current_state=0", "host_name")));
+        harness.addOperation(3, (adapter) -> adapter.retrieve(request("objects/host",
+            String.format("host_name=host%05d", ThreadLocalRandom.current().nextInt(hosts)), "host_name", "address")));
+        harness.addOperation(5, (adapter) -> adapter.search(request("objects/servicestatus",
+            String.format("host_name=host%05d", ThreadLocalRandom.current().nextInt(hosts)),
+            "host_name", "service_description", "current_state", "output")));
+    }
+
+    private static BridgeRequest request(String structure, String query, String... fields) {
+        BridgeRequest request = new BridgeRequest();
+        request.setStructure(structure);
+        request.setQuery(query);
+        request.setFields(Arrays.asList(fields));
+        request.setMetadata(new HashMap<>());
+        request.setParameters(new HashMap<>());
+        return request;
+    }
+}
@@ -0,0 +1,57 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import net.minidev.json.JSONObject;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class NagiosMembershipIndexTest {
+
+    @Test
+    public void test_flattenGroupsIntoMemberRows() throws Exception {
+        List<Object> groups = new ArrayList<>(NagiosFixtures.groupMembers("objects/servicegroupmembers", 2, 4, 3));
+        // A group with a single member may hold it as an object rather than a list.
+        JSONObject member = new JSONObject();
+        member.put("host_name", "db01");
+        member.put("service_description", "MySQL");
+        JSONObject members = new JSONObject();
+        members.put("service", member);
+        JSONObject single = new JSONObject();
+        single.put("servicegroup_name", "databases");
+        single.put("members", members);
+        groups.add(single);
+
+        List<Object> rows = NagiosMembershipIndex.flatten("objects/servicegroupmembers", groups);
+
+        assertEquals(13, rows.size());
+        Map<?,?> first = (Map<?,?>)rows.get(0);
+        assertEquals("group00", first.get("servicegroup_name"));
+        assertEquals("500", first.get("servicegroup_object_id"));
+        assertEquals("host00000", first.get("host_name"));
+        assertEquals("Service 000", first.get("service_description"));
+        assertEquals("1000000", first.get("service_object_id"));
+        assertFalse(first.containsKey("members"));
+        assertEquals("MySQL", ((Map<?,?>)rows.get(12)).get("service_description"));
+    }
+
+    @Test
+    public void test_selectByGroupAndByMember() throws Exception {
+        NagiosMembershipIndex index = new NagiosMembershipIndex(
+            Collections.singleton("objects/hostgroupmembership"),
+            (structure) -> new ArrayList<>(NagiosFixtures.groupMembers(structure, 3, 10, 1)));
+
+        List<Object> members = index.select("objects/hostgroupmembership",
+            NagiosQueryFilter.parse("hostgroup_name=group01"), NagiosQueryFilter.toComparator("host_name:d"));
+        List<Object> groups = index.select("objects/hostgroupmembership",
+            NagiosQueryFilter.parse("host_name=host00004"), null);
+
+        assertEquals(3, members.size());
+        assertEquals("host00007", ((Map<?,?>)members.get(0)).get("host_name"));
+        assertEquals(1, groups.size());
+        assertEquals("group01", ((Map<?,?>)groups.get(0)).get("hostgroup_name"));
+        assertEquals(Long.valueOf(10), index.getStats().get("objects/hostgroupmembership.size"));
+    }
+}
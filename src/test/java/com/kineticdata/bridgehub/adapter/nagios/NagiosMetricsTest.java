@@ -0,0 +1,47 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class NagiosMetricsTest {
+
+    @Test
+    public void test_histogramPercentiles() throws Exception {
+        NagiosMetrics.Histogram histogram = new NagiosMetrics.Histogram();
+        for (int i = 0; i < 990; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(50));
+        }
+
+        assertEquals(1000, histogram.count());
+        // Percentiles are bucket upper bounds, within a factor of two of the recorded value.
+        assertTrue(histogram.percentileMicros(0.5) >= 100 && histogram.percentileMicros(0.5) < 200);
+        assertTrue(histogram.percentileMicros(0.999) >= 50000);
+        assertEquals(50000, histogram.maxMicros());
+    }
+
+    @Test
+    public void test_timeRecordsOutcomes() throws Exception {
+        NagiosMetrics metrics = new NagiosMetrics();
+        assertEquals("ok", metrics.time("count", "objects/host", () -> "ok"));
+        try {
+            metrics.time("count", "objects/host", () -> {
+                throw new BridgeError("Failed");
+            });
+            fail("Expected the operation to fail.");
+        } catch (BridgeError e) {
+            assertEquals("Failed", e.getMessage());
+        }
+
+        Map<String,Long> snapshot = metrics.getSnapshot();
+        assertEquals(Long.valueOf(2), snapshot.get("count objects/host.operations"));
+        assertEquals(Long.valueOf(1), snapshot.get("count objects/host.errors"));
+        assertEquals(Long.valueOf(2), snapshot.get("count objects/host.total.count"));
+        assertEquals(Long.valueOf(0), snapshot.get("inFlight"));
+    }
+}
@@ -0,0 +1,69 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import net.minidev.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class NagiosMirrorTest {
+
+    private NagiosMirror.Snapshot snapshot;
+
+    @Before
+    public void setSnapshot() {
+        List<Object> elements = new ArrayList<>();
+        elements.add(service("web01", "HTTP", "0"));
+        elements.add(service("web01", "SSH", "2"));
+        elements.add(service("web02", "HTTP", "1"));
+        elements.add(service("db01", "MySQL", "2"));
+        snapshot = new NagiosMirror.Snapshot(elements, new HashSet<>(Arrays.asList("host_name", "current_state")));
+    }
+
+    @Test
+    public void test_equalityUsesIndex() throws Exception {
+        List<Object> matches = snapshot.select(NagiosQueryFilter.parse("host_name=web01"), null);
+
+        assertEquals(2, matches.size());
+        assertEquals("HTTP", ((Map)matches.get(0)).get("service_description"));
+    }
+
+    @Test
+    public void test_operators() throws Exception {
+        assertEquals(2, snapshot.select(NagiosQueryFilter.parse("current_state=in:1,2.0&host_name=ne:web02"), null).size());
+        assertEquals(3, snapshot.select(NagiosQueryFilter.parse("host_name=lk:web"), null).size());
+        assertEquals(1, snapshot.select(NagiosQueryFilter.parse("host_name=lk:db%25"), null).size());
+        assertEquals(3, snapshot.select(NagiosQueryFilter.parse("current_state=gte:1"), null).size());
+        assertEquals(1, snapshot.select(NagiosQueryFilter.parse("current_state=lt:1"), null).size());
+    }
+
+    @Test
+    public void test_orderBy() throws Exception {
+        List<Object> matches = snapshot.select(NagiosQueryFilter.parse(""),
+            NagiosQueryFilter.toComparator("current_state:d,host_name:a"));
+
+        assertEquals("db01", ((Map)matches.get(0)).get("host_name"));
+        assertEquals("web01", ((Map)matches.get(1)).get("host_name"));
+        assertEquals("0", ((Map)matches.get(3)).get("current_state"));
+    }
+
+    @Test
+    public void test_unsupportedQueryIsDeclined() throws Exception {
+        assertNull(NagiosQueryFilter.parse("host_name=web01&starttime=12345"));
+    }
+
+    /*
+    * PRIVATE HELPER METHODS
+    */
+    private JSONObject service(String host, String service, String state) {
+        JSONObject element = new JSONObject();
+        element.put("host_name", host);
+        element.put("service_description", service);
+        element.put("current_state", state);
+        return element;
+    }
+}
@@ -0,0 +1,65 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class NagiosObjectCacheTest {
+
+    private static final Map<String,List<String[]>> KEYS = Collections.singletonMap("objects/service",
+        Arrays.asList(new String[] {"service_object_id"}, new String[] {"host_name", "service_description"}));
+
+    @Test
+    public void test_answersCompleteKeysThatMatchTheWholeFilter() {
+        NagiosObjectCache cache = new NagiosObjectCache(KEYS, 60000, 100);
+        Map<String,Object> service = service("1000001", "host00001", "Service 001", "0");
+        cache.put("objects/service", service);
+
+        assertSame(service, cache.get("objects/service", NagiosQueryFilter.parse("service_object_id=1000001")));
+        assertSame(service, cache.get("objects/service",
+            NagiosQueryFilter.parse("host_name=host00001&service_description=Service 001")));
+        // Part of a compound key, or a key with a condition the object fails, goes to Nagios XI.
+        assertNull(cache.get("objects/service", NagiosQueryFilter.parse("host_name=host00001")));
+        assertNull(cache.get("objects/service", NagiosQueryFilter.parse("service_object_id=1000001&current_state=2")));
+        assertNull(cache.get("objects/host", NagiosQueryFilter.parse("host_name=host00001")));
+
+        cache.invalidate("objects/service");
+        assertNull(cache.get("objects/service", NagiosQueryFilter.parse("service_object_id=1000001")));
+        assertEquals(Long.valueOf(2), cache.getStats().get("hits"));
+    }
+
+    @Test
+    public void test_evictsLeastRecentlyUsedAndExpires() throws Exception {
+        NagiosObjectCache cache = new NagiosObjectCache(KEYS, 60000, 4);
+        cache.put("objects/service", service("1", "host00001", "Service 001", "0"));
+        cache.put("objects/service", service("2", "host00001", "Service 002", "0"));
+        cache.get("objects/service", NagiosQueryFilter.parse("service_object_id=1"));
+        cache.put("objects/service", service("3", "host00001", "Service 003", "0"));
+
+        assertNotNull(cache.get("objects/service", NagiosQueryFilter.parse("service_object_id=1")));
+        assertNull(cache.get("objects/service", NagiosQueryFilter.parse("service_object_id=2")));
+        assertEquals(Long.valueOf(4), cache.getStats().get("size"));
+
+        NagiosObjectCache expiring = new NagiosObjectCache(KEYS, 1, 4);
+        expiring.put("objects/service", service("1", "host00001", "Service 001", "0"));
+        Thread.sleep(5);
+        assertNull(expiring.get("objects/service", NagiosQueryFilter.parse("service_object_id=1")));
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PRIVATE HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    private Map<String,Object> service(String id, String host, String description, String state) {
+        Map<String,Object> service = new LinkedHashMap<>();
+        service.put("service_object_id", id);
+        service.put("host_name", host);
+        service.put("service_description", description);
+        service.put("current_state", state);
+        return service;
+    }
+}
@@ -0,0 +1,67 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import com.kineticdata.bridgehub.adapter.RecordList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class NagiosPrefetcherTest {
+
+    @Test
+    public void test_prefetchedPagesAreServedOnce() throws Exception {
+        NagiosPrefetcher prefetcher = new NagiosPrefetcher(10, 60000, () -> false);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        RecordList page = new RecordList(Collections.singletonList("host_name"), new ArrayList<>());
+        try {
+            // A page already being prefetched isn't prefetched again.
+            prefetcher.prefetch("page 2", () -> {
+                loads.incrementAndGet();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new BridgeError(e);
+                }
+                return page;
+            });
+            prefetcher.prefetch("page 2", () -> {
+                loads.incrementAndGet();
+                return page;
+            });
+            release.countDown();
+            while (prefetcher.getStats().get("completed") == 0) {
+                Thread.sleep(5);
+            }
+
+            assertSame(page, prefetcher.take("page 2"));
+            assertNull(prefetcher.take("page 3"));
+            assertEquals(1, loads.get());
+            assertEquals(Long.valueOf(1), prefetcher.getStats().get("hits"));
+            assertEquals(Long.valueOf(1), prefetcher.getStats().get("misses"));
+        } finally {
+            prefetcher.close();
+        }
+    }
+
+    @Test
+    public void test_throttledUnderPressure() throws Exception {
+        AtomicBoolean busy = new AtomicBoolean(true);
+        NagiosPrefetcher prefetcher = new NagiosPrefetcher(10, 60000, busy::get);
+        try {
+            prefetcher.prefetch("page 2", () -> {
+                fail("Expected the prefetch to be skipped while the backend is busy.");
+                return null;
+            });
+
+            assertEquals(Long.valueOf(1), prefetcher.getStats().get("throttled"));
+            assertEquals(Long.valueOf(0), prefetcher.getStats().get("scheduled"));
+        } finally {
+            prefetcher.close();
+        }
+    }
+}
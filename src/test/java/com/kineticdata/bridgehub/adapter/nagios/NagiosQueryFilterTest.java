@@ -0,0 +1,53 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class NagiosQueryFilterTest {
+
+    @Test
+    public void test_mixedValuesHaveOneOrder() throws Exception {
+        Comparator<Object> order = NagiosQueryFilter.toComparator("output:a");
+        List<Object> expected = Arrays.asList(
+            element(null), element("-1"), element("9"), element("10"), element("1a"), element("Abc"), element("b"));
+        Random random = new Random(1);
+        for (int i = 0; i < 20; i++) {
+            List<Object> elements = new ArrayList<>(expected);
+            Collections.shuffle(elements, random);
+            elements.sort(order);
+            assertEquals(expected, elements);
+        }
+    }
+
+    @Test
+    public void test_everyOperatorIgnoresCase() throws Exception {
+        Object element = element("WEB01");
+
+        assertTrue(NagiosQueryFilter.parse("output=web01").matches(element));
+        assertFalse(NagiosQueryFilter.parse("output=ne:Web01").matches(element));
+        assertTrue(NagiosQueryFilter.parse("output=in:web02,web01").matches(element));
+        assertFalse(NagiosQueryFilter.parse("output=nin:web01").matches(element));
+        assertTrue(NagiosQueryFilter.parse("output=lk:eb0").matches(element));
+        assertTrue(NagiosQueryFilter.parse("output=gte:web01").matches(element));
+        assertEquals(NagiosQueryFilter.normalize("web01"), NagiosQueryFilter.normalize("WEB01"));
+        assertEquals(NagiosQueryFilter.normalize("1"), NagiosQueryFilter.normalize("1.0"));
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PRIVATE HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    private static Object element(String output) {
+        Map<String,Object> element = new HashMap<>();
+        element.put("output", output);
+        return element;
+    }
+}
@@ -0,0 +1,83 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import com.kineticdata.bridgehub.adapter.BridgeRequest;
+import com.kineticdata.bridgehub.adapter.Record;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import net.minidev.json.JSONObject;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class NagiosRecordTableTest {
+
+    @Test
+    public void test_rowsMatchRecordValues() throws Exception {
+        NagiosRequestPlan plan = plan("host_name", "current_state", "last_check", "missing");
+        NagiosRecordTable table = new NagiosRecordTable(plan.getFields());
+        JSONObject first = service("web01", "0", "2019-05-01 10:00:00");
+        JSONObject second = service("web02", "2", "2019-05-01 10:01:00");
+        table.add(plan, first);
+        table.add(plan, second);
+
+        List<Record> records = table.getRecords();
+        assertEquals(2, records.size());
+        assertEquals(plan.toRecordValues(first), records.get(0).getRecord());
+        assertEquals(plan.toRecordValues(second), records.get(1).getRecord());
+        assertEquals("2", records.get(1).getValue("current_state"));
+    }
+
+    @Test
+    public void test_numericColumnFallsBackToText() throws Exception {
+        NagiosRequestPlan plan = plan("current_state");
+        NagiosRecordTable table = new NagiosRecordTable(plan.getFields());
+        for (String state : Arrays.asList("1", null, "-7", "007", "3.5", "12")) {
+            JSONObject element = new JSONObject();
+            element.put("current_state", state);
+            table.add(plan, element);
+        }
+
+        List<Record> records = table.getRecords();
+        assertEquals("1", records.get(0).getValue("current_state"));
+        assertNull(records.get(1).getValue("current_state"));
+        assertEquals("-7", records.get(2).getValue("current_state"));
+        assertEquals("007", records.get(3).getValue("current_state"));
+        assertEquals("3.5", records.get(4).getValue("current_state"));
+        assertEquals("12", records.get(5).getValue("current_state"));
+    }
+
+    @Test
+    public void test_numericColumnsWeighLess() throws Exception {
+        NagiosRequestPlan plan = plan("current_state");
+        NagiosRecordTable table = new NagiosRecordTable(plan.getFields());
+        for (int i = 0; i < 1000; i++) {
+            JSONObject element = new JSONObject();
+            element.put("current_state", String.valueOf(i % 3));
+            table.add(plan, element);
+        }
+
+        Map<String,Object> values = plan.toRecordValues(service("web01", "1", ""));
+        assertTrue(table.estimateWeight() < 1000 * NagiosResponseCache.estimateWeight(values));
+    }
+
+    /*
+    * PRIVATE HELPER METHODS
+    */
+    private NagiosRequestPlan plan(String... fields) throws Exception {
+        BridgeRequest request = new BridgeRequest();
+        request.setStructure("objects/servicestatus");
+        request.setQuery("");
+        request.setFields(Arrays.asList(fields));
+        request.setMetadata(new HashMap<>());
+        return NagiosRequestPlan.compile(request);
+    }
+
+    private JSONObject service(String hostName, String state, String lastCheck) {
+        JSONObject element = new JSONObject();
+        element.put("host_name", hostName);
+        element.put("current_state", state);
+        element.put("last_check", lastCheck);
+        return element;
+    }
+}
@@ -0,0 +1,106 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import com.kineticdata.bridgehub.adapter.BridgeRequest;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import net.minidev.json.JSONObject;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class NagiosRequestPlanTest {
+
+    @Test
+    public void test_resolveQueryMatchesQualificationParser() throws Exception {
+        NagiosQualificationParser parser = new NagiosQualificationParser();
+        BridgeRequest request = request("objects/host",
+            "host_name=<%= parameter[\"Host\"] %>&address=<%= parameter[\"Address\"] %>");
+        Map<String,String> parameters = new HashMap<>();
+        parameters.put("Host", "web 01&x");
+        parameters.put("Address", "10.0.0.1");
+
+        assertEquals(
+            parser.parse(request.getQuery(), parameters),
+            NagiosRequestPlan.compile(request).resolveQuery(parameters, parser)
+        );
+    }
+
+    @Test
+    public void test_buildUrlWithOrder() throws Exception {
+        BridgeRequest request = request("objects/host/", "");
+        Map<String,String> metadata = new HashMap<>();
+        metadata.put("order", "<%=field[\"host_name\"]%>:DESC");
+        request.setMetadata(metadata);
+
+        NagiosRequestPlan plan = NagiosRequestPlan.compile(request);
+
+        assertEquals("host_name:d", plan.getOrderBy());
+        assertEquals(
+            "http://nagios/api/v1/objects/host?apikey=KEY&records=10%3A20&orderby=host_name%3Ad",
+            plan.buildUrl("http://nagios", "KEY", "search", "", "10", "20")
+        );
+    }
+
+    @Test
+    public void test_buildUrlWithOrderOverride() throws Exception {
+        NagiosRequestPlan plan = NagiosRequestPlan.compile(request("objects/hoststatus", "current_state=1"));
+
+        assertNull(plan.getOrderBy());
+        assertEquals(
+            "http://nagios/api/v1/objects/hoststatus?apikey=KEY&current_state=1&records=500%3A1500"
+                + "&orderby=host_object_id%3Aa",
+            plan.buildUrl("http://nagios", "KEY", "search", "current_state=1", "500", "1500", "host_object_id:a")
+        );
+    }
+
+    @Test
+    public void test_fieldExtraction() throws Exception {
+        BridgeRequest request = request("objects/host", "");
+        request.setFields(Arrays.asList("host_name", "$.custom.owner", "missing"));
+        JSONObject custom = new JSONObject();
+        custom.put("owner", "ops");
+        JSONObject element = new JSONObject();
+        element.put("host_name", "web01");
+        element.put("custom", custom);
+
+        Map<String,Object> values = NagiosRequestPlan.compile(request).toRecordValues(element);
+
+        assertEquals("web01", values.get("host_name"));
+        assertEquals("ops", values.get("$.custom.owner"));
+        assertNull(values.get("missing"));
+        try {
+            values.put("host_name", "web02");
+            fail("Expected the record values to be read-only.");
+        } catch (UnsupportedOperationException e) {
+            assertEquals("web01", values.get("host_name"));
+        }
+    }
+
+    @Test
+    public void test_cacheCountsHitsAndEvictions() throws Exception {
+        NagiosRequestPlan.Cache cache = new NagiosRequestPlan.Cache(1);
+        BridgeRequest hosts = request("objects/host", "");
+        BridgeRequest services = request("objects/service", "");
+
+        NagiosRequestPlan plan = cache.get(hosts);
+        assertSame(plan, cache.get(hosts));
+        cache.get(services);
+
+        Map<String,Long> stats = cache.getStats();
+        assertEquals(Long.valueOf(1), stats.get("hits"));
+        assertEquals(Long.valueOf(2), stats.get("misses"));
+        assertEquals(Long.valueOf(1), stats.get("evictions"));
+    }
+
+    /*
+    * PRIVATE HELPER METHODS
+    */
+    private BridgeRequest request(String structure, String query) {
+        BridgeRequest request = new BridgeRequest();
+        request.setStructure(structure);
+        request.setQuery(query);
+        request.setFields(Arrays.asList("host_name"));
+        request.setMetadata(new HashMap<>());
+        return request;
+    }
+}
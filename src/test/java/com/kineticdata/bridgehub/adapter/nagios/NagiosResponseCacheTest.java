@@ -0,0 +1,65 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class NagiosResponseCacheTest {
+
+    @Test
+    public void test_servesFreshEntriesWithoutLoading() throws Exception {
+        NagiosResponseCache cache = new NagiosResponseCache(10, 1024 * 1024, 0, Runnable::run);
+        AtomicInteger loads = new AtomicInteger();
+
+        assertEquals("a", cache.get("key", 60000, () -> { loads.incrementAndGet(); return "a"; }));
+        assertEquals("a", cache.get("key", 60000, () -> "b" + loads.incrementAndGet()));
+        assertEquals(1, loads.get());
+        assertEquals(Long.valueOf(1), cache.getStats().get("hits"));
+    }
+
+    @Test
+    public void test_staleEntryIsServedAndRefreshed() throws Exception {
+        NagiosResponseCache cache = new NagiosResponseCache(10, 1024 * 1024, 60000, Runnable::run);
+        cache.put("key", "old", -1);
+
+        // The stale value is returned, and the (synchronous) refresh replaces it.
+        assertEquals("old", cache.get("key", 60000, () -> "new"));
+        assertEquals("new", cache.peek("key"));
+        assertEquals(Long.valueOf(1), cache.getStats().get("refreshes"));
+    }
+
+    @Test
+    public void test_evictsLeastRecentlyUsed() throws Exception {
+        NagiosResponseCache cache = new NagiosResponseCache(2, 1024 * 1024, 0, Runnable::run);
+        cache.put("a", "a", 60000);
+        cache.put("b", "b", 60000);
+        cache.get("a", 60000, () -> "a");
+        cache.put("c", "c", 60000);
+
+        assertNull(cache.peek("b"));
+        assertEquals("a", cache.peek("a"));
+        assertEquals(Long.valueOf(1), cache.getStats().get("evictions"));
+    }
+
+    @Test
+    public void test_memoryBound() throws Exception {
+        NagiosResponseCache cache = new NagiosResponseCache(100, 150, 0, Runnable::run);
+        cache.put("a", "0123456789", 60000);
+        cache.put("b", "0123456789", 60000);
+        cache.put("c", "0123456789", 60000);
+
+        assertNull(cache.peek("a"));
+        assertTrue(cache.getStats().get("estimatedBytes") <= 150);
+    }
+
+    @Test
+    public void test_onlyAnsweredLastKnownValuesAreCounted() throws Exception {
+        NagiosResponseCache cache = new NagiosResponseCache(10, 1024 * 1024, 0, Runnable::run);
+        cache.put("key", "value", 60000);
+
+        assertEquals("value", cache.peekLastKnown("key"));
+        assertEquals(Long.valueOf(0), cache.getStats().get("lastKnownHits"));
+        cache.countLastKnownHit();
+        assertEquals(Long.valueOf(1), cache.getStats().get("lastKnownHits"));
+    }
+}
@@ -0,0 +1,90 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class NagiosResponseReaderTest {
+
+    private static final String HOST_RESPONSE = "{\"hostlist\":{\"recordcount\":\"2\",\"host\":["
+        + "{\"host_name\":\"web01\",\"address\":\"10.0.0.1\",\"custom\":{\"owner\":\"ops\"}},"
+        + "{\"host_name\":\"web02\",\"address\":\"10.0.0.2\",\"custom\":{\"owner\":\"dev\"}}"
+        + "]}}";
+
+    @Test
+    public void test_readsCountAndElements() throws Exception {
+        List<Object> elements = new ArrayList<>();
+        NagiosResponseReader.Summary summary = new NagiosResponseReader("$.hostlist.host")
+            .read(stream(HOST_RESPONSE), (element) -> elements.add(element));
+
+        assertEquals("2", summary.getRecordCount());
+        assertEquals(2, summary.getSize());
+        assertTrue(summary.isRootFound());
+        assertTrue(summary.isComplete());
+        assertEquals("web02", ((Map)elements.get(1)).get("host_name"));
+        assertEquals("dev", ((Map)((Map)elements.get(1)).get("custom")).get("owner"));
+    }
+
+    @Test
+    public void test_handlerCanStopRead() throws Exception {
+        List<Object> elements = new ArrayList<>();
+        NagiosResponseReader.Summary summary = new NagiosResponseReader("$.hostlist.host")
+            .read(stream(HOST_RESPONSE), (element) -> elements.add(element) && false);
+
+        assertEquals(1, elements.size());
+        assertFalse(summary.isComplete());
+    }
+
+    @Test
+    public void test_readCountStopsAtRecordCount() throws Exception {
+        // Everything after the record count is left unread, including the malformed tail.
+        String response = "{\"hostlist\":{\"recordcount\":\"5000\",\"host\":[{\"host_name\":";
+        NagiosResponseReader.Summary summary = new NagiosResponseReader("$.hostlist.host")
+            .readCount(stream(response));
+
+        assertEquals("5000", summary.getRecordCount());
+        assertEquals(0, summary.getSize());
+        assertFalse(summary.isComplete());
+    }
+
+    @Test
+    public void test_singleObjectRoot() throws Exception {
+        String response = "{\"hostlist\":{\"recordcount\":\"1\",\"host\":{\"host_name\":\"web01\"}}}";
+        NagiosResponseReader.Summary summary = new NagiosResponseReader("$.hostlist.host")
+            .read(stream(response), (element) -> true);
+
+        assertTrue(summary.isSingleObject());
+        assertEquals(1, summary.getSize());
+    }
+
+    @Test
+    public void test_missingRoot() throws Exception {
+        String response = "{\"hostlist\":{\"recordcount\":\"0\"}}";
+        NagiosResponseReader.Summary summary = new NagiosResponseReader("$.hostlist.host")
+            .read(stream(response), (element) -> true);
+
+        assertFalse(summary.isRootFound());
+        assertEquals("0", summary.getRecordCount());
+    }
+
+    @Test
+    public void test_wildcardRootSkipsScalars() throws Exception {
+        List<Object> elements = new ArrayList<>();
+        new NagiosResponseReader(NagiosXiAdapter.JSON_ROOT_DEFAULT)
+            .read(stream(HOST_RESPONSE), (element) -> elements.add(element));
+
+        assertEquals(2, elements.size());
+    }
+
+    /*
+    * PRIVATE HELPER METHODS
+    */
+    private InputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,110 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import com.kineticdata.bridgehub.adapter.BridgeRequest;
+import com.kineticdata.bridgehub.adapter.Record;
+import com.kineticdata.bridgehub.adapter.RecordList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class NagiosRetrieveBatcherTest {
+
+    @Test
+    public void test_fullBatchIsOneSearch() throws Exception {
+        List<String> queries = Collections.synchronizedList(new ArrayList<>());
+        NagiosRetrieveBatcher batcher = new NagiosRetrieveBatcher(
+            Collections.singletonMap("objects/host", "host_name"), 60000, 3, (search) -> {
+                queries.add(search.getQuery());
+                // web02 matches twice and web03 not at all.
+                return new RecordList(search.getFields(), Arrays.asList(
+                    record("web01", "10.0.0.1"), record("web02", "10.0.0.2"), record("web02", "10.0.0.3")));
+            });
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Map<String,Future<Record>> results = new LinkedHashMap<>();
+            for (String host : Arrays.asList("web01", "web02", "web03")) {
+                results.put(host, executor.submit(() -> batcher.retrieve(request(), "is_active=1&host_name=" + host)));
+            }
+
+            assertEquals("10.0.0.1", results.get("web01").get().getValue("address"));
+            assertNull(results.get("web01").get().getValue("host_name"));
+            try {
+                results.get("web02").get();
+                fail("Expected two matches to fail the retrieve.");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof BridgeError);
+            }
+            // Without a match of its own web03 is left to the normal retrieve path.
+            assertNull(results.get("web03").get());
+            assertEquals(1, queries.size());
+            assertTrue(queries.get(0).startsWith("is_active=1&host_name=in:"));
+            assertEquals(Long.valueOf(2), batcher.getStats().get("retrieves"));
+            assertEquals(Long.valueOf(1), batcher.getStats().get("unmatched"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void test_valuesMatchedUnderAnotherSpellingFallBack() throws Exception {
+        NagiosRetrieveBatcher batcher = new NagiosRetrieveBatcher(
+            Collections.singletonMap("objects/host", "host_name"), 60000, 2, (search) -> {
+                // Nagios XI answers WEB01 with web01, and web02 with a record named differently.
+                return new RecordList(search.getFields(), Arrays.asList(
+                    record("web01", "10.0.0.1"), record("web02.example.com", "10.0.0.2")));
+            });
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Record> upper = executor.submit(() -> batcher.retrieve(request(), "host_name=WEB01"));
+            Future<Record> other = executor.submit(() -> batcher.retrieve(request(), "host_name=web02"));
+
+            assertEquals("10.0.0.1", upper.get().getValue("address"));
+            assertNull(other.get());
+            assertEquals(Long.valueOf(1), batcher.getStats().get("retrieves"));
+            assertEquals(Long.valueOf(1), batcher.getStats().get("unmatched"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void test_unbatchableRetrievesAreLeftAlone() throws Exception {
+        NagiosRetrieveBatcher batcher = new NagiosRetrieveBatcher(
+            Collections.singletonMap("objects/host", "host_name"), 10, 50, (search) -> {
+                throw new BridgeError("Unexpected search");
+            });
+
+        assertNull(batcher.retrieve(request(), "host_name=web01"));
+        assertNull(batcher.retrieve(request(), "host_name=in:web01,web02"));
+        assertNull(batcher.retrieve(request(), "address=10.0.0.1"));
+        assertEquals(Long.valueOf(1), batcher.getStats().get("single"));
+        assertEquals(Long.valueOf(0), batcher.getStats().get("batches"));
+    }
+
+    private static BridgeRequest request() {
+        BridgeRequest request = new BridgeRequest();
+        request.setStructure("objects/host");
+        request.setFields(Collections.singletonList("address"));
+        request.setMetadata(new HashMap<>());
+        request.setParameters(new HashMap<>());
+        return request;
+    }
+
+    private static Record record(String hostName, String address) {
+        Map<String,Object> values = new HashMap<>();
+        values.put("host_name", hostName);
+        values.put("address", address);
+        return new Record(values);
+    }
+}
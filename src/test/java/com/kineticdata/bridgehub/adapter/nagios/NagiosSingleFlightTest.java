@@ -0,0 +1,89 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class NagiosSingleFlightTest {
+
+    @Test
+    public void test_concurrentCallsShareOneLoad() throws Exception {
+        NagiosSingleFlight singleFlight = new NagiosSingleFlight(5000);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(executor.submit(() -> singleFlight.execute("key", () -> {
+                    loads.incrementAndGet();
+                    await(release);
+                    return "value";
+                })));
+            }
+            while (singleFlight.getStats().get("coalesced") < 3) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+            for (Future<String> result : results) {
+                assertEquals("value", result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void test_errorsReachEveryWaiter() throws Exception {
+        NagiosSingleFlight singleFlight = new NagiosSingleFlight(5000);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Object> leader = executor.submit(() -> singleFlight.execute("key", () -> {
+                await(release);
+                throw new BridgeError("boom");
+            }));
+            while (singleFlight.getStats().get("inFlight") == 0) {
+                Thread.sleep(5);
+            }
+            Future<Object> waiter = executor.submit(() -> singleFlight.execute("key", () -> "unused"));
+            while (singleFlight.getStats().get("coalesced") == 0) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+            assertEquals("boom", causeMessage(leader));
+            assertEquals("boom", causeMessage(waiter));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /*
+    * PRIVATE HELPER METHODS
+    */
+    private String causeMessage(Future<?> future) throws InterruptedException {
+        try {
+            future.get();
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause().getMessage();
+        }
+    }
+
+    private void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
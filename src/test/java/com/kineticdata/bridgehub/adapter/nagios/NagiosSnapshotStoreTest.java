@@ -0,0 +1,82 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class NagiosSnapshotStoreTest {
+
+    private static final String SOURCE = "https://nagios.example.com/nagiosxi";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void test_roundTrip() throws Exception {
+        NagiosSnapshotStore store = new NagiosSnapshotStore(folder.getRoot().toPath().resolve("warm"), SOURCE);
+        List<Object> elements = Arrays.asList(host("host00001", 1001L), host("hôte ☃", 1002L));
+        store.write("objects/host", elements, 1234L);
+
+        NagiosSnapshotStore.StoredSnapshot snapshot = store.read("objects/host");
+
+        assertEquals(elements, snapshot.getElements());
+        assertEquals(1234L, snapshot.getLoadedAt());
+        assertNull(store.read("objects/service"));
+        assertEquals(Long.valueOf(1), store.getStats().get("writes"));
+        assertEquals(Long.valueOf(1), store.getStats().get("reads"));
+    }
+
+    @Test
+    public void test_discardsCorruptAndMismatchedFiles() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        NagiosSnapshotStore store = new NagiosSnapshotStore(directory, SOURCE);
+        List<Object> elements = Arrays.asList(host("host00001", 1001L));
+
+        // A flipped payload byte fails the checksum.
+        store.write("objects/host", elements, 1234L);
+        Path file = store.fileFor("objects/host");
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(raf.length() - 1);
+            int last = raf.read();
+            raf.seek(raf.length() - 1);
+            raf.write(last ^ 0xFF);
+        }
+        assertNull(store.read("objects/host"));
+        assertFalse(Files.exists(file));
+
+        // A snapshot of another Nagios XI server isn't used either.
+        store.write("objects/host", elements, 1234L);
+        assertNull(new NagiosSnapshotStore(directory, "https://other.example.com/nagiosxi").read("objects/host"));
+
+        // Nor is a truncated file.
+        store.write("objects/host", elements, 1234L);
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(raf.length() / 2);
+        }
+        assertNull(store.read("objects/host"));
+        assertEquals(Long.valueOf(2), store.getStats().get("discarded"));
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PRIVATE HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    private Map<String,Object> host(String name, long id) {
+        Map<String,Object> host = new LinkedHashMap<>();
+        host.put("host_name", name);
+        host.put("host_object_id", id);
+        host.put("latency", 0.25);
+        host.put("is_flapping", false);
+        host.put("notes", null);
+        host.put("members", Arrays.asList("a", 1L));
+        return host;
+    }
+}
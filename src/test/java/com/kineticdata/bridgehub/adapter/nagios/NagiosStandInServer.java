@@ -0,0 +1,360 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+import net.minidev.json.JSONObject;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * An in-process stand-in for the Nagios XI API, for tests and load runs without a real server.
+ *
+ * It serves <code>/nagiosxi/api/v1/system/status</code> and every structure in
+ * {@link NagiosQualificationParser#jsonPathMapping} from data generated by {@link NagiosFixtures},
+ * honouring <code>records</code>, <code>orderby</code>, <code>starttime</code>/<code>endtime</code>,
+ * <code>totals</code> (optionally answering like the versions whose recordcount is only the size
+ * of the response) and the filters understood by {@link NagiosQueryFilter}.  Latency, jitter,
+ * error rate and body streaming speed can be set before the server is started.
+ */
+public class NagiosStandInServer {
+
+    private static final DateTimeFormatter NAGIOS_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final String apiKey;
+    private int hosts = 100;
+    private int servicesPerHost = 10;
+    private int historyDepth = 20;
+    private int width = 20;
+    private long latencyMillis;
+    private long jitterMillis;
+    private double errorRate;
+    private long bytesPerSecond;
+    private volatile boolean etags;
+    private volatile boolean pageRecordCounts;
+    private final AtomicInteger stalls = new AtomicInteger();
+    private volatile long stallMillis;
+
+    private final Map<String,List<JSONObject>> data = new ConcurrentHashMap<>();
+    private final Set<String> clientSockets = ConcurrentHashMap.newKeySet();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong injectedErrors = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private volatile String lastRequestUri;
+    private final List<String> requestUris = new CopyOnWriteArrayList<>();
+    private volatile String failingRequests;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public NagiosStandInServer(String apiKey) {
+        this.apiKey = apiKey;
+    }
+
+    /** Number of hosts; host structures have one element per host. */
+    public void setHosts(int hosts) {
+        this.hosts = hosts;
+    }
+
+    /** Services per host; service structures have hosts * servicesPerHost elements. */
+    public void setServicesPerHost(int servicesPerHost) {
+        this.servicesPerHost = servicesPerHost;
+    }
+
+    /** History entries per host in objects/statehistory and objects/logentries, one minute apart. */
+    public void setHistoryDepth(int historyDepth) {
+        this.historyDepth = historyDepth;
+    }
+
+    /** Fields per generated element. */
+    public void setWidth(int width) {
+        this.width = width;
+    }
+
+    /** Delay before each response, plus a uniformly random extra delay of up to the jitter. */
+    public void setLatency(long latencyMillis, long jitterMillis) {
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+    }
+
+    /** Fraction (0 to 1) of requests answered with an HTTP 500. */
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    /** Holds the next <code>requests</code> requests for an extra <code>millis</code> before answering. */
+    public void setStalls(int requests, long millis) {
+        this.stallMillis = millis;
+        this.stalls.set(requests);
+    }
+
+    /** Streams response bodies at about this rate; 0 writes them as fast as possible. */
+    public void setBytesPerSecond(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /** Answers every request whose raw query contains the text with an HTTP 500; null stops it. */
+    public void setFailingRequests(String queryText) {
+        this.failingRequests = queryText;
+    }
+
+    /** Sends an ETag with each response and answers a matching If-None-Match with a 304. */
+    public void setEtags(boolean etags) {
+        this.etags = etags;
+    }
+
+    /**
+     * Answers like the Nagios XI versions whose recordcount is the number of records in the
+     * response rather than the total, and which don't know the totals option.
+     */
+    public void setPageRecordCounts(boolean pageRecordCounts) {
+        this.pageRecordCounts = pageRecordCounts;
+    }
+
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 200);
+        executor = Executors.newCachedThreadPool((runnable) -> {
+            Thread thread = new Thread(runnable, "nagios-stand-in");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/nagiosxi/api/v1/", this::handle);
+        server.start();
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    /** The value for the adapter's 'Nagios XI URL' property. */
+    public String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/nagiosxi";
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /** The path and query of the last request received. */
+    public String getLastRequestUri() {
+        return lastRequestUri;
+    }
+
+    /** The path and query of every request received, in the order they arrived. */
+    public List<String> getRequestUris() {
+        return requestUris;
+    }
+
+    /** The most requests that were being answered at the same time. */
+    public int getMaxConcurrentRequests() {
+        return maxInFlight.get();
+    }
+
+    public long getInjectedErrorCount() {
+        return injectedErrors.get();
+    }
+
+    /** Number of distinct client sockets that have sent requests. */
+    public int getConnectionCount() {
+        return clientSockets.size();
+    }
+
+    /** The generated elements of a structure, as served (before filtering and paging). */
+    public List<JSONObject> getElements(String structure) {
+        return data.computeIfAbsent(structure, (key) -> {
+            if (structure.endsWith("groupmembers")) {
+                return NagiosFixtures.groupMembers(structure, Math.min(hosts, 20), hosts, servicesPerHost);
+            } else if (structure.equals("objects/statehistory") || structure.equals("objects/logentries")) {
+                return NagiosFixtures.elements(structure, hosts * historyDepth, historyDepth, width);
+            } else if (structure.contains("service") && structure.contains("group") == false) {
+                return NagiosFixtures.elements(structure, hosts * servicesPerHost, servicesPerHost, width);
+            } else if (structure.contains("group")) {
+                return NagiosFixtures.elements(structure, Math.min(hosts, 20), 1, width);
+            }
+            return NagiosFixtures.elements(structure, hosts, 1, width);
+        });
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PRIVATE HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        String uri = exchange.getRequestURI().getRawPath() + "?" + exchange.getRequestURI().getRawQuery();
+        lastRequestUri = uri;
+        requestUris.add(uri);
+        clientSockets.add(String.valueOf(exchange.getRemoteAddress()));
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try {
+            delay();
+            String failing = failingRequests;
+            if ((errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate)
+                || (failing != null && uri.contains(failing)))
+            {
+                injectedErrors.incrementAndGet();
+                respond(exchange, 500, "{\"error\":\"Injected failure\"}");
+                return;
+            }
+            Map<String,String> parameters = new LinkedHashMap<>();
+            List<String> filters = new ArrayList<>();
+            readQuery(exchange.getRequestURI().getRawQuery(), parameters, filters);
+            String path = StringUtils.substringAfter(exchange.getRequestURI().getPath(), "/api/v1/");
+
+            if (apiKey.equals(parameters.get("apikey")) == false) {
+                respond(exchange, 200, "{\"error\":\"Invalid API Key\"}");
+            } else if (path.equals("system/status")) {
+                respond(exchange, 200, "{\"instance_id\":\"1\",\"is_currently_running\":\"1\"}");
+            } else if (NagiosQualificationParser.jsonPathMapping.containsKey(path)) {
+                respond(exchange, 200, select(path, parameters, filters));
+            } else {
+                respond(exchange, 200, "{\"error\":\"No API Verb Specified.\"}");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            inFlight.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    private String select(String structure, Map<String,String> parameters, List<String> filters) {
+        NagiosQueryFilter filter = NagiosQueryFilter.parse(StringUtils.join(filters, "&"));
+        String timeField = NagiosHistoryStore.TIME_FIELDS.get(structure);
+        long startTime = parseLong(parameters.get("starttime"), Long.MIN_VALUE);
+        long endTime = parseLong(parameters.get("endtime"), Long.MAX_VALUE);
+
+        List<JSONObject> matches = new ArrayList<>();
+        for (JSONObject element : getElements(structure)) {
+            if (filter != null && filter.matches(element) == false) {
+                continue;
+            }
+            if (timeField != null) {
+                long time = LocalDateTime.parse((String)element.get(timeField), NAGIOS_TIME)
+                    .toEpochSecond(ZoneOffset.UTC);
+                if (time < startTime || time > endTime) {
+                    continue;
+                }
+            }
+            matches.add(element);
+        }
+        Comparator<Object> order = NagiosQueryFilter.toComparator(parameters.get("orderby"));
+        if (order != null) {
+            matches.sort(order);
+        }
+        if (parameters.containsKey("totals") && pageRecordCounts == false) {
+            return NagiosFixtures.response(structure, new ArrayList<>(), matches.size());
+        }
+
+        List<JSONObject> page = matches;
+        if (parameters.containsKey("records")) {
+            String[] window = parameters.get("records").split(":");
+            int size = (int)parseLong(window[0], matches.size());
+            int offset = window.length > 1 ? (int)Math.min(parseLong(window[1], 0), matches.size()) : 0;
+            page = matches.subList(offset, Math.min(matches.size(), offset + Math.max(0, size)));
+        }
+        return NagiosFixtures.response(structure, page, pageRecordCounts ? page.size() : matches.size());
+    }
+
+    private static void readQuery(String rawQuery, Map<String,String> parameters, List<String> filters)
+        throws UnsupportedEncodingException
+    {
+        if (rawQuery == null) {
+            return;
+        }
+        for (String pair : rawQuery.split("&")) {
+            String name = URLDecoder.decode(StringUtils.substringBefore(pair, "="), "UTF-8");
+            switch (name) {
+                case "apikey":
+                case "records":
+                case "orderby":
+                case "starttime":
+                case "endtime":
+                case "totals":
+                case "pretty":
+                case "brevity":
+                    parameters.put(name, URLDecoder.decode(StringUtils.substringAfter(pair, "="), "UTF-8"));
+                    break;
+                default:
+                    filters.add(pair);
+            }
+        }
+    }
+
+    private void respond(HttpExchange exchange, int status, String body) throws IOException, InterruptedException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        if (etags && status == 200) {
+            String etag = "\"" + Integer.toHexString(body.hashCode()) + "\"";
+            exchange.getResponseHeaders().add("ETag", etag);
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+        }
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        if (gzip) {
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+        }
+        // Compressed and throttled bodies are streamed with chunked encoding.
+        exchange.sendResponseHeaders(status, gzip || bytesPerSecond > 0 ? 0 : bytes.length);
+        try (OutputStream output = gzip
+            ? new GZIPOutputStream(exchange.getResponseBody())
+            : exchange.getResponseBody())
+        {
+            int chunk = bytesPerSecond > 0 ? (int)Math.max(1, Math.min(8192, bytesPerSecond / 10)) : bytes.length;
+            for (int offset = 0; offset < bytes.length; offset += chunk) {
+                output.write(bytes, offset, Math.min(chunk, bytes.length - offset));
+                if (bytesPerSecond > 0) {
+                    output.flush();
+                    Thread.sleep(1000L * chunk / bytesPerSecond);
+                }
+            }
+        }
+    }
+
+    private void delay() throws InterruptedException {
+        long delay = latencyMillis + (jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0);
+        if (stalls.getAndUpdate((remaining) -> Math.max(0, remaining - 1)) > 0) {
+            delay += stallMillis;
+        }
+        if (delay > 0) {
+            Thread.sleep(delay);
+        }
+    }
+
+    private static long parseLong(String value, long defaultValue) {
+        try {
+            return value == null ? defaultValue : Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
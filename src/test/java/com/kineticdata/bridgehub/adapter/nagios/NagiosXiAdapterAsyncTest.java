@@ -0,0 +1,101 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import com.kineticdata.bridgehub.adapter.BridgeRequest;
+import com.kineticdata.bridgehub.adapter.Count;
+import com.kineticdata.bridgehub.adapter.RecordList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class NagiosXiAdapterAsyncTest {
+
+    private NagiosXiAdapter adapter;
+
+    @Before
+    public void initializeAdapter() throws Exception {
+        // Nothing listens on port 1, so every call fails straight away.
+        Map<String,String> configuration = new HashMap<>();
+        configuration.put(NagiosXiAdapter.Properties.API_KEY, "KEY");
+        configuration.put(NagiosXiAdapter.Properties.API_URL, "http://127.0.0.1:1/nagiosxi");
+        adapter = new NagiosXiAdapter();
+        adapter.setProperties(configuration);
+        adapter.initialize_noAuth();
+    }
+
+    @After
+    public void destroyAdapter() {
+        adapter.destroy();
+    }
+
+    @Test
+    public void test_asyncFailureCarriesBridgeError() throws Exception {
+        CompletableFuture<Count> future = adapter.countAsync(request());
+        try {
+            future.get();
+            fail("Expected the count to fail.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof BridgeError);
+        }
+    }
+
+    @Test(expected = BridgeError.class)
+    public void test_batchThrowsFirstFailure() throws Exception {
+        adapter.searchBatch(Arrays.asList(request(), request()));
+    }
+
+    @Test
+    public void test_batchReturnsResultsInRequestOrderWithinTheThreadBound() throws Exception {
+        NagiosStandInServer server = new NagiosStandInServer("TEST_API_KEY");
+        server.setHosts(20);
+        // Uneven latencies make the searches finish out of order.
+        server.setLatency(20, 60);
+        server.start();
+        Map<String,String> configuration = new HashMap<>();
+        configuration.put(NagiosXiAdapter.Properties.API_KEY, "TEST_API_KEY");
+        configuration.put(NagiosXiAdapter.Properties.API_URL, server.getUrl() + "/");
+        configuration.put(NagiosXiAdapter.Properties.ASYNC_THREADS, "2");
+        NagiosXiAdapter bounded = new NagiosXiAdapter();
+        bounded.setProperties(configuration);
+        try {
+            bounded.initialize();
+            List<BridgeRequest> requests = new ArrayList<>();
+            for (int host = 1; host <= 8; host++) {
+                BridgeRequest request = request();
+                request.setQuery(String.format("host_name=host%05d", host));
+                requests.add(request);
+            }
+
+            List<RecordList> results = bounded.searchBatch(requests);
+
+            assertEquals(8, results.size());
+            for (int host = 1; host <= 8; host++) {
+                assertEquals(String.format("host%05d", host), results.get(host - 1).getRecords().get(0).getValue("host_name"));
+            }
+            assertTrue(server.getMaxConcurrentRequests() <= 2);
+        } finally {
+            bounded.destroy();
+            server.stop();
+        }
+    }
+
+    /*
+    * PRIVATE HELPER METHODS
+    */
+    private BridgeRequest request() {
+        BridgeRequest request = new BridgeRequest();
+        request.setStructure("objects/host");
+        request.setQuery("host_name=web01");
+        request.setFields(Arrays.asList("host_name"));
+        request.setMetadata(new HashMap<>());
+        return request;
+    }
+}
@@ -0,0 +1,108 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import com.kineticdata.bridgehub.adapter.BridgeRequest;
+import com.kineticdata.bridgehub.adapter.RecordList;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class NagiosXiAdapterCompressionTest {
+
+    private static final String HOST_RESPONSE = "{\"hostlist\":{\"recordcount\":\"2\",\"host\":["
+        + "{\"host_name\":\"web01\",\"address\":\"10.0.0.1\"},"
+        + "{\"host_name\":\"web02\",\"address\":\"10.0.0.2\"}"
+        + "]}}";
+
+    private HttpServer server;
+    private NagiosXiAdapter adapter;
+
+    @Before
+    public void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/nagiosxi/api/v1/objects/host", (exchange) -> {
+            byte[] body = HOST_RESPONSE.getBytes(StandardCharsets.UTF_8);
+            String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                body = gzip(body);
+                exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            }
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        if (adapter != null) {
+            adapter.destroy();
+        }
+        server.stop(0);
+    }
+
+    @Test
+    public void test_decodesCompressedResponses() throws Exception {
+        adapter = adapter("true");
+        RecordList records = adapter.search(request());
+
+        assertEquals(2, records.getRecords().size());
+        assertEquals("web02", records.getRecords().get(1).getValue("host_name"));
+        Map<String,Long> stats = adapter.getTransferStats();
+        assertEquals(Long.valueOf(HOST_RESPONSE.length()), stats.get("objects/host.decodedBytes"));
+        assertNotEquals(stats.get("objects/host.decodedBytes"), stats.get("objects/host.transferredBytes"));
+    }
+
+    @Test
+    public void test_compressionCanBeTurnedOff() throws Exception {
+        adapter = adapter("false");
+        adapter.search(request());
+
+        Map<String,Long> stats = adapter.getTransferStats();
+        assertEquals(stats.get("objects/host.decodedBytes"), stats.get("objects/host.transferredBytes"));
+    }
+
+    /*
+    * PRIVATE HELPER METHODS
+    */
+    private NagiosXiAdapter adapter(String requestCompression) throws Exception {
+        Map<String,String> configuration = new HashMap<>();
+        configuration.put(NagiosXiAdapter.Properties.API_KEY, "KEY");
+        configuration.put(NagiosXiAdapter.Properties.API_URL,
+            "http://127.0.0.1:" + server.getAddress().getPort() + "/nagiosxi");
+        configuration.put(NagiosXiAdapter.Properties.REQUEST_COMPRESSION, requestCompression);
+        NagiosXiAdapter nagiosAdapter = new NagiosXiAdapter();
+        nagiosAdapter.setProperties(configuration);
+        nagiosAdapter.initialize_noAuth();
+        return nagiosAdapter;
+    }
+
+    private BridgeRequest request() {
+        BridgeRequest request = new BridgeRequest();
+        request.setStructure("objects/host");
+        request.setQuery("");
+        request.setFields(Arrays.asList("host_name"));
+        request.setMetadata(new HashMap<>());
+        return request;
+    }
+
+    private static byte[] gzip(byte[] body) throws java.io.IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream output = new GZIPOutputStream(compressed)) {
+            output.write(body);
+        }
+        return compressed.toByteArray();
+    }
+}
@@ -0,0 +1,124 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import com.kineticdata.bridgehub.adapter.BridgeRequest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Counts in each 'Count Mode' and counts reused from searches, against the stand-in server. */
+public class NagiosXiAdapterCountTest {
+
+    private static final String API_KEY = "TEST_API_KEY";
+
+    private NagiosStandInServer server;
+    private List<NagiosXiAdapter> adapters = new ArrayList<>();
+
+    @Before
+    public void startServer() throws Exception {
+        server = new NagiosStandInServer(API_KEY);
+        server.setHosts(20);
+        server.setServicesPerHost(5);
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        adapters.forEach(NagiosXiAdapter::destroy);
+        server.stop();
+    }
+
+    @Test
+    public void test_everyCountModeCounts() throws Exception {
+        Map<String,String> options = new HashMap<>();
+        options.put(NagiosXiAdapter.COUNT_MODE_FULL, null);
+        options.put(NagiosXiAdapter.COUNT_MODE_TOTALS, "totals=1");
+        options.put(NagiosXiAdapter.COUNT_MODE_WINDOW, "records=1%3A0");
+        for (Map.Entry<String,String> mode : options.entrySet()) {
+            NagiosXiAdapter adapter = adapter(mode.getKey());
+
+            assertEquals(mode.getKey(), Integer.valueOf(100), adapter.count(request(null, null)).getValue());
+            assertEquals(mode.getKey(), Integer.valueOf(5),
+                adapter.count(request("host_name=host00003", null)).getValue());
+            String uri = server.getLastRequestUri();
+            assertTrue(uri, mode.getValue() == null ? uri.contains("records=") == false : uri.contains(mode.getValue()));
+        }
+    }
+
+    @Test
+    public void test_windowCountOfOneIsCheckedWhenCountsArePageSizes() throws Exception {
+        server.setPageRecordCounts(true);
+        NagiosXiAdapter adapter = adapter(NagiosXiAdapter.COUNT_MODE_WINDOW);
+        int sent = server.getRequestUris().size();
+
+        assertEquals(Integer.valueOf(100), adapter.count(request(null, null)).getValue());
+
+        assertEquals(2, server.getRequestUris().size() - sent);
+        assertTrue(server.getLastRequestUri().contains("records=") == false);
+    }
+
+    @Test
+    public void test_countIsReusedAfterASearch() throws Exception {
+        NagiosXiAdapter adapter = adapter(NagiosXiAdapter.COUNT_MODE_FULL);
+        adapter.search(request(null, "25"));
+        long sent = server.getRequestCount();
+
+        assertEquals(Integer.valueOf(100), adapter.count(request(null, null)).getValue());
+        assertEquals(sent, server.getRequestCount());
+    }
+
+    @Test
+    public void test_pageSizeCountsAreNotReused() throws Exception {
+        server.setPageRecordCounts(true);
+        NagiosXiAdapter adapter = adapter(NagiosXiAdapter.COUNT_MODE_FULL);
+        // The recordcount of a full page is just its size.
+        assertEquals("25", adapter.search(request(null, "25")).getMetadata().get("count"));
+        long sent = server.getRequestCount();
+
+        assertEquals(Integer.valueOf(100), adapter.count(request(null, null)).getValue());
+        assertEquals(sent + 1, server.getRequestCount());
+
+        // A first page that isn't full holds every match, so its count is the total.
+        adapter.search(request("host_name=host00003", "25"));
+        sent = server.getRequestCount();
+        assertEquals(Integer.valueOf(5), adapter.count(request("host_name=host00003", null)).getValue());
+        assertEquals(sent, server.getRequestCount());
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PRIVATE HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    private NagiosXiAdapter adapter(String countMode) throws Exception {
+        Map<String,String> config = new HashMap<>();
+        config.put(NagiosXiAdapter.Properties.API_KEY, API_KEY);
+        config.put(NagiosXiAdapter.Properties.API_URL, server.getUrl() + "/");
+        config.put(NagiosXiAdapter.Properties.COUNT_MODE, countMode);
+        config.put(NagiosXiAdapter.Properties.CONNECTION_RETRIES, "0");
+        NagiosXiAdapter adapter = new NagiosXiAdapter();
+        adapter.setProperties(config);
+        adapter.initialize();
+        adapters.add(adapter);
+        return adapter;
+    }
+
+    private BridgeRequest request(String query, String pageSize) {
+        BridgeRequest request = new BridgeRequest();
+        request.setStructure("objects/servicestatus");
+        request.setQuery(query == null ? "" : query);
+        request.setFields(Arrays.asList("host_name", "service_description"));
+        Map<String,String> metadata = new HashMap<>();
+        if (pageSize != null) {
+            metadata.put("pageSize", pageSize);
+            metadata.put("offset", "0");
+        }
+        request.setMetadata(metadata);
+        request.setParameters(new HashMap<>());
+        return request;
+    }
+}
@@ -0,0 +1,142 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import com.kineticdata.bridgehub.adapter.BridgeRequest;
+import com.kineticdata.bridgehub.adapter.Count;
+import com.kineticdata.bridgehub.adapter.Record;
+import com.kineticdata.bridgehub.adapter.RecordList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.lang.StringUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class NagiosXiAdapterFederationTest {
+
+    private static final String API_KEY = "TEST_API_KEY";
+
+    private NagiosStandInServer east;
+    private NagiosStandInServer west;
+    private NagiosXiAdapter bridgeAdapter;
+    private Map<String,String> bridgeConfig;
+
+    @Before
+    public void startServers() throws Exception {
+        east = new NagiosStandInServer(API_KEY);
+        east.setHosts(20);
+        east.start();
+        west = new NagiosStandInServer(API_KEY);
+        west.setHosts(5);
+        west.start();
+
+        bridgeConfig = new HashMap<>();
+        bridgeConfig.put(NagiosXiAdapter.Properties.API_KEY, API_KEY);
+        bridgeConfig.put(NagiosXiAdapter.Properties.API_URL, east.getUrl() + "," + west.getUrl());
+        bridgeAdapter = new NagiosXiAdapter();
+    }
+
+    @After
+    public void stopServers() {
+        bridgeAdapter.destroy();
+        east.stop();
+        west.stop();
+    }
+
+    @Test
+    public void test_countsAreSummedAndSearchesMerged() throws Exception {
+        bridgeAdapter.setProperties(bridgeConfig);
+        bridgeAdapter.initialize();
+
+        Count count = bridgeAdapter.count(request("objects/host", "", "host_name"));
+        BridgeRequest search = request("objects/host", "", "host_name", NagiosFederation.INSTANCE_FIELD);
+        search.getMetadata().put("order", "<%=field[\"host_name\"]%>:ASC");
+        search.getMetadata().put("pageSize", "4");
+        search.getMetadata().put("offset", "2");
+        RecordList records = bridgeAdapter.search(search);
+
+        assertEquals(Integer.valueOf(25), count.getValue());
+        assertEquals("false", count.getMetadata().get("partial"));
+        // Both instances have host00000 to host00004; ties keep the instance order.
+        assertEquals("25", records.getMetadata().get("count"));
+        assertEquals(Arrays.asList("host00001", "host00001", "host00002", "host00002"),
+            Arrays.asList(records.getRecords().stream().map((record) -> record.getValue("host_name")).toArray()));
+        assertEquals(instanceName(east), records.getRecords().get(0).getValue(NagiosFederation.INSTANCE_FIELD));
+        assertEquals(instanceName(west), records.getRecords().get(1).getValue(NagiosFederation.INSTANCE_FIELD));
+
+        Record record = bridgeAdapter.retrieve(request("objects/host", "host_name=host00010", "host_name",
+            NagiosFederation.INSTANCE_FIELD));
+        assertEquals(instanceName(east), record.getValue(NagiosFederation.INSTANCE_FIELD));
+    }
+
+    @Test
+    public void test_unavailableInstancesGivePartialResults() throws Exception {
+        bridgeConfig.put(NagiosXiAdapter.Properties.INSTANCE_TIMEOUT, "300");
+        bridgeAdapter.setProperties(bridgeConfig);
+        bridgeAdapter.initialize();
+
+        west.setStalls(1, 3000);
+        long start = System.currentTimeMillis();
+        Count count = bridgeAdapter.count(request("objects/host", "", "host_name"));
+
+        assertTrue(System.currentTimeMillis() - start < 2000);
+        assertEquals(Integer.valueOf(20), count.getValue());
+        assertEquals("true", count.getMetadata().get("partial"));
+        assertEquals(instanceName(west), count.getMetadata().get("unavailableInstances"));
+        assertEquals(Long.valueOf(1), bridgeAdapter.getFederationStats().get(instanceName(west) + ".failures"));
+    }
+
+    @Test
+    public void test_searchesAreSortedAgainAfterTheInstances() throws Exception {
+        // The instances order their records with a collation the adapter doesn't share.
+        Map<String,NagiosXiAdapter> instances = new LinkedHashMap<>();
+        instances.put("east", instance("host_c", "host_a"));
+        instances.put("west", instance("host_b"));
+        NagiosFederation federation = new NagiosFederation(instances, 5000, true);
+        BridgeRequest search = request("objects/host", "", "host_name", NagiosFederation.INSTANCE_FIELD);
+
+        RecordList records = federation.search(search, "host_name:a", 2, 0);
+
+        assertEquals(Arrays.asList("host_a", "host_b"),
+            Arrays.asList(records.getRecords().stream().map((record) -> record.getValue("host_name")).toArray()));
+        assertEquals("east", records.getRecords().get(0).getValue(NagiosFederation.INSTANCE_FIELD));
+        assertEquals("3", records.getMetadata().get("count"));
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PRIVATE HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    private String instanceName(NagiosStandInServer server) {
+        return StringUtils.substringBetween(server.getUrl(), "//", "/");
+    }
+
+    /** An instance that answers every search with the host names in the given order. */
+    private NagiosXiAdapter instance(String... hostNames) {
+        return new NagiosXiAdapter() {
+            @Override
+            public RecordList search(BridgeRequest request) {
+                List<Record> records = new ArrayList<>();
+                for (String hostName : hostNames) {
+                    records.add(new Record(Collections.singletonMap("host_name", hostName)));
+                }
+                return new RecordList(request.getFields(), records);
+            }
+        };
+    }
+
+    private BridgeRequest request(String structure, String query, String... fields) {
+        BridgeRequest request = new BridgeRequest();
+        request.setStructure(structure);
+        request.setQuery(query);
+        request.setFields(Arrays.asList(fields));
+        request.setMetadata(new HashMap<>());
+        request.setParameters(new HashMap<>());
+        return request;
+    }
+}
@@ -0,0 +1,345 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import com.kineticdata.bridgehub.adapter.BridgeRequest;
+import com.kineticdata.bridgehub.adapter.Count;
+import com.kineticdata.bridgehub.adapter.Record;
+import com.kineticdata.bridgehub.adapter.RecordList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/** The end to end tests of NagiosXiAdapterTest, run against the in-process stand-in server. */
+public class NagiosXiAdapterOfflineTest {
+
+    private static final String API_KEY = "TEST_API_KEY";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private NagiosStandInServer server;
+    private NagiosXiAdapter bridgeAdapter;
+    private Map<String,String> bridgeConfig;
+
+    @Before
+    public void startServer() throws Exception {
+        server = new NagiosStandInServer(API_KEY);
+        server.setHosts(20);
+        server.setServicesPerHost(5);
+        server.start();
+
+        bridgeConfig = new HashMap<>();
+        bridgeConfig.put(NagiosXiAdapter.Properties.API_KEY, API_KEY);
+        bridgeConfig.put(NagiosXiAdapter.Properties.API_URL, server.getUrl() + "/");
+        bridgeAdapter = new NagiosXiAdapter();
+        bridgeAdapter.setProperties(bridgeConfig);
+    }
+
+    @After
+    public void stopServer() {
+        bridgeAdapter.destroy();
+        server.stop();
+    }
+
+    @Test
+    public void test_initializeAuthFail() throws Exception {
+        bridgeConfig.put(NagiosXiAdapter.Properties.API_KEY, "");
+        bridgeAdapter.setProperties(bridgeConfig);
+        String apiError = null;
+
+        try {
+            bridgeAdapter.initialize();
+        } catch (BridgeError err) {
+            apiError = err.getMessage();
+        }
+
+        assertEquals("The Nagios XI server responding with the following API error message: Invalid API Key",
+            apiError);
+    }
+
+    @Test
+    public void test_countRetrieveAndSearch() throws Exception {
+        bridgeAdapter.initialize();
+
+        Count count = bridgeAdapter.count(request("objects/host", "address=10.0.0.3", "address"));
+        assertEquals(Integer.valueOf(1), count.getValue());
+
+        Record record = bridgeAdapter.retrieve(request("objects/host", "address=10.0.0.3", "host_name"));
+        assertEquals("host00003", record.getValue("host_name"));
+
+        RecordList records = bridgeAdapter.search(
+            request("objects/service", "", "host_name", "service_description"));
+        assertEquals(100, records.getRecords().size());
+    }
+
+    @Test
+    public void test_searchOrderAndPagination() throws Exception {
+        bridgeAdapter.initialize();
+        BridgeRequest request = request("objects/servicestatus", "current_state=ne:0", "host_name", "current_state");
+        Map<String,String> metadata = new HashMap<>();
+        metadata.put("order", "<%=field[\"host_name\"]%>:DESC");
+        metadata.put("pageSize", "5");
+        metadata.put("offset", "2");
+        request.setMetadata(metadata);
+
+        RecordList records = bridgeAdapter.search(request);
+
+        assertEquals(5, records.getRecords().size());
+        assertEquals("5", records.getMetadata().get("size"));
+        assertTrue(Integer.parseInt(records.getMetadata().get("count")) > 5);
+        assertTrue(String.valueOf(records.getRecords().get(0).getValue("host_name"))
+            .compareTo(String.valueOf(records.getRecords().get(4).getValue("host_name"))) >= 0);
+    }
+
+    @Test
+    public void test_membershipIndex() throws Exception {
+        bridgeConfig.put(NagiosXiAdapter.Properties.MEMBERSHIP_STRUCTURES,
+            "objects/hostgroupmembership,objects/servicegroupmembership");
+        bridgeAdapter.setProperties(bridgeConfig);
+        bridgeAdapter.initialize();
+
+        Count groups = bridgeAdapter.count(request("objects/servicegroupmembership", "host_name=host00003",
+            "servicegroup_name"));
+        RecordList members = bridgeAdapter.search(request("objects/hostgroupmembership", "hostgroup_name=group07",
+            "host_name", "host_object_id"));
+
+        assertEquals(Integer.valueOf(5), groups.getValue());
+        assertEquals(1, members.getRecords().size());
+        assertEquals("host00007", members.getRecords().get(0).getValue("host_name"));
+        assertEquals("1007", members.getRecords().get(0).getValue("host_object_id"));
+    }
+
+    @Test
+    public void test_objectCache() throws Exception {
+        bridgeConfig.put(NagiosXiAdapter.Properties.OBJECT_CACHE_TTL, "60");
+        bridgeAdapter.setProperties(bridgeConfig);
+        bridgeAdapter.initialize();
+        bridgeAdapter.search(request("objects/host", "", "host_name"));
+        long requests = server.getRequestCount();
+
+        // Retrieves by either key of an object a search returned need no request, even for other fields.
+        Record byName = bridgeAdapter.retrieve(request("objects/host", "host_name=host00003", "address"));
+        Record byId = bridgeAdapter.retrieve(request("objects/host", "host_object_id=1004", "host_name"));
+        assertEquals("10.0.0.3", byName.getValue("address"));
+        assertEquals("host00004", byId.getValue("host_name"));
+        assertEquals(requests, server.getRequestCount());
+
+        bridgeAdapter.invalidateObjectCache("objects/host");
+        bridgeAdapter.retrieve(request("objects/host", "host_name=host00003", "address"));
+        assertEquals(requests + 1, server.getRequestCount());
+        assertEquals(Long.valueOf(2), bridgeAdapter.getObjectCacheStats().get("hits"));
+
+        // Retrieves ask for two records, enough to detect an ambiguous qualification.
+        try {
+            bridgeAdapter.retrieve(request("objects/host", "instance_id=1", "host_name"));
+            fail("Expected the retrieve to match multiple hosts.");
+        } catch (BridgeError e) {
+            assertEquals("Multiple results matched an expected single match query", e.getMessage());
+        }
+        assertTrue(server.getLastRequestUri().contains("records=2%3A0"));
+    }
+
+    @Test
+    public void test_prefetchNextPage() throws Exception {
+        bridgeConfig.put(NagiosXiAdapter.Properties.PREFETCH_STRUCTURES, "objects/servicestatus");
+        bridgeAdapter.setProperties(bridgeConfig);
+        bridgeAdapter.initialize();
+
+        bridgeAdapter.search(page(request("objects/servicestatus", "", "host_name"), 10, 0));
+        while (bridgeAdapter.getPrefetchStats().get("completed") == 0) {
+            Thread.sleep(10);
+        }
+        long requests = server.getRequestCount();
+        RecordList second = bridgeAdapter.search(page(request("objects/servicestatus", "", "host_name"), 10, 10));
+
+        assertEquals(10, second.getRecords().size());
+        assertEquals("host00002", second.getRecords().get(0).getValue("host_name"));
+        assertEquals(Long.valueOf(1), bridgeAdapter.getPrefetchStats().get("hits"));
+        // Only the read-ahead of the third page has been sent since.
+        while (bridgeAdapter.getPrefetchStats().get("completed") < 2) {
+            Thread.sleep(10);
+        }
+        assertEquals(requests + 1, server.getRequestCount());
+    }
+
+    @Test
+    public void test_responseMemo() throws Exception {
+        bridgeConfig.put(NagiosXiAdapter.Properties.MEMO_STRUCTURES, "objects/host");
+        bridgeAdapter.setProperties(bridgeConfig);
+        bridgeAdapter.initialize();
+
+        // An identical body reuses the records built from the last one.
+        RecordList first = bridgeAdapter.search(request("objects/host", "", "host_name"));
+        RecordList second = bridgeAdapter.search(request("objects/host", "", "host_name"));
+        assertSame(first.getRecords(), second.getRecords());
+        assertEquals(Long.valueOf(1), bridgeAdapter.getResponseMemoStats().get("digestHits"));
+
+        // With an ETag the next request is conditional and a 304 reuses them without a body.
+        server.setEtags(true);
+        bridgeAdapter.search(request("objects/host", "", "host_name"));
+        RecordList notModified = bridgeAdapter.search(request("objects/host", "", "host_name"));
+        assertSame(first.getRecords(), notModified.getRecords());
+        assertEquals(Long.valueOf(2), bridgeAdapter.getResponseMemoStats().get("digestHits"));
+        assertEquals(Long.valueOf(1), bridgeAdapter.getResponseMemoStats().get("notModified"));
+
+        // Other structures and other fields are parsed as usual.
+        bridgeAdapter.search(request("objects/host", "", "address"));
+        bridgeAdapter.search(request("objects/hoststatus", "", "host_name"));
+        assertEquals(Long.valueOf(2), bridgeAdapter.getResponseMemoStats().get("misses"));
+    }
+
+    @Test
+    public void test_join() throws Exception {
+        bridgeAdapter.initialize();
+        BridgeRequest request = page(request("objects/servicestatus", "",
+            "service_description", "current_state", "host.address", "host.current_state"), 25, 0);
+        request.getMetadata().put("join", "host=objects/hoststatus:host_name");
+        long requests = server.getRequestCount();
+
+        RecordList services = bridgeAdapter.search(request);
+
+        // One search of the services and one of their five hosts, rather than one per service.
+        assertEquals(requests + 2, server.getRequestCount());
+        assertEquals(25, services.getRecords().size());
+        Record service = services.getRecords().get(7);
+        assertEquals(request.getFields(), services.getFields());
+        assertEquals("2", service.getValue("current_state"));
+        assertEquals("10.0.0.1", service.getValue("host.address"));
+        assertEquals("0", service.getValue("host.current_state"));
+        assertNull(service.getValue("host_name"));
+        assertEquals(Long.valueOf(5), bridgeAdapter.getJoinStats().get("keys"));
+        assertEquals(Long.valueOf(0), bridgeAdapter.getJoinStats().get("unmatched"));
+    }
+
+    @Test
+    public void test_retrieveBatching() throws Exception {
+        bridgeConfig.put(NagiosXiAdapter.Properties.RETRIEVE_BATCH_KEYS, "objects/hoststatus=host_name");
+        bridgeConfig.put(NagiosXiAdapter.Properties.RETRIEVE_BATCH_WINDOW, "60000");
+        bridgeConfig.put(NagiosXiAdapter.Properties.RETRIEVE_BATCH_SIZE, "10");
+        bridgeAdapter.setProperties(bridgeConfig);
+        bridgeAdapter.initialize();
+        long requests = server.getRequestCount();
+
+        List<CompletableFuture<Record>> hosts = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            hosts.add(bridgeAdapter.retrieveAsync(request("objects/hoststatus",
+                "host_name=" + String.format("host%05d", i), "address")));
+        }
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals("10.0.0." + i, hosts.get(i).get().getValue("address"));
+        }
+        assertEquals(requests + 1, server.getRequestCount());
+        assertTrue(server.getLastRequestUri().contains("host_name=in:"));
+        assertEquals(Long.valueOf(10), bridgeAdapter.getRetrieveBatchStats().get("retrieves"));
+    }
+
+    @Test
+    public void test_warmStart() throws Exception {
+        bridgeConfig.put(NagiosXiAdapter.Properties.MIRROR_STRUCTURES, "objects/host");
+        bridgeConfig.put(NagiosXiAdapter.Properties.WARM_CACHE_DIRECTORY, folder.getRoot().getPath());
+        bridgeConfig.put(NagiosXiAdapter.Properties.BACKGROUND_AUTHENTICATION, "true");
+        bridgeAdapter.setProperties(bridgeConfig);
+        bridgeAdapter.initialize();
+        while (bridgeAdapter.getWarmStartStats().get("writes") == 0) {
+            Thread.sleep(10);
+        }
+        bridgeAdapter.destroy();
+        server.stop();
+
+        // A restarted adapter answers from the stored snapshot even though Nagios XI is down.
+        bridgeAdapter = new NagiosXiAdapter();
+        bridgeAdapter.setProperties(bridgeConfig);
+        bridgeAdapter.initialize();
+        Count count = bridgeAdapter.count(request("objects/host", "host_name=host00003", "host_name"));
+
+        assertEquals(Integer.valueOf(1), count.getValue());
+        assertEquals(Long.valueOf(1), bridgeAdapter.getWarmStartStats().get("reads"));
+        while (bridgeAdapter.getWarmStartStats().get("authentication") == -1) {
+            Thread.sleep(10);
+        }
+        assertEquals(Long.valueOf(0), bridgeAdapter.getWarmStartStats().get("authentication"));
+    }
+
+    @Test
+    public void test_metricsByPhase() throws Exception {
+        bridgeAdapter.initialize();
+        bridgeAdapter.search(request("objects/servicestatus", "current_state=0", "host_name"));
+        server.setErrorRate(1);
+        try {
+            bridgeAdapter.count(request("objects/hoststatus", "current_state=0", "host_name"));
+            fail("Expected the injected server error to fail the count.");
+        } catch (BridgeError e) {
+            // Expected, every request is answered with an HTTP 500.
+        }
+
+        Map<String,Long> metrics = bridgeAdapter.getMetrics();
+        assertEquals(Long.valueOf(1), metrics.get("search objects/servicestatus.operations"));
+        assertEquals(Long.valueOf(1), metrics.get("search objects/servicestatus.requests"));
+        assertTrue(metrics.get("search objects/servicestatus.records") > 0);
+        assertTrue(metrics.get("search objects/servicestatus.responseBytes") > 0);
+        for (String phase : NagiosMetrics.PHASES) {
+            assertEquals(phase, Long.valueOf(1), metrics.get("search objects/servicestatus." + phase + ".count"));
+        }
+        assertEquals(Long.valueOf(1), metrics.get("count objects/hoststatus.errors"));
+        assertEquals(Long.valueOf(1), metrics.get("count objects/hoststatus.status.500"));
+        assertEquals(Long.valueOf(0), metrics.get("inFlight"));
+    }
+
+    @Test
+    public void test_splitSearchChunksBelongToTheSearch() throws Exception {
+        bridgeConfig.put(NagiosXiAdapter.Properties.PAGE_CHUNK_SIZE, "25");
+        bridgeAdapter.setProperties(bridgeConfig);
+        bridgeAdapter.initialize();
+
+        bridgeAdapter.search(page(request("objects/servicestatus", "", "host_name"), 100, 0));
+
+        Map<String,Long> metrics = bridgeAdapter.getMetrics();
+        assertEquals(Long.valueOf(4), metrics.get("search objects/servicestatus.requests"));
+        assertNull(metrics.get("background objects/servicestatus.requests"));
+    }
+
+    @Test
+    public void test_loadHarness() throws Exception {
+        server.setLatency(2, 2);
+        bridgeAdapter.initialize();
+        NagiosLoadHarness harness = new NagiosLoadHarness(bridgeAdapter, server);
+        NagiosLoadHarness.addDefaultMix(harness, 20);
+
+        NagiosLoadHarness.Report report = harness.run(8, 500);
+
+        assertEquals(0, report.getErrors());
+        assertTrue(report.getOperations() > 0);
+        assertTrue(report.getPercentileMicros(0.5) <= report.getPercentileMicros(0.99));
+        // Pooled connections are reused rather than opened per request.
+        assertTrue(report.getServerConnections() < report.getOperations());
+    }
+
+    /*
+    * PRIVATE HELPER METHODS
+    */
+    private BridgeRequest page(BridgeRequest request, int pageSize, int offset) {
+        request.getMetadata().put("pageSize", String.valueOf(pageSize));
+        request.getMetadata().put("offset", String.valueOf(offset));
+        return request;
+    }
+
+    private BridgeRequest request(String structure, String query, String... fields) {
+        BridgeRequest request = new BridgeRequest();
+        request.setStructure(structure);
+        request.setQuery(query);
+        request.setFields(Arrays.asList(fields));
+        request.setMetadata(new HashMap<>());
+        request.setParameters(new HashMap<>());
+        return request;
+    }
+}
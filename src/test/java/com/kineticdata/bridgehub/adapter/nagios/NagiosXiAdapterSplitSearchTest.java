@@ -0,0 +1,151 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import com.kineticdata.bridgehub.adapter.BridgeRequest;
+import com.kineticdata.bridgehub.adapter.RecordList;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Searches split into concurrent chunks by 'Parallel Page Chunk Size', against the stand-in server. */
+public class NagiosXiAdapterSplitSearchTest {
+
+    private static final String API_KEY = "TEST_API_KEY";
+
+    private NagiosStandInServer server;
+    private List<NagiosXiAdapter> adapters = new ArrayList<>();
+
+    @Before
+    public void startServer() throws Exception {
+        server = new NagiosStandInServer(API_KEY);
+        server.setHosts(20);
+        server.setServicesPerHost(5);
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        adapters.forEach(NagiosXiAdapter::destroy);
+        server.stop();
+    }
+
+    @Test
+    public void test_chunksAreMergedInOrder() throws Exception {
+        NagiosXiAdapter split = adapter("25");
+        RecordList whole = adapter("0").search(request());
+        int sent = server.getRequestUris().size();
+
+        RecordList chunked = split.search(request());
+
+        List<String> uris = new ArrayList<>();
+        for (String uri : server.getRequestUris().subList(sent, server.getRequestUris().size())) {
+            uris.add(URLDecoder.decode(uri, "UTF-8"));
+        }
+        assertEquals(3, uris.size());
+        for (String window : Arrays.asList("records=25:5", "records=25:30", "records=10:55")) {
+            assertTrue(window, uris.stream().anyMatch((uri) -> uri.contains(window)));
+        }
+        // The structure's sort key is appended so records can't move between chunks.
+        assertTrue(uris.stream().allMatch((uri) -> uri.contains("orderby=host_name:d,service_object_id:a")));
+
+        assertEquals(60, chunked.getRecords().size());
+        for (int i = 0; i < 60; i++) {
+            assertEquals(whole.getRecords().get(i).getRecord(), chunked.getRecords().get(i).getRecord());
+        }
+        assertEquals("100", chunked.getMetadata().get("count"));
+        assertEquals("60", chunked.getMetadata().get("size"));
+    }
+
+    @Test
+    public void test_failingChunkFailsTheSearch() throws Exception {
+        NagiosXiAdapter split = adapter("25");
+        server.setFailingRequests("records=25%3A30");
+
+        try {
+            split.search(request());
+            fail("Expected the failed chunk to fail the search.");
+        } catch (BridgeError e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("500"));
+        }
+    }
+
+    @Test
+    public void test_onlyChunksHoldingMatchesAreFetched() throws Exception {
+        NagiosXiAdapter split = adapter("25");
+        BridgeRequest fewMatches = request();
+        fewMatches.setQuery("host_name=host00003");
+        fewMatches.getMetadata().put("offset", "0");
+        long sent = server.getRequestCount();
+
+        assertEquals(5, split.search(fewMatches).getRecords().size());
+        assertEquals(sent + 1, server.getRequestCount());
+
+        // A search that gave the total lets the next one skip the chunks past the end up front.
+        BridgeRequest firstPage = request();
+        firstPage.getMetadata().put("pageSize", "20");
+        split.search(firstPage);
+        BridgeRequest lastPage = request();
+        lastPage.getMetadata().put("offset", "80");
+        sent = server.getRequestCount();
+
+        RecordList records = split.search(lastPage);
+        assertEquals(20, records.getRecords().size());
+        assertEquals("100", records.getMetadata().get("count"));
+        assertEquals(sent + 1, server.getRequestCount());
+    }
+
+    @Test
+    public void test_shortChunkEndsTheSearchWhenCountsArePageSizes() throws Exception {
+        server.setPageRecordCounts(true);
+        NagiosXiAdapter split = adapter("25");
+        BridgeRequest request = request();
+        request.setQuery("host_name=in:host00001,host00002,host00003,host00004,host00005,host00006");
+        request.getMetadata().put("pageSize", "100");
+        request.getMetadata().put("offset", "0");
+        long sent = server.getRequestCount();
+
+        RecordList records = split.search(request);
+
+        assertEquals(30, records.getRecords().size());
+        assertEquals("30", records.getMetadata().get("count"));
+        assertTrue(server.getRequestCount() - sent <= 4);
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PRIVATE HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    private NagiosXiAdapter adapter(String chunkSize) throws Exception {
+        Map<String,String> config = new HashMap<>();
+        config.put(NagiosXiAdapter.Properties.API_KEY, API_KEY);
+        config.put(NagiosXiAdapter.Properties.API_URL, server.getUrl() + "/");
+        config.put(NagiosXiAdapter.Properties.PAGE_CHUNK_SIZE, chunkSize);
+        config.put(NagiosXiAdapter.Properties.CONNECTION_RETRIES, "0");
+        NagiosXiAdapter adapter = new NagiosXiAdapter();
+        adapter.setProperties(config);
+        adapter.initialize();
+        adapters.add(adapter);
+        return adapter;
+    }
+
+    private BridgeRequest request() {
+        BridgeRequest request = new BridgeRequest();
+        request.setStructure("objects/servicestatus");
+        request.setQuery("");
+        request.setFields(Arrays.asList("host_name", "service_description", "current_state"));
+        Map<String,String> metadata = new HashMap<>();
+        metadata.put("order", "<%=field[\"host_name\"]%>:DESC");
+        metadata.put("pageSize", "60");
+        metadata.put("offset", "5");
+        request.setMetadata(metadata);
+        request.setParameters(new HashMap<>());
+        return request;
+    }
+}
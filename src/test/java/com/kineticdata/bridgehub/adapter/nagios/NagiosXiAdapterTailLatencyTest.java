@@ -0,0 +1,148 @@
+package com.kineticdata.bridgehub.adapter.nagios;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import com.kineticdata.bridgehub.adapter.BridgeRequest;
+import com.kineticdata.bridgehub.adapter.Count;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class NagiosXiAdapterTailLatencyTest {
+
+    private static final String API_KEY = "TEST_API_KEY";
+
+    private NagiosStandInServer server;
+    private NagiosXiAdapter bridgeAdapter;
+    private Map<String,String> bridgeConfig;
+
+    @Before
+    public void startServer() throws Exception {
+        server = new NagiosStandInServer(API_KEY);
+        server.setHosts(20);
+        server.start();
+
+        bridgeConfig = new HashMap<>();
+        bridgeConfig.put(NagiosXiAdapter.Properties.API_KEY, API_KEY);
+        bridgeConfig.put(NagiosXiAdapter.Properties.API_URL, server.getUrl());
+        bridgeAdapter = new NagiosXiAdapter();
+    }
+
+    @After
+    public void stopServer() {
+        bridgeAdapter.destroy();
+        server.stop();
+    }
+
+    @Test
+    public void test_hedgedRequestBeatsStalledRequest() throws Exception {
+        bridgeConfig.put(NagiosXiAdapter.Properties.HEDGE_REQUESTS, "true");
+        bridgeConfig.put(NagiosXiAdapter.Properties.HEDGE_DELAY, "50");
+        bridgeAdapter.setProperties(bridgeConfig);
+        bridgeAdapter.initialize();
+
+        server.setStalls(1, 3000);
+        long start = System.currentTimeMillis();
+        Count count = bridgeAdapter.count(request("objects/host", "", "host_name"));
+
+        assertEquals(Integer.valueOf(20), count.getValue());
+        assertTrue(System.currentTimeMillis() - start < 2000);
+        assertEquals(Long.valueOf(1), bridgeAdapter.getTailLatencyStats().get("hedges"));
+        assertEquals(Long.valueOf(1), bridgeAdapter.getTailLatencyStats().get("hedgeWins"));
+    }
+
+    @Test
+    public void test_totalTimeout() throws Exception {
+        bridgeConfig.put(NagiosXiAdapter.Properties.TOTAL_TIMEOUT, "200");
+        bridgeAdapter.setProperties(bridgeConfig);
+        bridgeAdapter.initialize();
+
+        server.setStalls(1, 3000);
+        long start = System.currentTimeMillis();
+        String error = null;
+        try {
+            bridgeAdapter.count(request("objects/host", "", "host_name"));
+        } catch (BridgeError e) {
+            error = e.getMessage();
+        }
+
+        assertEquals("The Nagios server did not respond within the total timeout of 200 ms", error);
+        assertTrue(System.currentTimeMillis() - start < 2000);
+        assertEquals(Long.valueOf(1), bridgeAdapter.getTailLatencyStats().get("timeouts"));
+    }
+
+    @Test
+    public void test_connectionFailuresAreRetried() throws Exception {
+        bridgeConfig.put(NagiosXiAdapter.Properties.CONNECTION_RETRIES, "2");
+        bridgeConfig.put(NagiosXiAdapter.Properties.RETRY_BACKOFF, "10");
+        bridgeAdapter.setProperties(bridgeConfig);
+        bridgeAdapter.initialize();
+        server.stop();
+
+        try {
+            bridgeAdapter.count(request("objects/host", "", "host_name"));
+            fail("Expected the count to fail with the server stopped.");
+        } catch (BridgeError e) {
+            assertEquals("Unable to make a connection to the Nagios server", e.getMessage());
+        }
+        assertEquals(Long.valueOf(2), bridgeAdapter.getTailLatencyStats().get("retries"));
+    }
+
+    @Test
+    public void test_circuitBreakerFailsFastAndServesLastResult() throws Exception {
+        bridgeConfig.put(NagiosXiAdapter.Properties.CIRCUIT_FAILURE_THRESHOLD, "2");
+        bridgeConfig.put(NagiosXiAdapter.Properties.CIRCUIT_OPEN_TIME, "2");
+        bridgeConfig.put(NagiosXiAdapter.Properties.CACHE_TTLS, "objects/hoststatus=1");
+        bridgeAdapter.setProperties(bridgeConfig);
+        bridgeAdapter.initialize();
+        BridgeRequest cachedRequest = request("objects/hoststatus", "", "host_name");
+        assertEquals(Integer.valueOf(20), bridgeAdapter.count(cachedRequest).getValue());
+
+        server.setErrorRate(1);
+        for (int i = 0; i < 2; i++) {
+            try {
+                bridgeAdapter.count(request("objects/host", "", "host_name"));
+                fail("Expected the injected server error to fail the count.");
+            } catch (BridgeError e) {
+                // Expected, every request is answered with an HTTP 500.
+            }
+        }
+        assertEquals(Long.valueOf(1), bridgeAdapter.getTailLatencyStats().get("circuit.opened"));
+
+        // Open: requests fail without reaching the server, or get the last cached result.
+        long requests = server.getRequestCount();
+        try {
+            bridgeAdapter.count(request("objects/host", "", "host_name"));
+            fail("Expected the open circuit breaker to fail the count.");
+        } catch (BridgeError e) {
+            assertTrue(e.getMessage().startsWith("Nagios XI is unavailable"));
+        }
+        Thread.sleep(1100);
+        assertEquals(Integer.valueOf(20), bridgeAdapter.count(cachedRequest).getValue());
+        assertEquals(requests, server.getRequestCount());
+
+        // After the open time a probe request closes the breaker again.
+        server.setErrorRate(0);
+        Thread.sleep(1000);
+        assertEquals(Integer.valueOf(20), bridgeAdapter.count(request("objects/host", "", "host_name")).getValue());
+        assertEquals(Long.valueOf(0), bridgeAdapter.getTailLatencyStats().get("circuit.state"));
+        assertEquals(Long.valueOf(1), bridgeAdapter.getTailLatencyStats().get("circuit.closed"));
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * PRIVATE HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    private BridgeRequest request(String structure, String query, String... fields) {
+        BridgeRequest request = new BridgeRequest();
+        request.setStructure(structure);
+        request.setQuery(query);
+        request.setFields(Arrays.asList(fields));
+        request.setMetadata(new HashMap<>());
+        request.setParameters(new HashMap<>());
+        return request;
+    }
+}